@@ -0,0 +1,64 @@
+package com.project;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Monoid over the values of a tree, set with setAggregator to have every non-leaf node cache the aggregate of each
+ * child subtree. combine must be associative and identity must leave an aggregate unchanged on either side.
+ * The left operand always comes first in key order, so combine need not be commutative.
+ * @param <T> value type of the tree
+ * @param <A> aggregate type
+ */
+public interface Aggregator<T, A>
+{
+    //Aggregate of no values
+    A identity();
+
+    //Aggregate of a single value
+    A lift(T value);
+
+    A combine(A left, A right);
+
+    static <T, A> Aggregator<T, A> of(A identity, Function<? super T, ? extends A> lift, BinaryOperator<A> combine)
+    {
+        return new Aggregator<T, A>()
+        {
+            @Override
+            public A identity()
+            {
+                return identity;
+            }
+
+            @Override
+            public A lift(T value)
+            {
+                return lift.apply(value);
+            }
+
+            @Override
+            public A combine(A left, A right)
+            {
+                return combine.apply(left, right);
+            }
+        };
+    }
+
+    //Sum of the values as a long
+    static <T extends Number> Aggregator<T, Long> longSum()
+    {
+        return of(0L, Number::longValue, Long::sum);
+    }
+
+    //Smallest value, null for no values
+    static <T extends Comparable<? super T>> Aggregator<T, T> min()
+    {
+        return of(null, value -> value, (left, right) -> left == null ? right : right == null || left.compareTo(right) <= 0 ? left : right);
+    }
+
+    //Largest value, null for no values
+    static <T extends Comparable<? super T>> Aggregator<T, T> max()
+    {
+        return of(null, value -> value, (left, right) -> left == null ? right : right == null || left.compareTo(right) >= 0 ? left : right);
+    }
+}
@@ -0,0 +1,111 @@
+package com.project;
+
+import java.util.Arrays;
+
+/**
+ * Bloom filter over the keys of one leaf. A key is hashed once to 64 bits and the probes are derived from the two
+ * halves of that hash, so adding and testing cost one hash whatever the number of probes. A negative answer is
+ * exact, a positive one may be wrong with a rate set by the bits per key.
+ * Bits can not be taken out again, so removed keys are only counted and the owner rebuilds the filter from its keys
+ * once they pile up.
+ */
+public class BloomFilter
+{
+    //Bits per key unless the caller chooses, about one false positive in a hundred
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private final long[] bits;
+    //Number of bits, the probes are mapped onto it by a multiply instead of a modulo
+    private final long size;
+    private final int hashes;
+    //Keys removed from the owner since the filter was last rebuilt
+    private int removed;
+
+    /**
+     * @param capacity most keys the filter will hold
+     * @param bitsPerKey
+     */
+    public BloomFilter(int capacity, int bitsPerKey)
+    {
+        if(bitsPerKey < 1)
+            throw new IllegalArgumentException("A Bloom filter needs at least one bit per key: " + bitsPerKey);
+        this.bits = new long[(int) (((long) Math.max(capacity, 1) * bitsPerKey + 63) >>> 6)];
+        this.size = (long) this.bits.length << 6;
+        // k = ln 2 * m / n minimizes the false positive rate
+        this.hashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+    }
+
+    //Hash of a key, keys equal by compareTo must have equal hash codes
+    public static long hash(Object key)
+    {
+        return mix(key.hashCode());
+    }
+
+    public static long hash(int key)
+    {
+        return mix(key);
+    }
+
+    public void add(long hash)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 0; i < this.hashes; i++){
+            long bit = ((h1 + i * h2) & 0xffffffffL) * this.size >>> 32;
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    //False when the key was never added, true when it may have been
+    public boolean mightContain(long hash)
+    {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 0; i < this.hashes; i++){
+            long bit = ((h1 + i * h2) & 0xffffffffL) * this.size >>> 32;
+            if((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.bits, 0);
+        this.removed = 0;
+    }
+
+    //Count keys the owner removed, their bits stay set until the next rebuild
+    public void removed(int keys)
+    {
+        this.removed += keys;
+    }
+
+    /**
+     * True once the removed keys outnumber the live ones, at that point the stale bits at least double the false
+     * positive rate and a rebuild from the live keys is due
+     * @param live keys the owner holds
+     * @return
+     */
+    public boolean isStale(int live)
+    {
+        return this.removed > live;
+    }
+
+    //Estimated heap bytes of the filter
+    public long getBytes()
+    {
+        return 16 + 8L * this.bits.length;
+    }
+
+    //Finalizer of a 64-bit hash, spreads every input bit over the whole result
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe5a34e53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,224 @@
+package com.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BufferPool
+{
+    /**
+     * Fixed number of page frames in front of a file. A page is pinned while it is in use and can only be
+     * evicted once every pin is released; modified pages are marked dirty on unpin and written back when they
+     * are evicted or flushed. The eviction policy is pluggable (CLOCK, LRU-K).
+     */
+    //Page id of a free frame
+    private static final int NO_PAGE = -1;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final EvictionPolicy policy;
+
+    private final ByteBuffer[] frames;
+    //Page held by every frame
+    private final int[] pageIds;
+    private final int[] pinCounts;
+    private final boolean[] dirty;
+    //Page id to frame
+    private final Map<Integer, Integer> pageTable;
+    //Frames never used yet are handed out in order before anything is evicted
+    private int unusedFrames;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writes;
+
+    public BufferPool(FileChannel channel, int pageSize, int frameCount)
+    {
+        this(channel, pageSize, frameCount, new ClockEvictionPolicy());
+    }
+
+    public BufferPool(FileChannel channel, int pageSize, int frameCount, EvictionPolicy policy)
+    {
+        if(frameCount < 1)
+            throw new IllegalArgumentException("A buffer pool needs at least one frame: " + frameCount);
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.policy = policy;
+        this.frames = new ByteBuffer[frameCount];
+        ByteBuffer memory = ByteBuffer.allocateDirect(frameCount * pageSize);
+        for(int i = 0; i < frameCount; i++){
+            this.frames[i] = memory.slice(i * pageSize, pageSize);
+        }
+        this.pageIds = new int[frameCount];
+        this.pinCounts = new int[frameCount];
+        this.dirty = new boolean[frameCount];
+        this.pageTable = new HashMap<>(frameCount * 2);
+        this.policy.attach(frameCount);
+    }
+
+    /**
+     * Pin the page, reading it from the file if it is not cached. Every fetch must be paired with an unpin.
+     * @param pageId
+     * @return the frame holding the page, valid until the page is unpinned
+     */
+    public ByteBuffer fetch(int pageId)
+    {
+        Integer cached = this.pageTable.get(pageId);
+        if(cached != null){
+            int frame = cached;
+            this.hits++;
+            this.pinCounts[frame]++;
+            this.policy.recordAccess(frame);
+            return this.frames[frame];
+        }
+        this.misses++;
+        int frame = takeFrame();
+        ByteBuffer page = this.frames[frame];
+        long position = (long) pageId * this.pageSize;
+        try {
+            page.clear();
+            while(page.hasRemaining()){
+                if(this.channel.read(page, position + page.position()) < 0)
+                    throw new EOFException("Page " + pageId + " is past the end of the file");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            page.clear();
+        }
+        install(pageId, frame, false);
+        return page;
+    }
+
+    //Frame of a page the caller already pinned, without another pin
+    public ByteBuffer pinned(int pageId)
+    {
+        Integer cached = this.pageTable.get(pageId);
+        if(cached == null || this.pinCounts[cached] == 0)
+            throw new IllegalStateException("Page " + pageId + " is not pinned");
+        return this.frames[cached];
+    }
+
+    //Pin a zero filled frame for a page that does not exist in the file yet, it is written back like any dirty page
+    public ByteBuffer create(int pageId)
+    {
+        Integer cached = this.pageTable.get(pageId);
+        int frame;
+        if(cached != null){
+            frame = cached;
+            this.pinCounts[frame]++;
+            this.dirty[frame] = true;
+            this.policy.recordAccess(frame);
+        }
+        else{
+            frame = takeFrame();
+            install(pageId, frame, true);
+        }
+        ByteBuffer page = this.frames[frame];
+        for(int i = 0; i < this.pageSize; i += 8){
+            page.putLong(i, 0L);
+        }
+        return page;
+    }
+
+    //Release one pin, dirty marks the page as modified
+    public void unpin(int pageId, boolean dirty)
+    {
+        Integer cached = this.pageTable.get(pageId);
+        if(cached == null || this.pinCounts[cached] == 0)
+            throw new IllegalStateException("Page " + pageId + " is not pinned");
+        this.pinCounts[cached]--;
+        this.dirty[cached] |= dirty;
+    }
+
+    //Write every dirty page back to the file
+    public void flush()
+    {
+        for(int frame = 0; frame < this.unusedFrames; frame++){
+            if(this.dirty[frame]){
+                write(frame);
+            }
+        }
+    }
+
+    public int getFrameCount()
+    {
+        return this.frames.length;
+    }
+
+    public long getHits()
+    {
+        return this.hits;
+    }
+
+    public long getMisses()
+    {
+        return this.misses;
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions;
+    }
+
+    //Pages written back to the file, by evictions and flushes
+    public long getWrites()
+    {
+        return this.writes;
+    }
+
+    public void resetCounters()
+    {
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+        this.writes = 0;
+    }
+
+    private int takeFrame()
+    {
+        if(this.unusedFrames < this.frames.length)
+            return this.unusedFrames++;
+        int frame = this.policy.victim(f -> this.pinCounts[f] == 0);
+        if(frame < 0)
+            throw new IllegalStateException("All " + this.frames.length + " frames of the buffer pool are pinned");
+        this.evictions++;
+        if(this.dirty[frame]){
+            write(frame);
+        }
+        this.pageTable.remove(this.pageIds[frame]);
+        this.pageIds[frame] = NO_PAGE;
+        this.policy.remove(frame);
+        return frame;
+    }
+
+    private void install(int pageId, int frame, boolean dirty)
+    {
+        this.pageIds[frame] = pageId;
+        this.pinCounts[frame] = 1;
+        this.dirty[frame] = dirty;
+        this.pageTable.put(pageId, frame);
+        this.policy.recordAccess(frame);
+    }
+
+    private void write(int frame)
+    {
+        ByteBuffer source = this.frames[frame].duplicate();
+        source.clear();
+        long position = (long) this.pageIds[frame] * this.pageSize;
+        try {
+            while(source.hasRemaining()){
+                this.channel.write(source, position + source.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.dirty[frame] = false;
+        this.writes++;
+    }
+}
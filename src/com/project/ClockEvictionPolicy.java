@@ -0,0 +1,49 @@
+package com.project;
+
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK (second chance) eviction: every access sets the reference bit of the frame, the hand sweeps the frames
+ * clearing reference bits and evicts the first unpinned frame whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy
+{
+    private boolean[] referenced;
+
+    private int hand;
+
+    @Override
+    public void attach(int frameCount)
+    {
+        this.referenced = new boolean[frameCount];
+        this.hand = 0;
+    }
+
+    @Override
+    public void recordAccess(int frame)
+    {
+        this.referenced[frame] = true;
+    }
+
+    @Override
+    public void remove(int frame)
+    {
+        this.referenced[frame] = false;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable)
+    {
+        //Two full turns: the first one may only clear reference bits
+        for(int step = 0; step < 2 * this.referenced.length; step++){
+            int frame = this.hand;
+            this.hand = (this.hand + 1) % this.referenced.length;
+            if(!evictable.test(frame))
+                continue;
+            if(!this.referenced[frame])
+                return frame;
+            this.referenced[frame] = false;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.project;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes keys or values to a byte stream and reads them back, for everything that stores tree entries outside
+ * the heap (log records, checkpoints).
+ * @param <E> type of the encoded element
+ */
+public interface Codec<E>
+{
+    void write(E element, DataOutput out) throws IOException;
+
+    E read(DataInput in) throws IOException;
+
+    Codec<Integer> INTEGER = new Codec<Integer>()
+    {
+        @Override
+        public void write(Integer element, DataOutput out) throws IOException
+        {
+            out.writeInt(element);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException
+        {
+            return in.readInt();
+        }
+    };
+
+    Codec<Long> LONG = new Codec<Long>()
+    {
+        @Override
+        public void write(Long element, DataOutput out) throws IOException
+        {
+            out.writeLong(element);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException
+        {
+            return in.readLong();
+        }
+    };
+
+    Codec<String> STRING = new Codec<String>()
+    {
+        @Override
+        public void write(String element, DataOutput out) throws IOException
+        {
+            out.writeUTF(element);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException
+        {
+            return in.readUTF();
+        }
+    };
+}
@@ -0,0 +1,918 @@
+package com.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+public class ConcurrentBPlusTree<T, V extends Comparable<V>>
+{
+    /**
+     * Thread-safe B+ tree with one read/write latch per node and top-down latch crabbing.
+     * Readers hold at most two latches at a time: the child is latched before the parent is released. Writers first
+     * try the optimistic path, read latches down to the leaf and a write latch on the leaf only, which is enough
+     * whenever the leaf cannot split or underflow. Otherwise they descend again with write latches and release every
+     * ancestor as soon as the child is safe, so only the part of the path that a split or merge can reach stays latched.
+     * Siblings are always latched left to right, the same direction range scans walk the leaf chain, so scans and
+     * writers cannot deadlock.
+     * Lookups and range scans do not latch at all. They read each node under an optimistic stamp and validate it
+     * afterwards, retrying from the root when a writer got in between. Every node carries a high key and a right
+     * link, as in a B-link tree, so a reader that reaches a node after it was split moves right instead of retrying,
+     * and a node that was merged away is marked obsolete. After too many failed attempts a reader falls back to
+     * latch crabbing, so it cannot starve behind a stream of writers.
+     * Keys are unique, inserting an existing key replaces its value.
+     *
+     * @param <T> specifies the value type
+     * @param <V> specifies the index type
+     */
+    //More levels than any tree of at least two keys per node can reach
+    private static final int MAX_HEIGHT = 64;
+    //Optimistic attempts of a reader before it takes latches
+    private static final int OPTIMISTIC_ATTEMPTS = 16;
+
+    //B+ tree order
+    private final int bTreeOrder;
+    // The minimum number of keys for a node other than the root
+    private final int minKeys;
+    //The maximum number of keys for a node
+    private final int maxKeys;
+
+    //Guards the root pointer, always taken before the latch of the root node
+    private final StampedLock rootLatch = new StampedLock();
+
+    private Node root;
+
+    private final LongAdder size = new LongAdder();
+
+    // No parameter construction method, the default order is 3
+    public ConcurrentBPlusTree()
+    {
+        this(3);
+    }
+
+    public ConcurrentBPlusTree(int bTreeOrder)
+    {
+        if(bTreeOrder < 3)
+            throw new IllegalArgumentException("B+ tree order must be at least 3: " + bTreeOrder);
+        this.bTreeOrder = bTreeOrder;
+        this.minKeys = (int) (Math.ceil((bTreeOrder + 1) / 2.0) - 1.0);
+        this.maxKeys = bTreeOrder;
+        this.root = new LeafNode(this.maxKeys);
+    }
+
+    public long size()
+    {
+        return this.size.sum();
+    }
+
+    //Search, validated against the version of every node instead of latching it
+    public T search(V key)
+    {
+        ReadPosition position = new ReadPosition();
+        for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++){
+            try {
+                if(descendOptimistic(key, position)){
+                    LeafNode leaf = (LeafNode) position.node;
+                    int i = leaf.indexOf(key);
+                    Object value = i < 0 ? null : leaf.values[i];
+                    if(leaf.latch.validate(position.stamp))
+                        return value(value);
+                }
+            } catch (RuntimeException e) {
+                rethrowUnlessTorn(e, position);
+            }
+            Thread.onSpinWait();
+        }
+
+        LeafNode leaf = findLeaf(key);
+        try {
+            int i = leaf.indexOf(key);
+            return i < 0 ? null : value(leaf.values[i]);
+        } finally {
+            leaf.latch.tryUnlockRead();
+        }
+    }
+
+    //Range search, returns the values of all keys in [key1, key2] in key order
+    public List<T> rangeSearch(V key1, V key2)
+    {
+        List<T> result = new ArrayList<>();
+        rangeSearch(key1, key2, (key, value) -> result.add(value));
+        return result;
+    }
+
+    /**
+     * Visit all entries with keys in [key1, key2] in key order, stops early when the visitor returns false.
+     * Each leaf is copied under an optimistic stamp and handed to the visitor only once the copy validates. When a
+     * leaf changes under the scan, it descends again behind the last key it delivered, so no entry is seen twice.
+     * The visitor never runs inside a read attempt or under a latch, whatever it throws reaches the caller as is.
+     * @param key1
+     * @param key2
+     * @param visitor
+     */
+    public void rangeSearch(V key1, V key2, EntryVisitor<T, V> visitor)
+    {
+        Object[] keys = new Object[this.maxKeys + 1];
+        Object[] values = new Object[this.maxKeys + 1];
+        ReadPosition position = new ReadPosition();
+        //Resume point, the last key delivered is excluded
+        Object from = key1;
+        boolean inclusive = true;
+        int failures = 0;
+        while(failures < OPTIMISTIC_ATTEMPTS){
+            boolean descended;
+            try {
+                descended = descendOptimistic(from, position);
+            } catch (RuntimeException e) {
+                rethrowUnlessTorn(e, position);
+                descended = false;
+            }
+            if(!descended){
+                failures++;
+                Thread.onSpinWait();
+                continue;
+            }
+            Node leaf = position.node;
+            long stamp = position.stamp;
+            while(true){
+                int count = 0;
+                boolean end = false;
+                try {
+                    int i = inclusive ? leaf.lowerBound(from) : leaf.upperBound(from);
+                    for(int number = leaf.number; i < number; i++){
+                        if(key2.compareTo(key(leaf.keys[i])) < 0){
+                            end = true;
+                            break;
+                        }
+                        keys[count] = leaf.keys[i];
+                        values[count] = ((LeafNode) leaf).values[i];
+                        count++;
+                    }
+                } catch (RuntimeException e) {
+                    // A torn copy fails the validation below
+                    position.node = leaf;
+                    position.stamp = stamp;
+                    rethrowUnlessTorn(e, position);
+                }
+                Node right = leaf.right;
+                boolean obsolete = leaf.obsolete;
+                if(!leaf.latch.validate(stamp) || obsolete){
+                    failures++;
+                    break;
+                }
+                for(int j = 0; j < count; j++){
+                    if(!visitor.visit(key(keys[j]), value(values[j])))
+                        return;
+                    from = keys[j];
+                    inclusive = false;
+                }
+                if(end || right == null)
+                    return;
+                long rightStamp = right.latch.tryOptimisticRead();
+                if(rightStamp == 0 || !leaf.latch.validate(stamp)){
+                    failures++;
+                    break;
+                }
+                leaf = right;
+                stamp = rightStamp;
+            }
+        }
+        rangeSearchLatched(from, inclusive, key2, visitor, keys, values);
+    }
+
+    /**
+     * Range scan with read latches, starting at the resume point of an optimistic scan. The entries of a leaf are
+     * copied under its latch and visited once it is released, then the scan descends again behind the last key it
+     * delivered. A leaf with nothing behind the resume point hands over to its right sibling latch to latch.
+     */
+    private void rangeSearchLatched(Object from, boolean inclusive, V key2, EntryVisitor<T, V> visitor, Object[] keys, Object[] values)
+    {
+        while(true){
+            int count = 0;
+            boolean end = false;
+            LeafNode leaf = findLeaf(from);
+            try {
+                int i = inclusive ? leaf.lowerBound(from) : leaf.upperBound(from);
+                while(true){
+                    for(; i < leaf.number; i++){
+                        if(key2.compareTo(key(leaf.keys[i])) < 0){
+                            end = true;
+                            break;
+                        }
+                        keys[count] = leaf.keys[i];
+                        values[count] = leaf.values[i];
+                        count++;
+                    }
+                    if(count > 0 || end || leaf.right == null)
+                        break;
+                    // Latch the right sibling before letting go of this leaf
+                    LeafNode right = (LeafNode) leaf.right;
+                    right.latch.readLock();
+                    leaf.latch.tryUnlockRead();
+                    leaf = right;
+                    i = 0;
+                }
+                end |= leaf.right == null;
+            } finally {
+                leaf.latch.tryUnlockRead();
+            }
+            for(int j = 0; j < count; j++){
+                if(!visitor.visit(key(keys[j]), value(values[j])))
+                    return;
+                from = keys[j];
+                inclusive = false;
+            }
+            if(end)
+                return;
+        }
+    }
+
+    //Insert, an existing key gets the new value
+    public void insert(T value, V key)
+    {
+        if(key == null)
+            throw new IllegalArgumentException("Key must not be null");
+        if(!insertOptimistic(value, key)){
+            insertPessimistic(value, key);
+        }
+    }
+
+    //Delete, returns false if the key does not exist
+    public boolean delete(V key)
+    {
+        if(key == null)
+            return false;
+        int result = deleteOptimistic(key);
+        if(result >= 0)
+            return result == 1;
+        return deletePessimistic(key);
+    }
+
+    //Descend with read latches, the returned leaf is read latched
+    private LeafNode findLeaf(Object key)
+    {
+        long rootStamp = this.rootLatch.readLock();
+        Node node = this.root;
+        node.latch.readLock();
+        this.rootLatch.unlockRead(rootStamp);
+        while(node instanceof NonLeafNode){
+            // The parent is let go even when the key's compareTo throws
+            Node child;
+            try {
+                child = ((NonLeafNode) node).childNodes[node.upperBound(key)];
+                child.latch.readLock();
+            } finally {
+                node.latch.tryUnlockRead();
+            }
+            node = child;
+        }
+        return (LeafNode) node;
+    }
+
+    /**
+     * Descend optimistically to the leaf that covers the key. A node whose high key is not above the key was split
+     * after its parent was read, the reader follows its right link.
+     * @param key
+     * @param position receives the leaf and the stamp it was read under, on the way down the node being read
+     * @return false when a version check failed and the descent has to start again
+     */
+    private boolean descendOptimistic(Object key, ReadPosition position)
+    {
+        Comparable<Object> k = comparable(key);
+        long rootStamp = this.rootLatch.tryOptimisticRead();
+        Node node = this.root;
+        if(!this.rootLatch.validate(rootStamp))
+            return false;
+        long stamp = node.latch.tryOptimisticRead();
+        while(true){
+            if(stamp == 0)
+                return false;
+            position.node = node;
+            position.stamp = stamp;
+            Object highKey = node.highKey;
+            Node right = node.right;
+            boolean obsolete = node.obsolete;
+            boolean moveRight = highKey != null && k.compareTo(highKey) >= 0;
+            Node child = null;
+            if(!moveRight && node instanceof NonLeafNode){
+                child = ((NonLeafNode) node).childNodes[node.upperBound(key)];
+            }
+            if(!node.latch.validate(stamp) || obsolete)
+                return false;
+            if(moveRight){
+                if(right == null)
+                    return false;
+                node = right;
+                stamp = node.latch.tryOptimisticRead();
+                continue;
+            }
+            if(child == null)
+                return true;
+            long childStamp = child.latch.tryOptimisticRead();
+            if(!node.latch.validate(stamp))
+                return false;
+            node = child;
+            stamp = childStamp;
+        }
+    }
+
+    /**
+     * An exception from a node read under an optimistic stamp is dropped as a torn read when a writer changed the node
+     * meanwhile, the attempt then starts again. A node that still validates was read whole, so the exception came from
+     * the caller's compareTo and is thrown on.
+     * @param e
+     * @param position the node being read and its stamp
+     */
+    private static void rethrowUnlessTorn(RuntimeException e, ReadPosition position)
+    {
+        if(position.node == null || position.node.latch.validate(position.stamp))
+            throw e;
+    }
+
+    //Descend without latches and write latch only the leaf, by upgrading the stamp it was read under
+    private LeafNode findLeafForWrite(V key)
+    {
+        ReadPosition position = new ReadPosition();
+        for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++){
+            try {
+                if(descendOptimistic(key, position) && position.node.latch.tryConvertToWriteLock(position.stamp) != 0)
+                    return (LeafNode) position.node;
+            } catch (RuntimeException e) {
+                rethrowUnlessTorn(e, position);
+            }
+            Thread.onSpinWait();
+        }
+        return findLeafForWriteLatched(key);
+    }
+
+    //Descend with read latches and write latch only the leaf, the returned leaf is write latched
+    private LeafNode findLeafForWriteLatched(V key)
+    {
+        long rootStamp = this.rootLatch.readLock();
+        Node node = this.root;
+        if(node instanceof LeafNode){
+            node.latch.writeLock();
+            this.rootLatch.unlockRead(rootStamp);
+            return (LeafNode) node;
+        }
+        node.latch.readLock();
+        this.rootLatch.unlockRead(rootStamp);
+        while(true){
+            Node child;
+            try {
+                child = ((NonLeafNode) node).childNodes[node.upperBound(key)];
+                if(child instanceof LeafNode){
+                    child.latch.writeLock();
+                    return (LeafNode) child;
+                }
+                child.latch.readLock();
+            } finally {
+                node.latch.tryUnlockRead();
+            }
+            node = child;
+        }
+    }
+
+    //Insert into the leaf if it cannot split, returns false if the pessimistic path is needed
+    private boolean insertOptimistic(T value, V key)
+    {
+        LeafNode leaf = findLeafForWrite(key);
+        try {
+            int i = leaf.lowerBound(key);
+            if(i < leaf.number && key.compareTo(key(leaf.keys[i])) == 0){
+                leaf.values[i] = value;
+                return true;
+            }
+            if(leaf.number >= this.maxKeys)
+                return false;
+            leaf.insertAt(i, key, value);
+            this.size.increment();
+            return true;
+        } finally {
+            leaf.latch.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * Descend with write latches. A node that has room for one more key absorbs any split below it, so once such a
+     * child is latched every latch above it, the root pointer included, is released.
+     * @param value
+     * @param key
+     */
+    private void insertPessimistic(T value, V key)
+    {
+        LatchPath path = new LatchPath();
+        this.rootLatch.writeLock();
+        path.rootHeld = true;
+        try {
+            Node node = this.root;
+            node.latch.writeLock();
+            path.push(node, -1);
+            if(node.number < this.maxKeys){
+                path.releaseAbove(this.rootLatch);
+            }
+            while(node instanceof NonLeafNode){
+                int i = node.upperBound(key);
+                Node child = ((NonLeafNode) node).childNodes[i];
+                child.latch.writeLock();
+                path.push(child, i);
+                if(child.number < this.maxKeys){
+                    path.releaseAbove(this.rootLatch);
+                }
+                node = child;
+            }
+
+            LeafNode leaf = (LeafNode) node;
+            int i = leaf.lowerBound(key);
+            if(i < leaf.number && key.compareTo(key(leaf.keys[i])) == 0){
+                leaf.values[i] = value;
+                return;
+            }
+            leaf.insertAt(i, key, value);
+            this.size.increment();
+
+            // Split upwards, every node that can overflow is still latched
+            int depth = path.depth - 1;
+            Node current = leaf;
+            while(current.number > this.maxKeys){
+                Node right;
+                Object separator;
+                if(current instanceof LeafNode){
+                    right = ((LeafNode) current).split();
+                    separator = right.keys[0];
+                }
+                else{
+                    NonLeafNode inner = (NonLeafNode) current;
+                    separator = inner.keys[inner.number / 2];
+                    right = inner.split();
+                }
+                if(depth == 0){
+                    NonLeafNode newRoot = new NonLeafNode(this.maxKeys);
+                    newRoot.keys[0] = separator;
+                    newRoot.childNodes[0] = current;
+                    newRoot.childNodes[1] = right;
+                    newRoot.number = 1;
+                    this.root = newRoot;
+                    break;
+                }
+                NonLeafNode parent = (NonLeafNode) path.nodes[depth - 1];
+                parent.insertChild(path.slots[depth], separator, right);
+                current = parent;
+                depth--;
+            }
+        } finally {
+            path.releaseAll(this.rootLatch);
+        }
+    }
+
+    //Delete from the leaf if it cannot underflow, returns 1 deleted, 0 not found, -1 when the pessimistic path is needed
+    private int deleteOptimistic(V key)
+    {
+        LeafNode leaf = findLeafForWrite(key);
+        try {
+            int i = leaf.indexOf(key);
+            if(i < 0)
+                return 0;
+            if(leaf.number <= this.minKeys)
+                return -1;
+            leaf.removeAt(i);
+            this.size.decrement();
+            return 1;
+        } finally {
+            leaf.latch.tryUnlockWrite();
+        }
+    }
+
+    /**
+     * Descend with write latches. A node with more than the minimum number of keys absorbs any merge below it, so once
+     * such a child is latched every latch above it is released. The root is safe while it keeps at least one key.
+     * @param key
+     * @return
+     */
+    private boolean deletePessimistic(V key)
+    {
+        LatchPath path = new LatchPath();
+        this.rootLatch.writeLock();
+        path.rootHeld = true;
+        try {
+            Node node = this.root;
+            node.latch.writeLock();
+            path.push(node, -1);
+            if(node instanceof LeafNode || node.number > 1){
+                path.releaseAbove(this.rootLatch);
+            }
+            while(node instanceof NonLeafNode){
+                int i = node.upperBound(key);
+                Node child = ((NonLeafNode) node).childNodes[i];
+                child.latch.writeLock();
+                path.push(child, i);
+                if(child.number > this.minKeys){
+                    path.releaseAbove(this.rootLatch);
+                }
+                node = child;
+            }
+
+            LeafNode leaf = (LeafNode) node;
+            int i = leaf.indexOf(key);
+            if(i < 0)
+                return false;
+            leaf.removeAt(i);
+            this.size.decrement();
+
+            // Rebalance upwards, every node that can underflow is still latched together with its parent
+            int depth = path.depth - 1;
+            Node current = leaf;
+            while(depth > path.bottom && current.number < this.minKeys){
+                NonLeafNode parent = (NonLeafNode) path.nodes[depth - 1];
+                rebalance(parent, path.slots[depth], current);
+                current = parent;
+                depth--;
+            }
+            if(current == this.root && path.rootHeld && current instanceof NonLeafNode && current.number == 0){
+                this.root = ((NonLeafNode) current).childNodes[0];
+                current.obsolete = true;
+            }
+            return true;
+        } finally {
+            path.releaseAll(this.rootLatch);
+        }
+    }
+
+    /**
+     * Borrow from a sibling under the same parent if it can spare a key, otherwise merge with it. The parent and the
+     * node are write latched; the sibling is latched left to right, so a left sibling is taken only after the node
+     * is let go and the node is latched again behind it. Nothing else can reach the node meanwhile, every writer
+     * comes through the latched parent.
+     * @param parent
+     * @param i position of the node in the parent
+     * @param node
+     */
+    private void rebalance(NonLeafNode parent, int i, Node node)
+    {
+        if(i < parent.number){
+            Node right = parent.childNodes[i + 1];
+            right.latch.writeLock();
+            if(right.number > this.minKeys){
+                node.borrowFromRight(parent, i, right);
+            }
+            else{
+                node.mergeRight(parent, i, right);
+                parent.removeChild(i);
+            }
+            right.latch.tryUnlockWrite();
+        }
+        else{
+            Node left = parent.childNodes[i - 1];
+            node.latch.tryUnlockWrite();
+            left.latch.writeLock();
+            node.latch.writeLock();
+            if(left.number > this.minKeys){
+                node.borrowFromLeft(parent, i, left);
+            }
+            else{
+                left.mergeRight(parent, i - 1, node);
+                parent.removeChild(i - 1);
+            }
+            left.latch.tryUnlockWrite();
+        }
+    }
+
+    //Nodes keep keys and values as Object, every key went in as a V and every value as a T
+    @SuppressWarnings("unchecked")
+    private V key(Object key)
+    {
+        return (V) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(Object value)
+    {
+        return (T) value;
+    }
+
+    //Keys of one tree are mutually comparable
+    @SuppressWarnings("unchecked")
+    static Comparable<Object> comparable(Object key)
+    {
+        return (Comparable<Object>) key;
+    }
+
+    /**
+     * Callback for range searches
+     */
+    public interface EntryVisitor<T, V>
+    {
+        //Return false to stop the scan
+        boolean visit(V key, T value);
+    }
+
+    //Node an optimistic descent is reading, the leaf once it arrives, and the stamp it was read under
+    private static class ReadPosition
+    {
+        Node node;
+        long stamp;
+    }
+
+    /**
+     * Write latches held by a pessimistic writer, from the highest node that may still change down to the current one
+     */
+    private static class LatchPath
+    {
+        final Node[] nodes = new Node[MAX_HEIGHT];
+        //Position of every node in its parent
+        final int[] slots = new int[MAX_HEIGHT];
+        //Index of the highest node still latched
+        int bottom;
+        int depth;
+        boolean rootHeld;
+
+        void push(Node node, int slot)
+        {
+            this.nodes[this.depth] = node;
+            this.slots[this.depth] = slot;
+            this.depth++;
+        }
+
+        //The newest node is safe, release the root pointer and every node above it
+        void releaseAbove(StampedLock rootLatch)
+        {
+            if(this.rootHeld){
+                rootLatch.tryUnlockWrite();
+                this.rootHeld = false;
+            }
+            for(; this.bottom < this.depth - 1; this.bottom++){
+                this.nodes[this.bottom].latch.tryUnlockWrite();
+            }
+        }
+
+        void releaseAll(StampedLock rootLatch)
+        {
+            for(; this.bottom < this.depth; this.bottom++){
+                this.nodes[this.bottom].latch.tryUnlockWrite();
+            }
+            if(this.rootHeld){
+                rootLatch.tryUnlockWrite();
+                this.rootHeld = false;
+            }
+        }
+    }
+
+    /**
+     * Node parent class. Both arrays have one spare slot so a node can overflow by one key before it is split.
+     */
+    abstract static class Node
+    {
+        final StampedLock latch = new StampedLock();
+        // number of keys
+        int number;
+        //key
+        final Object[] keys;
+        //Every key of the node is below the high key, null for the rightmost node of a level
+        Object highKey;
+        //Next node on the same level
+        Node right;
+        //Merged into its left sibling or dropped as the root, optimistic readers that still reach it start again
+        boolean obsolete;
+
+        Node(int maxKeys)
+        {
+            this.keys = new Object[maxKeys + 1];
+        }
+
+        //First slot whose key is greater than the key, number if there is none
+        int upperBound(Object key)
+        {
+            Comparable<Object> k = comparable(key);
+            int low = 0;
+            int high = this.number;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(k.compareTo(this.keys[middle]) >= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        //First slot whose key is greater than or equal to the key, number if there is none
+        int lowerBound(Object key)
+        {
+            Comparable<Object> k = comparable(key);
+            int low = 0;
+            int high = this.number;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(k.compareTo(this.keys[middle]) > 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        //Slot of the key, -1 if it is not in the node
+        int indexOf(Object key)
+        {
+            int i = lowerBound(key);
+            return i < this.number && comparable(key).compareTo(this.keys[i]) == 0 ? i : -1;
+        }
+
+        //This node is at position i of the parent and takes the first entry of its right sibling
+        abstract void borrowFromRight(NonLeafNode parent, int i, Node right);
+
+        //This node is at position i of the parent and takes the last entry of its left sibling
+        abstract void borrowFromLeft(NonLeafNode parent, int i, Node left);
+
+        //This node is at position i of the parent and absorbs its right sibling
+        abstract void mergeRight(NonLeafNode parent, int i, Node right);
+    }
+
+    /**
+     * Non-leaf node class
+     */
+    static final class NonLeafNode extends Node
+    {
+        // child node
+        final Node[] childNodes;
+
+        NonLeafNode(int maxKeys)
+        {
+            super(maxKeys);
+            this.childNodes = new Node[maxKeys + 2];
+        }
+
+        //Insert the separator at slot i and the new right child behind it
+        void insertChild(int i, Object key, Node right)
+        {
+            System.arraycopy(this.keys, i, this.keys, i + 1, this.number - i);
+            System.arraycopy(this.childNodes, i + 1, this.childNodes, i + 2, this.number - i);
+            this.keys[i] = key;
+            this.childNodes[i + 1] = right;
+            this.number++;
+        }
+
+        //Remove the separator at slot i and the child to its right
+        void removeChild(int i)
+        {
+            System.arraycopy(this.keys, i + 1, this.keys, i, this.number - i - 1);
+            System.arraycopy(this.childNodes, i + 2, this.childNodes, i + 1, this.number - i - 1);
+            this.number--;
+            this.keys[this.number] = null;
+            this.childNodes[this.number + 1] = null;
+        }
+
+        //Move the keys and children behind the middle key into a new node, the middle key moves up to the caller
+        NonLeafNode split()
+        {
+            NonLeafNode right = new NonLeafNode(this.keys.length - 1);
+            int middle = this.number / 2;
+            right.number = this.number - middle - 1;
+            System.arraycopy(this.keys, middle + 1, right.keys, 0, right.number);
+            System.arraycopy(this.childNodes, middle + 1, right.childNodes, 0, right.number + 1);
+            right.highKey = this.highKey;
+            this.highKey = this.keys[middle];
+            for(int j = middle; j < this.number; j++){
+                this.keys[j] = null;
+                this.childNodes[j + 1] = null;
+            }
+            this.number = middle;
+            right.right = this.right;
+            this.right = right;
+            return right;
+        }
+
+        @Override
+        void borrowFromRight(NonLeafNode parent, int i, Node right)
+        {
+            // Rotate the first child of the right sibling through the parent
+            NonLeafNode sibling = (NonLeafNode) right;
+            this.keys[this.number] = parent.keys[i];
+            this.childNodes[this.number + 1] = sibling.childNodes[0];
+            this.number++;
+            parent.keys[i] = sibling.keys[0];
+            this.highKey = parent.keys[i];
+            System.arraycopy(sibling.keys, 1, sibling.keys, 0, sibling.number - 1);
+            System.arraycopy(sibling.childNodes, 1, sibling.childNodes, 0, sibling.number);
+            sibling.number--;
+            sibling.keys[sibling.number] = null;
+            sibling.childNodes[sibling.number + 1] = null;
+        }
+
+        @Override
+        void borrowFromLeft(NonLeafNode parent, int i, Node left)
+        {
+            // Rotate the last child of the left sibling through the parent
+            NonLeafNode sibling = (NonLeafNode) left;
+            System.arraycopy(this.keys, 0, this.keys, 1, this.number);
+            System.arraycopy(this.childNodes, 0, this.childNodes, 1, this.number + 1);
+            this.keys[0] = parent.keys[i - 1];
+            this.childNodes[0] = sibling.childNodes[sibling.number];
+            this.number++;
+            parent.keys[i - 1] = sibling.keys[sibling.number - 1];
+            sibling.highKey = parent.keys[i - 1];
+            sibling.number--;
+            sibling.keys[sibling.number] = null;
+            sibling.childNodes[sibling.number + 1] = null;
+        }
+
+        @Override
+        void mergeRight(NonLeafNode parent, int i, Node right)
+        {
+            // Pull the separator down and append the keys and children of the right node
+            NonLeafNode sibling = (NonLeafNode) right;
+            this.keys[this.number] = parent.keys[i];
+            System.arraycopy(sibling.keys, 0, this.keys, this.number + 1, sibling.number);
+            System.arraycopy(sibling.childNodes, 0, this.childNodes, this.number + 1, sibling.number + 1);
+            this.number += sibling.number + 1;
+            this.highKey = sibling.highKey;
+            this.right = sibling.right;
+            sibling.obsolete = true;
+        }
+    }
+
+    /**
+     * Leaf node class
+     */
+    static final class LeafNode extends Node
+    {
+        final Object[] values;
+        LeafNode(int maxKeys)
+        {
+            super(maxKeys);
+            this.values = new Object[maxKeys + 1];
+        }
+
+        void insertAt(int i, Object key, Object value)
+        {
+            System.arraycopy(this.keys, i, this.keys, i + 1, this.number - i);
+            System.arraycopy(this.values, i, this.values, i + 1, this.number - i);
+            this.keys[i] = key;
+            this.values[i] = value;
+            this.number++;
+        }
+
+        void removeAt(int i)
+        {
+            System.arraycopy(this.keys, i + 1, this.keys, i, this.number - i - 1);
+            System.arraycopy(this.values, i + 1, this.values, i, this.number - i - 1);
+            this.number--;
+            this.keys[this.number] = null;
+            this.values[this.number] = null;
+        }
+
+        //Move the upper half into a new leaf linked behind this one
+        LeafNode split()
+        {
+            LeafNode right = new LeafNode(this.keys.length - 1);
+            int leftNodeNumber = (this.number + 1) / 2;
+            right.number = this.number - leftNodeNumber;
+            System.arraycopy(this.keys, leftNodeNumber, right.keys, 0, right.number);
+            System.arraycopy(this.values, leftNodeNumber, right.values, 0, right.number);
+            for(int j = leftNodeNumber; j < this.number; j++){
+                this.keys[j] = null;
+                this.values[j] = null;
+            }
+            this.number = leftNodeNumber;
+            right.highKey = this.highKey;
+            this.highKey = right.keys[0];
+            right.right = this.right;
+            this.right = right;
+            return right;
+        }
+
+        @Override
+        void borrowFromRight(NonLeafNode parent, int i, Node right)
+        {
+            LeafNode sibling = (LeafNode) right;
+            this.keys[this.number] = sibling.keys[0];
+            this.values[this.number] = sibling.values[0];
+            this.number++;
+            sibling.removeAt(0);
+            parent.keys[i] = sibling.keys[0];
+            this.highKey = parent.keys[i];
+        }
+
+        @Override
+        void borrowFromLeft(NonLeafNode parent, int i, Node left)
+        {
+            LeafNode sibling = (LeafNode) left;
+            insertAt(0, sibling.keys[sibling.number - 1], sibling.values[sibling.number - 1]);
+            sibling.removeAt(sibling.number - 1);
+            parent.keys[i - 1] = this.keys[0];
+            sibling.highKey = parent.keys[i - 1];
+        }
+
+        @Override
+        void mergeRight(NonLeafNode parent, int i, Node right)
+        {
+            LeafNode sibling = (LeafNode) right;
+            System.arraycopy(sibling.keys, 0, this.keys, this.number, sibling.number);
+            System.arraycopy(sibling.values, 0, this.values, this.number, sibling.number);
+            this.number += sibling.number;
+            this.highKey = sibling.highKey;
+            this.right = sibling.right;
+            sibling.obsolete = true;
+        }
+    }
+}
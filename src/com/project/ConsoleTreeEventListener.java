@@ -0,0 +1,133 @@
+package com.project;
+
+/**
+ * Prints every tree event to System.out, the tracing the trees used to do unconditionally
+ */
+public class ConsoleTreeEventListener implements TreeEventListener
+{
+    @Override
+    public void onSearch(Object key)
+    {
+        System.out.println("Searching key: " + key);
+    }
+
+    @Override
+    public void onFound(Object key, Object[] keys, int number)
+    {
+        System.out.println("Leaf-node: Key found in node - ");
+        printKeys(keys, number);
+        System.out.println();
+        System.out.println();
+    }
+
+    @Override
+    public void onNotFound(Object key)
+    {
+        System.out.println("Key: " + key + " does not exist!");
+    }
+
+    @Override
+    public void onRangeSearch(Object key1, Object key2)
+    {
+        System.out.println("Range search between keys: " + key1 + "- " + key2);
+    }
+
+    @Override
+    public void onInsert(Object key)
+    {
+        System.out.println("Inserting key: " + key);
+    }
+
+    @Override
+    public void onInsertCompleted(Object key)
+    {
+        System.out.println("Insert completed!");
+        System.out.println();
+    }
+
+    @Override
+    public void onDelete(Object key)
+    {
+        System.out.println();
+        System.out.println("Deleting key: " + key);
+    }
+
+    @Override
+    public void onDeleteCompleted(Object key)
+    {
+        System.out.println("Finished deleting!");
+        System.out.println();
+    }
+
+    @Override
+    public void onDescend(Object separator)
+    {
+        System.out.println("Non-leaf node: lookup key - " + separator);
+    }
+
+    @Override
+    public void onNodeInsert(boolean leaf, Object key, boolean split)
+    {
+        if(leaf){
+            System.out.println("Leaf-node: insert key - " + key + (split ? ", need to split" : ", no splitting is required"));
+        }
+        else{
+            System.out.println("Non-leaf node: insert key - " + key + (split ? ", need to split" : ", no split required"));
+        }
+    }
+
+    @Override
+    public void onNodeDelete(boolean leaf, Object key, boolean underflow)
+    {
+        if(leaf){
+            System.out.println("Leaf-node: delete key - " + key + (underflow ? ", need to re-distribute" : ", no re-distribution is required"));
+        }
+        else{
+            System.out.println("Non-leaf node: delete key - " + key + (underflow ? ", need to coalesce" : ", no coalescence required"));
+        }
+    }
+
+    @Override
+    public void onSplit(boolean leaf, Object[] leftKeys, int leftNumber, Object[] rightKeys, int rightNumber)
+    {
+        System.out.println(leaf ? "Leaf-node: after the split - " : "Non-leaf node: after the split - ");
+        printKeys(leftKeys, leftNumber);
+        System.out.print(" ");
+        printKeys(rightKeys, rightNumber);
+        System.out.println();
+    }
+
+    @Override
+    public void onNewRoot()
+    {
+        System.out.println("Parent node is empty, create new parent node");
+    }
+
+    @Override
+    public void onRedistribute(boolean leaf, Object[] leftKeys, int leftNumber, Object[] rightKeys, int rightNumber)
+    {
+        System.out.println(leaf ? "Leaf-node: after redistribution - " : "Non-leaf node: after redistribution - ");
+        printKeys(leftKeys, leftNumber);
+        System.out.print(" ");
+        printKeys(rightKeys, rightNumber);
+        System.out.println();
+    }
+
+    @Override
+    public void onCoalesce(boolean leaf, Object[] keys, int number)
+    {
+        System.out.println(leaf ? "Leaf-node: after coalescence - " : "Non-leaf node: after coalescence - ");
+        printKeys(keys, number);
+        System.out.println();
+    }
+
+    private static void printKeys(Object[] keys, int number)
+    {
+        System.out.print("[");
+        for(int j = 0; j < number; j++){
+            System.out.print(keys[j]);
+            System.out.print(" ");
+        }
+        System.out.print("]");
+    }
+}
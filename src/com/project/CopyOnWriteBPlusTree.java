@@ -0,0 +1,498 @@
+package com.project;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CopyOnWriteBPlusTree<T, V extends Comparable<V>>
+{
+    /**
+     * B+ tree whose nodes never change once they are published. A mutation copies the nodes on the path from the
+     * leaf to the root, shares every other node with the previous version, and publishes the new root with one
+     * atomic store. Writers are serialized, readers never wait: snapshot() pins the current root, and the view can be
+     * read and iterated for as long as needed while writers go on. A version whose root no snapshot references any
+     * more is reclaimed by the garbage collector, nodes it shares with newer versions stay.
+     * Leaves have no sibling links, those would force a copy of the whole leaf chain; range scans walk down from the
+     * root with a stack instead.
+     * Keys are unique, inserting an existing key replaces its value.
+     *
+     * @param <T> specifies the value type
+     * @param <V> specifies the index type
+     */
+    //B+ tree order
+    private final int bTreeOrder;
+    // The minimum number of keys for a node other than the root
+    private final int minKeys;
+    //The maximum number of keys for a node
+    private final int maxKeys;
+
+    //The published version, replaced as a whole by every mutation
+    private final AtomicReference<Snapshot> current;
+
+    //Serializes writers, readers never take it
+    private final Object writeLock = new Object();
+
+    // No parameter construction method, the default order is 3
+    public CopyOnWriteBPlusTree()
+    {
+        this(3);
+    }
+
+    public CopyOnWriteBPlusTree(int bTreeOrder)
+    {
+        if(bTreeOrder < 3)
+            throw new IllegalArgumentException("B+ tree order must be at least 3: " + bTreeOrder);
+        this.bTreeOrder = bTreeOrder;
+        this.minKeys = (int) (Math.ceil((bTreeOrder + 1) / 2.0) - 1.0);
+        this.maxKeys = bTreeOrder;
+        this.current = new AtomicReference<>(new Snapshot(new LeafNode(new Object[0], new Object[0]), 0, 0));
+    }
+
+    //Read-only view of the tree as it is now, unaffected by later mutations
+    public Snapshot snapshot()
+    {
+        return this.current.get();
+    }
+
+    public long size()
+    {
+        return this.current.get().size;
+    }
+
+    //Search in the current version
+    public T search(V key)
+    {
+        return this.current.get().search(key);
+    }
+
+    //Insert, an existing key gets the new value
+    public void insert(T value, V key)
+    {
+        if(key == null)
+            throw new IllegalArgumentException("Key must not be null");
+        synchronized (this.writeLock) {
+            Snapshot version = this.current.get();
+            Split split = new Split();
+            Node root = insert(version.root, key, value, split);
+            if(split.right != null){
+                root = new NonLeafNode(new Object[]{split.key}, new Node[]{root, split.right});
+            }
+            this.current.set(new Snapshot(root, version.size + (split.added ? 1 : 0), version.version + 1));
+        }
+    }
+
+    //Delete, returns false if the key does not exist
+    public boolean delete(V key)
+    {
+        if(key == null)
+            return false;
+        synchronized (this.writeLock) {
+            Snapshot version = this.current.get();
+            Node root = delete(version.root, key);
+            if(root == version.root)
+                return false;
+            // The root shrinks by one level once its last key is gone
+            if(root instanceof NonLeafNode && root.keys.length == 0){
+                root = ((NonLeafNode) root).childNodes[0];
+            }
+            this.current.set(new Snapshot(root, version.size - 1, version.version + 1));
+            return true;
+        }
+    }
+
+    /**
+     * Insert below the node and return its copy. A copy that overflows is split, the right half and its separator
+     * are handed back in split for the parent to take.
+     * @param node
+     * @param key
+     * @param value
+     * @param split
+     * @return
+     */
+    private Node insert(Node node, Object key, Object value, Split split)
+    {
+        if(node instanceof LeafNode){
+            LeafNode leaf = (LeafNode) node;
+            int i = leaf.lowerBound(key);
+            if(i < leaf.keys.length && compare(key, leaf.keys[i]) == 0){
+                Object[] values = leaf.values.clone();
+                values[i] = value;
+                return new LeafNode(leaf.keys, values);
+            }
+            split.added = true;
+            Object[] keys = insertAt(leaf.keys, i, key);
+            Object[] values = insertAt(leaf.values, i, value);
+            if(keys.length <= this.maxKeys)
+                return new LeafNode(keys, values);
+
+            // Split, the left copy keeps the lower half
+            int leftNodeNumber = (keys.length + 1) / 2;
+            LeafNode right = new LeafNode(slice(keys, leftNodeNumber, keys.length), slice(values, leftNodeNumber, values.length));
+            split.key = right.keys[0];
+            split.right = right;
+            return new LeafNode(slice(keys, 0, leftNodeNumber), slice(values, 0, leftNodeNumber));
+        }
+
+        NonLeafNode inner = (NonLeafNode) node;
+        int i = inner.upperBound(key);
+        Node child = insert(inner.childNodes[i], key, value, split);
+        Node[] children = inner.childNodes.clone();
+        children[i] = child;
+        if(split.right == null)
+            return new NonLeafNode(inner.keys, children);
+
+        Object[] keys = insertAt(inner.keys, i, split.key);
+        children = insertAt(children, i + 1, split.right);
+        if(keys.length <= this.maxKeys){
+            split.right = null;
+            return new NonLeafNode(keys, children);
+        }
+
+        // Split, the middle key moves up
+        int middle = keys.length / 2;
+        split.key = keys[middle];
+        split.right = new NonLeafNode(slice(keys, middle + 1, keys.length), slice(children, middle + 1, children.length));
+        return new NonLeafNode(slice(keys, 0, middle), slice(children, 0, middle + 1));
+    }
+
+    /**
+     * Delete below the node and return its copy, or the node itself if the key does not exist. An underfull child
+     * copy borrows from or merges with a copy of its sibling.
+     * @param node
+     * @param key
+     * @return
+     */
+    private Node delete(Node node, Object key)
+    {
+        if(node instanceof LeafNode){
+            LeafNode leaf = (LeafNode) node;
+            int i = leaf.lowerBound(key);
+            if(i >= leaf.keys.length || compare(key, leaf.keys[i]) != 0)
+                return node;
+            return new LeafNode(removeAt(leaf.keys, i), removeAt(leaf.values, i));
+        }
+
+        NonLeafNode inner = (NonLeafNode) node;
+        int i = inner.upperBound(key);
+        Node child = delete(inner.childNodes[i], key);
+        if(child == inner.childNodes[i])
+            return node;
+        Object[] keys = inner.keys;
+        Node[] children = inner.childNodes.clone();
+        children[i] = child;
+        if(child.keys.length >= this.minKeys)
+            return new NonLeafNode(keys, children);
+
+        // Rebalance with the right sibling, the last child uses its left one
+        int left = i < keys.length ? i : i - 1;
+        Split split = new Split();
+        children[left] = rebalance(children[left], keys[left], children[left + 1], split);
+        if(split.right != null){
+            keys = keys.clone();
+            keys[left] = split.key;
+            children[left + 1] = split.right;
+            return new NonLeafNode(keys, children);
+        }
+        return new NonLeafNode(removeAt(keys, left), removeAt(children, left + 1));
+    }
+
+    /**
+     * Even out two adjacent siblings and their separator. Returns the merged copy when they fit together, otherwise
+     * the left copy, with the right copy and the new separator in split.
+     * @param left
+     * @param key separator between them in the parent
+     * @param right
+     * @param split
+     * @return
+     */
+    private Node rebalance(Node left, Object key, Node right, Split split)
+    {
+        if(left instanceof LeafNode){
+            LeafNode l = (LeafNode) left;
+            LeafNode r = (LeafNode) right;
+            Object[] keys = concat(l.keys, r.keys);
+            Object[] values = concat(l.values, r.values);
+            if(keys.length <= this.maxKeys)
+                return new LeafNode(keys, values);
+            int leftNodeNumber = keys.length / 2;
+            split.right = new LeafNode(slice(keys, leftNodeNumber, keys.length), slice(values, leftNodeNumber, values.length));
+            split.key = split.right.keys[0];
+            return new LeafNode(slice(keys, 0, leftNodeNumber), slice(values, 0, leftNodeNumber));
+        }
+
+        // Non-leaf nodes: pull the separator down, then split again around the middle if the result is too big
+        NonLeafNode l = (NonLeafNode) left;
+        NonLeafNode r = (NonLeafNode) right;
+        Object[] keys = concat(concat(l.keys, new Object[]{key}), r.keys);
+        Node[] children = concat(l.childNodes, r.childNodes);
+        if(keys.length <= this.maxKeys)
+            return new NonLeafNode(keys, children);
+        int middle = keys.length / 2;
+        split.key = keys[middle];
+        split.right = new NonLeafNode(slice(keys, middle + 1, keys.length), slice(children, middle + 1, children.length));
+        return new NonLeafNode(slice(keys, 0, middle), slice(children, 0, middle + 1));
+    }
+
+    //Keys of one tree are mutually comparable
+    @SuppressWarnings("unchecked")
+    private static int compare(Object key1, Object key2)
+    {
+        return ((Comparable<Object>) key1).compareTo(key2);
+    }
+
+    //Nodes keep keys and values as Object, every key went in as a V and every value as a T
+    @SuppressWarnings("unchecked")
+    private V key(Object key)
+    {
+        return (V) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(Object value)
+    {
+        return (T) value;
+    }
+
+    private static <E> E[] insertAt(E[] array, int i, E element)
+    {
+        E[] copy = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, i, copy, i + 1, array.length - i);
+        copy[i] = element;
+        return copy;
+    }
+
+    private static <E> E[] removeAt(E[] array, int i)
+    {
+        E[] copy = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, i + 1, copy, i, array.length - i - 1);
+        return copy;
+    }
+
+    private static <E> E[] slice(E[] array, int from, int to)
+    {
+        return Arrays.copyOfRange(array, from, to);
+    }
+
+    private static <E> E[] concat(E[] first, E[] second)
+    {
+        E[] copy = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, copy, first.length, second.length);
+        return copy;
+    }
+
+    /**
+     * Immutable view of one version of the tree
+     */
+    public final class Snapshot
+    {
+        private final Node root;
+        private final long size;
+        //Number of mutations before this version
+        private final long version;
+
+        Snapshot(Node root, long size, long version)
+        {
+            this.root = root;
+            this.size = size;
+            this.version = version;
+        }
+
+        public long size()
+        {
+            return this.size;
+        }
+
+        public long version()
+        {
+            return this.version;
+        }
+
+        //Search
+        public T search(V key)
+        {
+            Node node = this.root;
+            while(node instanceof NonLeafNode){
+                node = ((NonLeafNode) node).childNodes[node.upperBound(key)];
+            }
+            LeafNode leaf = (LeafNode) node;
+            int i = leaf.lowerBound(key);
+            return i < leaf.keys.length && compare(key, leaf.keys[i]) == 0 ? value(leaf.values[i]) : null;
+        }
+
+        //Range search, a cursor over the values of all keys in [key1, key2] in key order
+        public RangeCursor rangeSearch(V key1, V key2)
+        {
+            return new RangeCursor(this.root, key1, key2);
+        }
+
+        //Cursor over every entry in key order
+        public RangeCursor entries()
+        {
+            return new RangeCursor(this.root, null, null);
+        }
+    }
+
+    /**
+     * Cursor over a key range of one version. It keeps the path from the root to the current leaf and climbs it to
+     * reach the next leaf, so it needs no sibling links.
+     */
+    public class RangeCursor implements Iterator<T>
+    {
+        private final Node[] path = new Node[64];
+        private final int[] slots = new int[64];
+        //Index of the current leaf in the path, -1 once exhausted
+        private int depth;
+        private final V upper;
+        private V key;
+
+        RangeCursor(Node root, V lower, V upper)
+        {
+            this.upper = upper;
+            Node node = root;
+            this.depth = 0;
+            while(node instanceof NonLeafNode){
+                int i = lower == null ? 0 : node.upperBound(lower);
+                this.path[this.depth] = node;
+                this.slots[this.depth] = i;
+                this.depth++;
+                node = ((NonLeafNode) node).childNodes[i];
+            }
+            this.path[this.depth] = node;
+            this.slots[this.depth] = lower == null ? 0 : ((LeafNode) node).lowerBound(lower);
+            settle();
+        }
+
+        // Climb to the next leaf when this one is exhausted, and stop at the upper bound
+        private void settle()
+        {
+            while(this.depth >= 0 && this.slots[this.depth] >= this.path[this.depth].keys.length + (this.path[this.depth] instanceof LeafNode ? 0 : 1)){
+                this.depth--;
+                if(this.depth < 0)
+                    return;
+                this.slots[this.depth]++;
+                // Descend to the leftmost leaf of the next child
+                while(this.slots[this.depth] <= this.path[this.depth].keys.length && this.path[this.depth] instanceof NonLeafNode){
+                    Node child = ((NonLeafNode) this.path[this.depth]).childNodes[this.slots[this.depth]];
+                    this.depth++;
+                    this.path[this.depth] = child;
+                    this.slots[this.depth] = 0;
+                    if(child instanceof LeafNode)
+                        break;
+                }
+            }
+            if(this.depth >= 0 && this.upper != null && compare(this.upper, this.path[this.depth].keys[this.slots[this.depth]]) < 0){
+                this.depth = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.depth >= 0;
+        }
+
+        @Override
+        public T next()
+        {
+            if(this.depth < 0)
+                throw new NoSuchElementException();
+            LeafNode leaf = (LeafNode) this.path[this.depth];
+            int i = this.slots[this.depth];
+            this.key = CopyOnWriteBPlusTree.this.key(leaf.keys[i]);
+            T value = value(leaf.values[i]);
+            this.slots[this.depth]++;
+            settle();
+            return value;
+        }
+
+        //Key of the value last returned by next
+        public V key()
+        {
+            return this.key;
+        }
+    }
+
+    //Outcome of an insert below a node
+    private static class Split
+    {
+        //The key was new, not a replaced value
+        boolean added;
+        //Separator and right half when the node was split
+        Object key;
+        Node right;
+    }
+
+    /**
+     * Node parent class, the arrays are sized to the keys they hold and never written after construction
+     */
+    abstract static class Node
+    {
+        //key
+        final Object[] keys;
+
+        Node(Object[] keys)
+        {
+            this.keys = keys;
+        }
+
+        //First slot whose key is greater than the key
+        int upperBound(Object key)
+        {
+            int low = 0;
+            int high = this.keys.length;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(compare(key, this.keys[middle]) >= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        //First slot whose key is greater than or equal to the key
+        int lowerBound(Object key)
+        {
+            int low = 0;
+            int high = this.keys.length;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(compare(key, this.keys[middle]) > 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Non-leaf node class
+     */
+    static final class NonLeafNode extends Node
+    {
+        // child node
+        final Node[] childNodes;
+
+        NonLeafNode(Object[] keys, Node[] childNodes)
+        {
+            super(keys);
+            this.childNodes = childNodes;
+        }
+    }
+
+    /**
+     * Leaf node class
+     */
+    static final class LeafNode extends Node
+    {
+        final Object[] values;
+
+        LeafNode(Object[] keys, Object[] values)
+        {
+            super(keys);
+            this.values = values;
+        }
+    }
+}
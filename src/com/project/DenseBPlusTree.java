@@ -1,7 +1,20 @@
 package com.project;
 
-import java.lang.reflect.Array;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DenseBPlusTree<T, V extends Comparable<V>>
 {
@@ -22,6 +35,46 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
 
     private LeafNode<T, V> leafNode;
 
+    // Nodes with at most this many keys are searched with the branch-free lower bound when it is enabled
+    static final int BRANCH_FREE_SEARCH_LIMIT = 16;
+
+    // Nodes a task of the parallel bulk load builds without splitting further
+    static final int PARALLEL_BUILD_NODES = 1024;
+
+    //Runs of sorted keys that searchAll descends side by side
+    static final int SEARCH_LANES = 8;
+    //Smaller batches are searched key by key
+    static final int SEARCH_ALL_MIN_BATCH = 64;
+
+    private boolean branchFreeSearch;
+
+    private TreeEventListener listener = TreeEventListener.NONE;
+
+    private TreeStatistics statistics;
+
+    //Bits per key of the per-leaf Bloom filters, 0 when the leaves keep no filter
+    private int bloomBitsPerKey;
+
+    //Cache of hot search results in front of the tree, null when it is off
+    private LookupCache<V, T> lookupCache;
+
+    //A delete rebalances a leaf once it holds fewer keys than this, between 1 and minKeys
+    private int mergeThreshold;
+    //Deletes only mark their entries, compaction removes the marks
+    private boolean lazyDeletes;
+    //Marked entries in the leaves
+    private long tombstones;
+    //First key of the leaf the next compaction step starts at, null for the leftmost leaf
+    private V compactionKey;
+
+    //Non-leaf nodes count the entries below each of their children
+    private boolean subtreeCounts;
+    //Non-leaf nodes cache the aggregate of the values below each of their children, null when it is off
+    private Aggregator<Object, Object> aggregator;
+
+    //Value of an entry that was deleted lazily
+    static final Object TOMBSTONE = new Object();
+
     // No parameter construction method, the default order is 3
     public DenseBPlusTree()
     {
@@ -35,66 +88,1175 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         this.minKeys = (int) (Math.ceil((bTreeOrder + 1)/ 2.0) - 1.0);
         // Because there may be more than the upper limit during the insertion of the node, so add 1 here
         this.maxKeys = bTreeOrder;
+        this.mergeThreshold = this.minKeys;
         this.root = new LeafNode<T, V>();
         this.leafNode = null;
     }
 
+    // Use a fixed-iteration lower bound for small nodes instead of the classic binary search
+    public void setBranchFreeSearch(boolean branchFreeSearch)
+    {
+        this.branchFreeSearch = branchFreeSearch;
+    }
+
+    // Route the trace of every operation to the listener, null switches tracing off
+    public void setTreeEventListener(TreeEventListener listener)
+    {
+        this.listener = listener == null ? TreeEventListener.NONE : listener;
+    }
+
+    /**
+     * Keep a Bloom filter over the keys of every leaf, so a search for an absent key is usually rejected without
+     * searching the leaf. The filters are built here and kept up to date by every insert, split, delete and
+     * rebalance after that. Keys equal by compareTo must have equal hash codes.
+     * @param bitsPerKey filter bits per key slot of a leaf, 0 drops the filters
+     */
+    public void enableBloomFilters(int bitsPerKey)
+    {
+        if(bitsPerKey < 0)
+            throw new IllegalArgumentException("Bits per key must not be negative: " + bitsPerKey);
+        this.bloomBitsPerKey = bitsPerKey;
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[0];
+        }
+        for(LeafNode<T, V> leaf = (LeafNode<T, V>) node; leaf != null; leaf = leaf.right){
+            leaf.filter = null;
+            leaf.rebuildFilter();
+        }
+    }
+
+    /**
+     * Keep in every non-leaf node the number of entries below each of its children, so count, rank and select
+     * descend once instead of walking the leaves. The counts are built here and kept up to date by every insert,
+     * delete, split, rebalance and bulk load after that.
+     * @param subtreeCounts false drops the counts
+     */
+    public void setSubtreeCounts(boolean subtreeCounts)
+    {
+        this.subtreeCounts = subtreeCounts;
+        summarize(this.root);
+    }
+
+    /**
+     * Cache in every non-leaf node the aggregate of the values below each of its children, so aggregate(key1, key2)
+     * combines whole subtrees and only reads the leaves at the two bounds. The aggregates are built here and kept up
+     * to date by every insert, delete, split, rebalance and bulk load after that.
+     * @param aggregator null drops the aggregates
+     */
+    public void setAggregator(Aggregator<? super T, ?> aggregator)
+    {
+        this.aggregator = (Aggregator<Object, Object>) aggregator;
+        summarize(this.root);
+    }
+
+    //Rebuild the counts and aggregates of the node and the nodes below it, or drop the ones that are off
+    private void summarize(Node<T, V> node)
+    {
+        if(node instanceof LeafNode)
+            return;
+        NonLeafNode<T, V> parent = (NonLeafNode<T, V>) node;
+        parent.counts = this.subtreeCounts ? new long[maxKeys + 2] : null;
+        parent.aggregates = this.aggregator != null ? new Object[maxKeys + 2] : null;
+        for(int i = 0; i <= parent.number; i++){
+            summarize(parent.childNodes[i]);
+            parent.refresh(i);
+        }
+    }
+
+    /**
+     * Rebalance a leaf only once a delete leaves it with fewer keys than the threshold. Leaves between the threshold
+     * and the minimum are tolerated, so keys that are deleted and inserted again around a node boundary do not
+     * coalesce and split the same leaves over and over.
+     * @param threshold from 1, only empty leaves are rebalanced, up to the minimum number of keys, the default
+     */
+    public void setMergeThreshold(int threshold)
+    {
+        if(threshold < 1 || threshold > minKeys)
+            throw new IllegalArgumentException("Merge threshold must be between 1 and " + minKeys + ": " + threshold);
+        this.mergeThreshold = threshold;
+    }
+
+    /**
+     * Let deletes only mark their entry, so a delete never moves keys or restructures the tree. Searches and ranges
+     * skip the marks, an insert of a key whose last entry is marked takes over its slot, and compact() removes them.
+     * Switching it off compacts the whole tree.
+     * @param lazyDeletes
+     */
+    public void setLazyDeletes(boolean lazyDeletes)
+    {
+        this.lazyDeletes = lazyDeletes;
+        if(!lazyDeletes){
+            compact();
+        }
+    }
+
+    //Entries marked by lazy deletes and not yet compacted
+    public long getTombstones()
+    {
+        return this.tombstones;
+    }
+
+    //Compact every leaf, returns the number of marks removed
+    public long compact()
+    {
+        long tombstones = this.tombstones;
+        this.compactionKey = null;
+        compact(Integer.MAX_VALUE);
+        return tombstones - this.tombstones;
+    }
+
+    /**
+     * One step of compaction, meant to run between operations: visit up to maxLeaves leaves from where the last
+     * step stopped, remove their marks and rebalance the leaves that end up below the merge threshold. The position
+     * is kept as a key, so the tree may change freely between steps.
+     * @param maxLeaves
+     * @return true when the step reached the last leaf, the next one starts over at the leftmost leaf
+     */
+    public boolean compact(int maxLeaves)
+    {
+        LeafNode<T, V> leaf;
+        if(this.compactionKey == null){
+            Node<T, V> node = this.root;
+            while(node instanceof NonLeafNode){
+                node = node.childNodes[0];
+            }
+            leaf = (LeafNode<T, V>) node;
+        }
+        else{
+            leaf = findLowerLeaf(this.compactionKey);
+        }
+        for(int visited = 0; leaf != null && visited < maxLeaves; visited++){
+            // The siblings too, a rebalance may move their entries
+            leaf.squeeze();
+            if(leaf.left != null){
+                leaf.left.squeeze();
+            }
+            if(leaf.right != null){
+                leaf.right.squeeze();
+            }
+            if(leaf.number < this.mergeThreshold && leaf.parent != null){
+                Node<T, V> t = leaf.rebalance();
+                if(t != null){
+                    this.root = t;
+                }
+                // Coalescing two nearly empty leaves may leave the survivor below the threshold, so visit it again
+                LeafNode<T, V> survivor = leaf.left != null && leaf.left.right != leaf ? leaf.left : leaf;
+                if(survivor.number < this.mergeThreshold && survivor.parent != null && survivor.parent.number > 0){
+                    leaf = survivor;
+                    continue;
+                }
+            }
+            // A leaf coalesced into its left sibling keeps its right link
+            leaf = leaf.right;
+        }
+        refreshLeafNode();
+        while(leaf != null && leaf.number == 0){
+            leaf = leaf.right;
+        }
+        this.compactionKey = leaf == null ? null : (V) leaf.keys[0];
+        return leaf == null;
+    }
+
+    /**
+     * Put a bounded cache of search results in front of the tree, so a repeated search for a hot key skips the
+     * descent. Misses are not cached. Every insert and delete drops its key from the cache, a bulk load clears it.
+     * @param capacity most keys cached, 0 drops the cache
+     * @return the cache, for its hit ratio, or null when it was dropped
+     */
+    public LookupCache<V, T> enableLookupCache(int capacity)
+    {
+        this.lookupCache = capacity == 0 ? null : new LookupCache<>(capacity);
+        return this.lookupCache;
+    }
+
+    /**
+     * Start collecting statistics. The shape of the tree is counted once here, after that every operation keeps it
+     * up to date and records its latency. Calling it again returns the same statistics.
+     * @return
+     */
+    public TreeStatistics enableStatistics()
+    {
+        if(this.statistics == null){
+            this.statistics = new TreeStatistics(this.bTreeOrder, new long[0], 0);
+            countShape();
+        }
+        return this.statistics;
+    }
+
+    //Statistics of the tree, null unless they were enabled
+    public TreeStatistics getStatistics()
+    {
+        return this.statistics;
+    }
+
+    //Point leafNode at the leftmost leaf again after the shape of the tree changed
+    private void refreshLeafNode()
+    {
+        this.leafNode = this.root.refreshLeft();
+    }
+
+    //Count the nodes level by level and the keys in the leaves, and hand them to the statistics
+    private void countShape()
+    {
+        long[] nodesPerLevel = new long[TreeStatistics.MAX_LEVELS];
+        int height = 0;
+        long keys = 0;
+        List<Node<T, V>> level = new ArrayList<>();
+        level.add(this.root);
+        while(!level.isEmpty()){
+            nodesPerLevel[height++] = level.size();
+            List<Node<T, V>> next = new ArrayList<>();
+            for(Node<T, V> node : level){
+                if(node instanceof LeafNode){
+                    keys += node.number;
+                    continue;
+                }
+                for(int j = 0; j <= node.number; j++){
+                    next.add(node.childNodes[j]);
+                }
+            }
+            level = next;
+        }
+        this.statistics.rebuilt(Arrays.copyOf(nodesPerLevel, height), keys - this.tombstones);
+    }
+
     //Search
     public T search(V key)
     {
-        System.out.println("Searching key: " + key);
-        T t = this.root.search(key);
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onSearch(key);
+        T t = this.lookupCache == null ? null : this.lookupCache.get(key);
+        if(t == null){
+            t = this.root.search(key);
+            if(t != null && this.lookupCache != null){
+                this.lookupCache.put(key, t);
+            }
+        }
         if(t == null){
-            System.out.println("Key: " + key + " does not exist!");
+            listener.onNotFound(key);
+        }
+        if(this.statistics != null){
+            this.statistics.recordSearch(System.nanoTime() - time);
         }
         return t;
     }
 
-    public T rangeSearch(V key1, V key2)
+    /**
+     * Search a batch of keys, the results come back in the order of the keys. The keys are sorted and split into
+     * SEARCH_LANES runs. Each run does a shared descent: it keeps its path from the root together with the upper fence
+     * of every node on it, and the next key climbs only as far as the first node whose range still covers it.
+     * The runs advance one node at a time in turn, so the node loads of different runs are independent and their
+     * cache misses overlap. Small batches are searched key by key.
+     * The whole batch is recorded as one batch search latency.
+     * @param keys null keys get null
+     * @return
+     */
+    public List<T> searchAll(V[] keys)
     {
-        System.out.println("Range search between keys: " + key1 + "- " + key2);
-        T t = this.root.rangeSearch(key1, key2);
-        if(t == null){
-            System.out.println("No keys found in the range: " + key1 + "-" + key2);
+        if(keys.length < SEARCH_ALL_MIN_BATCH){
+            List<T> results = new ArrayList<>(keys.length);
+            for(V key : keys){
+                results.add(key == null ? null : search(key));
+            }
+            return results;
         }
-        else{
-            System.out.println("Keys in the range: " + key1 + "-" + key2 + " are as follows:");
-            System.out.println(t.toString());
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        Object[] results = new Object[keys.length];
+        Integer[] positions = sortedPositions(keys);
+
+        int height = 1;
+        for(Node<T, V> node = this.root; node instanceof NonLeafNode; node = node.childNodes[0]){
+            height++;
         }
-        return t;
+        // Lane l keeps its path and fences at [l * height, (l + 1) * height), a null fence is no bound
+        int lanes = Math.min(SEARCH_LANES, positions.length);
+        Node<T, V>[] path = newNodes(lanes * height);
+        Object[] fences = new Object[lanes * height];
+        int[] depth = new int[lanes];
+        int[] next = new int[lanes];
+        int[] end = new int[lanes];
+        for(int lane = 0; lane < lanes; lane++){
+            next[lane] = (int) ((long) positions.length * lane / lanes);
+            end[lane] = (int) ((long) positions.length * (lane + 1) / lanes);
+            path[lane * height] = this.root;
+        }
+
+        int active = lanes;
+        while(active > 0){
+            for(int lane = 0; lane < lanes; lane++){
+                if(next[lane] == end[lane])
+                    continue;
+                V key = keys[positions[next[lane]]];
+                int d = lane * height + depth[lane];
+                Node<T, V> node = path[d];
+                if(node instanceof NonLeafNode){
+                    // One level down, as search takes it
+                    int c = node.upperBound(key);
+                    fences[d + 1] = c < node.number ? node.keys[c] : fences[d];
+                    path[d + 1] = node.childNodes[c];
+                    depth[lane]++;
+                    continue;
+                }
+
+                listener.onSearch(key);
+                LeafNode<T, V> leaf = (LeafNode<T, V>) node;
+                int i = leaf.mightContain(key) ? leaf.find(key) : leaf.number;
+                if(i < leaf.number){
+                    results[positions[next[lane]]] = leaf.values[i];
+                }
+                else{
+                    listener.onNotFound(key);
+                }
+                next[lane]++;
+                if(next[lane] == end[lane]){
+                    active--;
+                    continue;
+                }
+                // Climb while the next key lies beyond the subtree, the root covers every key
+                V nextKey = keys[positions[next[lane]]];
+                while(depth[lane] > 0 && fences[lane * height + depth[lane]] != null
+                        && nextKey.compareTo((V) fences[lane * height + depth[lane]]) >= 0){
+                    depth[lane]--;
+                }
+            }
+        }
+        if(this.statistics != null){
+            this.statistics.recordBatchSearch(System.nanoTime() - time);
+        }
+        return Arrays.asList((T[]) results);
+    }
+
+    /**
+     * Range search, descends once to the first key not below key1 and returns a cursor that walks the leaf chain lazily
+     * until the first key above key2, so nothing is materialized and the caller can stop at any point
+     * @param key1 lower bound, inclusive
+     * @param key2 upper bound, inclusive
+     * @return cursor over the values in key order
+     */
+    public RangeCursor rangeSearch(V key1, V key2)
+    {
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onRangeSearch(key1, key2);
+        LeafNode<T, V> leaf = findLowerLeaf(key1);
+        RangeCursor cursor = new RangeCursor(leaf, leaf.lowerBound(key1), key2);
+        // The walk runs at the pace of the caller, the latency covers the descent to the first key
+        if(this.statistics != null){
+            this.statistics.recordRange(System.nanoTime() - time);
+        }
+        return cursor;
+    }
+
+    //Cursor over every entry in key order, it starts at the leftmost leaf even when deletes left that leaf empty
+    public RangeCursor entries()
+    {
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[0];
+        }
+        return new RangeCursor((LeafNode<T, V>) node, 0, null);
+    }
+
+    /**
+     * Range search as an ordered spliterator. It splits along the tree, each half is a run of whole subtrees that
+     * one worker walks over the leaf chain, so a parallel stream spreads the range over every core.
+     * The tree must not change while the spliterator is in use.
+     * @param key1 lower bound, inclusive
+     * @param key2 upper bound, inclusive
+     * @return
+     */
+    public Spliterator<T> rangeSpliterator(V key1, V key2)
+    {
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onRangeSearch(key1, key2);
+        LeafNode<T, V> leaf = findLowerLeaf(key1);
+        RangeSpliterator spliterator = new RangeSpliterator(leaf, leaf.lowerBound(key1), null, key2, this.root);
+        if(this.statistics != null){
+            this.statistics.recordRange(System.nanoTime() - time);
+        }
+        return spliterator;
+    }
+
+    //Range search as an ordered stream, short-circuiting operations stop the leaf walk early
+    public Stream<T> rangeStream(V key1, V key2)
+    {
+        return StreamSupport.stream(rangeSpliterator(key1, key2), false);
+    }
+
+    /**
+     * Range search as a parallel stream. Ordered operations merge the sub-ranges back in key order, unordered()
+     * lets the workers hand over their values as they find them
+     * @param key1 lower bound, inclusive
+     * @param key2 upper bound, inclusive
+     * @return
+     */
+    public Stream<T> parallelRangeStream(V key1, V key2)
+    {
+        return StreamSupport.stream(rangeSpliterator(key1, key2), true);
+    }
+
+    /**
+     * Number of entries with a key in [key1, key2], taken from the subtree counts on the paths to the two bounds
+     * without reading the leaves in between. Needs setSubtreeCounts(true)
+     * @param key1 lower bound, inclusive
+     * @param key2 upper bound, inclusive
+     * @return
+     */
+    public long count(V key1, V key2)
+    {
+        checkCounts();
+        if(key1.compareTo(key2) > 0)
+            return 0;
+        return countBelow(key2, true) - countBelow(key1, false);
+    }
+
+    //Number of entries with a key below the key, the position of its first entry in key order. Needs setSubtreeCounts(true)
+    public long rank(V key)
+    {
+        checkCounts();
+        return countBelow(key, false);
+    }
+
+    /**
+     * Key of the entry at a position in key order, the children whose counts add up to less than the position are
+     * skipped on the way down. Needs setSubtreeCounts(true)
+     * @param k position from 0
+     * @return
+     */
+    public V select(long k)
+    {
+        checkCounts();
+        long size = this.root.size();
+        if(k < 0 || k >= size)
+            throw new IndexOutOfBoundsException("Position " + k + " is outside the " + size + " entries");
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            long[] counts = ((NonLeafNode<T, V>) node).counts;
+            int i = 0;
+            while(k >= counts[i]){
+                k -= counts[i];
+                i++;
+            }
+            node = node.childNodes[i];
+        }
+        for(int i = 0; ; i++){
+            if(((LeafNode<T, V>) node).values[i] != TOMBSTONE && k-- == 0)
+                return (V) node.keys[i];
+        }
+    }
+
+    //Number of entries in the tree. Needs setSubtreeCounts(true)
+    public long size()
+    {
+        checkCounts();
+        return this.root.size();
+    }
+
+    /**
+     * Aggregate of the values with a key in [key1, key2], combined in key order. Subtrees that lie inside the range
+     * give their cached aggregate, only the two paths to the bounds are descended. Needs setAggregator
+     * @param key1 lower bound, inclusive
+     * @param key2 upper bound, inclusive
+     * @return the identity for an empty range
+     */
+    public <A> A aggregate(V key1, V key2)
+    {
+        if(this.aggregator == null)
+            throw new IllegalStateException("No aggregator is set, see setAggregator");
+        if(key1.compareTo(key2) > 0)
+            return (A) this.aggregator.identity();
+        return (A) aggregate(this.root, key1, key2);
+    }
+
+    /**
+     * Aggregate of the values of the subtree between the bounds, a null bound is open. The children between the
+     * child of the lower bound and the child of the upper bound lie inside the range as a whole, as do the end
+     * children on an open side
+     * @param node
+     * @param lower
+     * @param upper
+     * @return
+     */
+    private Object aggregate(Node<T, V> node, V lower, V upper)
+    {
+        if(node instanceof LeafNode)
+            return ((LeafNode<T, V>) node).aggregate(lower == null ? 0 : node.lowerBound(lower), upper == null ? node.number : node.upperBound(upper));
+        Object[] aggregates = ((NonLeafNode<T, V>) node).aggregates;
+        int first = lower == null ? 0 : node.lowerBound(lower);
+        int last = upper == null ? node.number : node.upperBound(upper);
+        if(first == last)
+            return aggregate(node.childNodes[first], lower, upper);
+        Object result = lower == null ? aggregates[first] : aggregate(node.childNodes[first], lower, null);
+        for(int i = first + 1; i < last; i++){
+            result = this.aggregator.combine(result, aggregates[i]);
+        }
+        return this.aggregator.combine(result, upper == null ? aggregates[last] : aggregate(node.childNodes[last], null, upper));
+    }
+
+    private void checkCounts()
+    {
+        if(!this.subtreeCounts)
+            throw new IllegalStateException("Subtree counts are off, see setSubtreeCounts");
+    }
+
+    /**
+     * Entries below the key, or up to it when inclusive. On every level the children left of the path are below the
+     * key as a whole, whatever side of a separator equal keys sit on, and the children right of it are above
+     * @param key
+     * @param inclusive
+     * @return
+     */
+    private long countBelow(V key, boolean inclusive)
+    {
+        long count = 0;
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            long[] counts = ((NonLeafNode<T, V>) node).counts;
+            int c = inclusive ? node.upperBound(key) : node.lowerBound(key);
+            for(int i = 0; i < c; i++){
+                count += counts[i];
+            }
+            node = node.childNodes[c];
+        }
+        return count + ((LeafNode<T, V>) node).live(inclusive ? node.upperBound(key) : node.lowerBound(key));
+    }
+
+    // Descend from the root to the leaf that covers the key, without tracing
+    LeafNode<T, V> findLeaf(V key)
+    {
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[node.upperBound(key)];
+        }
+        return (LeafNode<T, V>) node;
+    }
+
+    /**
+     * Descend to the leftmost leaf that can hold the key, taking the child left of the first separator that is not below the key.
+     * Duplicates of a separator may sit on both sides of it, so this is where a range has to start.
+     * @param key
+     * @return
+     */
+    LeafNode<T, V> findLowerLeaf(V key)
+    {
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[node.lowerBound(key)];
+        }
+        return (LeafNode<T, V>) node;
     }
 
     //Insert
     public void insert(T value, V key)
     {
-        System.out.println("Inserting key: " + key);
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onInsert(key);
         if(key == null)
             return;
+        if(this.lookupCache != null){
+            this.lookupCache.invalidate(key);
+        }
         Node<T, V> t = this.root.insert(value, key);
         if(t != null){
             this.root = t;
         }
-        this.leafNode = (LeafNode<T, V>)this.root.refreshLeft();
+        refreshLeafNode();
+
+        listener.onInsertCompleted(key);
+        if(this.statistics != null){
+            this.statistics.recordInsert(System.nanoTime() - time);
+        }
+    }
+
+    /**
+     * Insert a batch. The batch is sorted once, then each leaf it touches is reached with a single descent that also
+     * notes the leaf's fence, the separator right of it. Every batch key below the fence is merged into the leaf in one
+     * pass; a leaf that fills up splits and the batch carries on in whichever half covers the next key.
+     * The leftmost leaf is refreshed once for the whole batch.
+     * @param keys null keys are skipped
+     * @param values values[i] is stored under keys[i]
+     */
+    public void insertAll(V[] keys, T[] values)
+    {
+        if(keys.length != values.length)
+            throw new IllegalArgumentException("Got " + keys.length + " keys but " + values.length + " values");
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        invalidate(keys);
+        Integer[] positions = sortedPositions(keys);
+        int i = 0;
+        while(i < positions.length){
+            // Descend once, the fence is the nearest separator right of the path
+            V key = keys[positions[i]];
+            V fence = null;
+            Node<T, V> node = this.root;
+            while(node instanceof NonLeafNode){
+                int c = node.upperBound(key);
+                if(c < node.number){
+                    fence = (V) node.keys[c];
+                }
+                node = node.childNodes[c];
+            }
+            LeafNode<T, V> leaf = (LeafNode<T, V>) node;
+
+            while(i < positions.length && (fence == null || keys[positions[i]].compareTo(fence) < 0)){
+                int run = 0;
+                while(run < maxKeys - leaf.number && i + run < positions.length
+                        && (fence == null || keys[positions[i + run]].compareTo(fence) < 0)){
+                    run++;
+                }
+                if(run > 0){
+                    leaf.insertRun(keys, values, positions, i, run);
+                    i += run;
+                    continue;
+                }
+
+                // The leaf is full, the next key splits it unless it takes over a lazily deleted slot
+                key = keys[positions[i]];
+                listener.onInsert(key);
+                LeafNode<T, V> next = leaf.right;
+                Node<T, V> t = leaf.insert(values[positions[i]], key);
+                if(t != null){
+                    this.root = t;
+                }
+                listener.onInsertCompleted(key);
+                i++;
+                LeafNode<T, V> right = leaf.right;
+                if(right == next)
+                    continue;
+                if(i < positions.length && keys[positions[i]].compareTo((V) right.keys[0]) >= 0){
+                    leaf = right;
+                }
+                else{
+                    fence = (V) right.keys[0];
+                }
+            }
+        }
+        refreshLeafNode();
+        if(this.statistics != null){
+            this.statistics.recordBatchInsert(System.nanoTime() - time);
+        }
+    }
+
+    /**
+     * Bulk load, builds the tree bottom-up from keys in ascending order and replaces its current contents.
+     * Leaves are packed left to right and linked through left/right, then every non-leaf level is built from the level below it,
+     * so the whole build is one linear pass without descents, temporary arrays or splits.
+     * @param keys keys in ascending order
+     * @param values values[i] is stored under keys[i]
+     * @param fillFactor share of the order every node is filled to, in (0, 1], nodes never drop below the minimum
+     */
+    public void bulkLoad(V[] keys, T[] values, double fillFactor)
+    {
+        if(keys.length != values.length)
+            throw new IllegalArgumentException("Got " + keys.length + " keys but " + values.length + " values");
+        if(!(fillFactor > 0 && fillFactor <= 1))
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        checkSorted(keys, 0, keys.length);
+        if(this.lookupCache != null){
+            this.lookupCache.clear();
+        }
+        this.tombstones = 0;
+        this.compactionKey = null;
+        if(keys.length == 0){
+            this.root = new LeafNode<T, V>();
+            this.leafNode = null;
+            if(this.statistics != null){
+                countShape();
+            }
+            return;
+        }
 
-        System.out.println("Insert completed!");
-        System.out.println();
+        // Leaves, each one holds a contiguous run of the input
+        int leafCount = nodeCount(keys.length, (int) Math.round(bTreeOrder * fillFactor), minKeys, bTreeOrder);
+        Node<T, V>[] level = newNodes(leafCount);
+        Object[] lowKeys = new Object[leafCount];
+        buildLeaves(keys, values, level, lowKeys, 0, leafCount);
+        this.leafNode = (LeafNode<T, V>) level[0];
+
+        // Non-leaf levels, the separator in front of a child is the lowest key of its subtree
+        while(level.length > 1){
+            int parentCount = nodeCount(level.length, (int) Math.round((bTreeOrder + 1) * fillFactor), minKeys + 1, bTreeOrder + 1);
+            Node<T, V>[] parents = newNodes(parentCount);
+            Object[] parentLowKeys = new Object[parentCount];
+            buildParents(level, lowKeys, parents, parentLowKeys, 0, parentCount);
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+        this.root = level[0];
+        this.root.parent = null;
+        if(this.statistics != null){
+            countShape();
+        }
+    }
+
+    /**
+     * Bulk load on a fork-join pool, the tree is the same as bulkLoad builds. Every level is cut into ranges of
+     * nodes that are built and checked as independent tasks; each node finds its slice of the level below from its
+     * index alone, and the leaf chain is stitched across a cut once both sides of it are built.
+     * A level only starts when the level below it is complete.
+     * @param keys keys in ascending order
+     * @param values values[i] is stored under keys[i]
+     * @param fillFactor share of the order every node is filled to, in (0, 1], nodes never drop below the minimum
+     * @param pool
+     */
+    public void parallelBulkLoad(V[] keys, T[] values, double fillFactor, ForkJoinPool pool)
+    {
+        if(keys.length != values.length)
+            throw new IllegalArgumentException("Got " + keys.length + " keys but " + values.length + " values");
+        if(!(fillFactor > 0 && fillFactor <= 1))
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        if(keys.length == 0){
+            bulkLoad(keys, values, fillFactor);
+            return;
+        }
+
+        // The leaf tasks check the order of their keys, the tree is left alone until they all pass
+        int leafCount = nodeCount(keys.length, (int) Math.round(bTreeOrder * fillFactor), minKeys, bTreeOrder);
+        Node<T, V>[] level = newNodes(leafCount);
+        Object[] lowKeys = new Object[leafCount];
+        pool.invoke(new BuildTask(keys, values, null, null, level, lowKeys, 0, leafCount));
+        if(this.lookupCache != null){
+            this.lookupCache.clear();
+        }
+        this.tombstones = 0;
+        this.compactionKey = null;
+        this.leafNode = (LeafNode<T, V>) level[0];
+
+        while(level.length > 1){
+            int parentCount = nodeCount(level.length, (int) Math.round((bTreeOrder + 1) * fillFactor), minKeys + 1, bTreeOrder + 1);
+            Node<T, V>[] parents = newNodes(parentCount);
+            Object[] parentLowKeys = new Object[parentCount];
+            pool.invoke(new BuildTask(null, null, level, lowKeys, parents, parentLowKeys, 0, parentCount));
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+        this.root = level[0];
+        this.root.parent = null;
+        if(this.statistics != null){
+            countShape();
+        }
+    }
+
+    //Bulk load on the common fork-join pool
+    public void parallelBulkLoad(V[] keys, T[] values, double fillFactor)
+    {
+        parallelBulkLoad(keys, values, fillFactor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write every entry to a snapshot file that loadSnapshot rebuilds the tree from without a single descent or split.
+     * The entries are repacked into leaves filled as bulkLoad fills them, one length-prefixed record per leaf in key order,
+     * followed by the child counts of every non-leaf level and a CRC32. Lazily deleted entries are left out.
+     * The file is replaced atomically, the tree must not change while it is written.
+     * @param file
+     * @param keyCodec
+     * @param valueCodec
+     * @param fillFactor share of the order every node is filled to, in (0, 1], nodes never drop below the minimum
+     * @throws IOException
+     */
+    public void saveSnapshot(Path file, Codec<V> keyCodec, Codec<T> valueCodec, double fillFactor) throws IOException
+    {
+        if(!(fillFactor > 0 && fillFactor <= 1))
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[0];
+        }
+        long live = -this.tombstones;
+        for(LeafNode<T, V> leaf = (LeafNode<T, V>) node; leaf != null; leaf = leaf.right){
+            live += leaf.number;
+        }
+        if(live > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many entries for one snapshot: " + live);
+        int entries = (int) live;
+
+        // Node counts of every level, leaves first, as bulkLoad would build them
+        List<Integer> levels = new ArrayList<>();
+        levels.add(nodeCount(entries, (int) Math.round(bTreeOrder * fillFactor), minKeys, bTreeOrder));
+        while(levels.get(levels.size() - 1) > 1){
+            levels.add(nodeCount(levels.get(levels.size() - 1), (int) Math.round((bTreeOrder + 1) * fillFactor), minKeys + 1, bTreeOrder + 1));
+        }
+
+        RangeCursor cursor = entries();
+        try (TreeSnapshot.Writer writer = new TreeSnapshot.Writer(file)) {
+            DataOutputStream out = writer.out();
+            out.writeInt(TreeSnapshot.MAGIC);
+            out.writeInt(bTreeOrder);
+            out.writeInt(entries);
+            int leafCount = levels.get(0);
+            out.writeInt(leafCount);
+            for(int j = 0; j < leafCount; j++){
+                int number = share(entries, leafCount, j);
+                DataOutputStream record = writer.beginRecord();
+                record.writeInt(number);
+                for(int i = 0; i < number; i++){
+                    T value = cursor.next();
+                    keyCodec.write(cursor.key(), record);
+                    valueCodec.write(value, record);
+                }
+                writer.endRecord();
+            }
+
+            // Inner levels bottom-up, every node takes the next children of the level below
+            out.writeInt(levels.size() - 1);
+            for(int l = 1; l < levels.size(); l++){
+                int count = levels.get(l);
+                out.writeInt(count);
+                for(int j = 0; j < count; j++){
+                    out.writeInt(share(levels.get(l - 1), count, j));
+                }
+            }
+            writer.commit();
+        }
+    }
+
+    //Snapshot with every node packed full, for trees that are read far more often than they change
+    public void saveSnapshot(Path file, Codec<V> keyCodec, Codec<T> valueCodec) throws IOException
+    {
+        saveSnapshot(file, keyCodec, valueCodec, 1);
+    }
+
+    /**
+     * Replace the contents of the tree with a snapshot written by saveSnapshot. The file is memory-mapped and its
+     * checksum verified first, then the leaves are decoded straight from the mapping and every non-leaf level is built
+     * bottom-up from the child counts, so loading is one pass over the file without descents or splits.
+     * The tree is left unchanged when the file is corrupt or was written by a tree of another order.
+     * @param file
+     * @param keyCodec
+     * @param valueCodec
+     * @throws IOException
+     */
+    public void loadSnapshot(Path file, Codec<V> keyCodec, Codec<T> valueCodec) throws IOException
+    {
+        int entries;
+        Node<T, V>[] level;
+        try (TreeSnapshot.Reader in = new TreeSnapshot.Reader(file)) {
+            int order = in.readInt();
+            if(order != bTreeOrder)
+                throw new IOException("Snapshot was written by a tree of order " + order + ", not " + bTreeOrder + ": " + file);
+            entries = in.readInt();
+            int leafCount = in.readInt();
+            if(entries < 0 || leafCount < 1 || leafCount > Math.max(entries, 1))
+                throw in.corrupt();
+
+            level = newNodes(leafCount);
+            Object[] lowKeys = new Object[leafCount];
+            V previous = null;
+            long total = 0;
+            for(int j = 0; j < leafCount; j++){
+                long recordEnd = in.beginRecord();
+                int number = in.readInt();
+                if(number < (leafCount > 1 ? 1 : 0) || number > maxKeys)
+                    throw in.corrupt();
+                LeafNode<T, V> leaf = new LeafNode<T, V>();
+                for(int i = 0; i < number; i++){
+                    V key = keyCodec.read(in);
+                    if(key == null || (previous != null && previous.compareTo(key) > 0))
+                        throw in.corrupt();
+                    leaf.keys[i] = key;
+                    leaf.values[i] = valueCodec.read(in);
+                    previous = key;
+                }
+                in.endRecord(recordEnd);
+                leaf.number = number;
+                leaf.rebuildFilter();
+                if(j > 0){
+                    link((LeafNode<T, V>) level[j - 1], leaf);
+                }
+                level[j] = leaf;
+                lowKeys[j] = leaf.keys[0];
+                total += number;
+            }
+            if(total != entries)
+                throw in.corrupt();
+
+            int levels = in.readInt();
+            for(int l = 0; l < levels; l++){
+                int count = in.readInt();
+                if(count < 1 || count >= level.length)
+                    throw in.corrupt();
+                Node<T, V>[] parents = newNodes(count);
+                Object[] parentLowKeys = new Object[count];
+                int offset = 0;
+                for(int j = 0; j < count; j++){
+                    int children = in.readInt();
+                    if(children < 1 || children > bTreeOrder + 1 || children > level.length - offset)
+                        throw in.corrupt();
+                    parents[j] = adopt(level, lowKeys, offset, children);
+                    parentLowKeys[j] = lowKeys[offset];
+                    offset += children;
+                }
+                if(offset != level.length)
+                    throw in.corrupt();
+                level = parents;
+                lowKeys = parentLowKeys;
+            }
+            if(level.length != 1)
+                throw in.corrupt();
+            in.finish();
+        }
+
+        if(this.lookupCache != null){
+            this.lookupCache.clear();
+        }
+        this.tombstones = 0;
+        this.compactionKey = null;
+        this.root = level[0];
+        this.root.parent = null;
+        Node<T, V> node = this.root;
+        while(node instanceof NonLeafNode){
+            node = node.childNodes[0];
+        }
+        this.leafNode = entries == 0 ? null : (LeafNode<T, V>) node;
+        if(this.statistics != null){
+            countShape();
+        }
+    }
+
+    //Reject keys in [from, to) that are null or below the key in front of them
+    static <V extends Comparable<V>> void checkSorted(V[] keys, int from, int to)
+    {
+        for(int i = from; i < to; i++){
+            if(keys[i] == null || (i > 0 && keys[i - 1].compareTo(keys[i]) > 0))
+                throw new IllegalArgumentException("Keys must be non-null and sorted, check index " + i);
+        }
+    }
+
+    //Build leaves [from, to) of the leaf level from their slices of the input, linked to each other but not to the leaves around them
+    private void buildLeaves(V[] keys, T[] values, Node<T, V>[] level, Object[] lowKeys, int from, int to)
+    {
+        int offset = offset(keys.length, level.length, from);
+        for(int j = from; j < to; j++){
+            LeafNode<T, V> leaf = new LeafNode<T, V>();
+            leaf.number = share(keys.length, level.length, j);
+            System.arraycopy(keys, offset, leaf.keys, 0, leaf.number);
+            System.arraycopy(values, offset, leaf.values, 0, leaf.number);
+            leaf.rebuildFilter();
+            offset += leaf.number;
+            if(j > from){
+                link((LeafNode<T, V>) level[j - 1], leaf);
+            }
+            level[j] = leaf;
+            lowKeys[j] = leaf.keys[0];
+        }
+    }
+
+    //Build parents [from, to) of a non-leaf level from their slices of the level below
+    private void buildParents(Node<T, V>[] level, Object[] lowKeys, Node<T, V>[] parents, Object[] parentLowKeys, int from, int to)
+    {
+        int offset = offset(level.length, parents.length, from);
+        for(int j = from; j < to; j++){
+            int children = share(level.length, parents.length, j);
+            parents[j] = adopt(level, lowKeys, offset, children);
+            parentLowKeys[j] = lowKeys[offset];
+            offset += children;
+        }
+    }
+
+    //New non-leaf node over level[offset, offset + children), the separator in front of a child is its lowest key
+    private NonLeafNode<T, V> adopt(Node<T, V>[] level, Object[] lowKeys, int offset, int children)
+    {
+        NonLeafNode<T, V> parent = new NonLeafNode<T, V>();
+        System.arraycopy(level, offset, parent.childNodes, 0, children);
+        System.arraycopy(lowKeys, offset + 1, parent.keys, 0, children - 1);
+        for(int c = 0; c < children; c++){
+            level[offset + c].parent = parent;
+            parent.refresh(c);
+        }
+        parent.number = children - 1;
+        return parent;
+    }
+
+    //Array for one level of nodes, the cast is safe because the array never leaves the tree
+    @SuppressWarnings("unchecked")
+    private Node<T, V>[] newNodes(int length)
+    {
+        return (Node<T, V>[]) new DenseBPlusTree<?, ?>.Node<?, ?>[length];
+    }
+
+    private void link(LeafNode<T, V> left, LeafNode<T, V> right)
+    {
+        left.right = right;
+        right.left = left;
+    }
+
+    /**
+     * Number of nodes needed to hold the entries at the requested fill, adjusted so that spreading the entries evenly
+     * never leaves a node below the minimum or above the maximum
+     * @param entries
+     * @param fill
+     * @param min
+     * @param max
+     * @return
+     */
+    static int nodeCount(int entries, int fill, int min, int max)
+    {
+        fill = Math.max(Math.max(fill, min), 1);
+        fill = Math.min(fill, max);
+        int count = (entries + fill - 1) / fill;
+        while(count > 1 && entries / count < min){
+            count--;
+        }
+        return Math.max(count, 1);
+    }
+
+    //Entries of node j when the entries are spread evenly over count nodes, the first ones take the remainder
+    static int share(int entries, int count, int j)
+    {
+        return entries / count + (j < entries % count ? 1 : 0);
+    }
+
+    //Entries in front of node j when the entries are spread evenly over count nodes
+    static int offset(int entries, int count, int j)
+    {
+        return j * (entries / count) + Math.min(j, entries % count);
     }
 
     //Delete
     public void delete(V key)
     {
-        System.out.println();
-        System.out.println("Deleting key: " + key);
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onDelete(key);
         if(key == null)
             return;
+        if(this.lookupCache != null){
+            this.lookupCache.invalidate(key);
+        }
         Node<T, V> t = this.root.delete(key);
         if(t != null){
             this.root = t;
         }
-        this.leafNode = (LeafNode<T, V>)this.root.refreshLeft();
+        refreshLeafNode();
+
+        listener.onDeleteCompleted(key);
+        if(this.statistics != null){
+            this.statistics.recordDelete(System.nanoTime() - time);
+        }
+    }
+
+    /**
+     * Delete the first entry in key order that holds both the key and a value equal to the value. Of several entries
+     * with equal keys delete(key) removes the one its descent reaches, which depends on the shape of the tree, while
+     * this removes the same entry from a tree of any shape, so a log can replay it exactly.
+     * @param key
+     * @param value
+     * @return true if such an entry existed
+     */
+    @SuppressWarnings("unchecked")
+    public boolean delete(V key, T value)
+    {
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        listener.onDelete(key);
+        if(key == null)
+            return false;
+        if(this.lookupCache != null){
+            this.lookupCache.invalidate(key);
+        }
+        // Equal keys may run over several leaves, starting at the leftmost leaf that can hold the key
+        boolean deleted = false;
+        LeafNode<T, V> leaf = findLowerLeaf(key);
+        while(leaf != null){
+            int i = leaf.lowerBound(key);
+            while(i < leaf.number && key.compareTo((V) leaf.keys[i]) == 0
+                    && (leaf.values[i] == TOMBSTONE || !Objects.equals(leaf.values[i], value))){
+                i++;
+            }
+            if(i < leaf.number){
+                if(key.compareTo((V) leaf.keys[i]) == 0){
+                    Node<T, V> t = leaf.deleteAt(i, key);
+                    if(t != null){
+                        this.root = t;
+                    }
+                    deleted = true;
+                }
+                break;
+            }
+            leaf = leaf.right;
+        }
+        refreshLeafNode();
+
+        listener.onDeleteCompleted(key);
+        if(this.statistics != null){
+            this.statistics.recordDelete(System.nanoTime() - time);
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete a batch, every key removes one entry as delete does. The batch is sorted once and each leaf it touches is
+     * reached with a single descent; the keys below the leaf's fence are removed in one pass, and a leaf that underflows
+     * is rebalanced once for all of them.
+     * @param keys null keys are skipped
+     */
+    public void deleteAll(V[] keys)
+    {
+        long time = this.statistics == null ? 0 : System.nanoTime();
+        invalidate(keys);
+        Integer[] positions = sortedPositions(keys);
+        int i = 0;
+        while(i < positions.length){
+            V key = keys[positions[i]];
+            V fence = null;
+            Node<T, V> node = this.root;
+            while(node instanceof NonLeafNode){
+                int c = node.upperBound(key);
+                if(c < node.number){
+                    fence = (V) node.keys[c];
+                }
+                node = node.childNodes[c];
+            }
+            LeafNode<T, V> leaf = (LeafNode<T, V>) node;
+
+            int run = 1;
+            while(i + run < positions.length && (fence == null || keys[positions[i + run]].compareTo(fence) < 0)){
+                run++;
+            }
+            leaf.deleteRun(keys, positions, i, run);
+            i += run;
+            if(leaf.number < mergeThreshold && leaf.parent != null){
+                Node<T, V> t = leaf.rebalance();
+                if(t != null){
+                    this.root = t;
+                }
+            }
+        }
+        refreshLeafNode();
+        if(this.statistics != null){
+            this.statistics.recordBatchDelete(System.nanoTime() - time);
+        }
+    }
+
+    //Positions of the non-null keys in key order, equal keys keep their order in the batch
+    private Integer[] sortedPositions(V[] keys)
+    {
+        Integer[] positions = new Integer[keys.length];
+        int count = 0;
+        for(int i = 0; i < keys.length; i++){
+            if(keys[i] != null){
+                positions[count++] = i;
+            }
+        }
+        positions = Arrays.copyOf(positions, count);
+        // Batches that arrive sorted skip the sort
+        for(int i = 1; i < count; i++){
+            if(keys[positions[i - 1]].compareTo(keys[positions[i]]) > 0){
+                Arrays.sort(positions, (a, b) -> keys[a].compareTo(keys[b]));
+                break;
+            }
+        }
+        return positions;
+    }
 
-        System.out.println("Finished deleting!");
-        System.out.println();
+    //Drop the keys of a batch from the lookup cache
+    private void invalidate(V[] keys)
+    {
+        if(this.lookupCache == null)
+            return;
+        for(V key : keys){
+            if(key != null){
+                this.lookupCache.invalidate(key);
+            }
+        }
     }
 
 
@@ -112,14 +1274,14 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         // child node
         protected Node<T, V>[] childNodes;
         // number of keys (child nodes)
-        protected Integer number;
+        protected int number;
         //key
         protected Object keys[];
 
         //Construction method
         public Node(){
-            this.keys = new Object[maxKeys];
-            this.childNodes = new Node[maxKeys + 2];
+            // One spare slot, a node overflows by one key before it is split
+            this.keys = new Object[maxKeys + 1];
             this.number = 0;
             this.parent = null;
         }
@@ -127,9 +1289,6 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         //Search for a key
         abstract T search(V key);
 
-        //Range Search
-        abstract T rangeSearch(V key1, V key2);
-
         //Insert
         abstract Node<T, V> insert(T value, V key);
 
@@ -137,6 +1296,77 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         abstract Node<T, V> delete(V key);
 
         abstract LeafNode<T, V> refreshLeft();
+
+        //Entries in the subtree, a non-leaf node adds up its counts
+        abstract long size();
+
+        //Aggregate of the values in the subtree, a non-leaf node combines the aggregates of its children
+        abstract Object aggregate();
+
+        /**
+         * In-node binary search, first index whose key is greater than or equal to the key
+         * @param key
+         * @return
+         */
+        int lowerBound(V key)
+        {
+            if(branchFreeSearch && this.number <= BRANCH_FREE_SEARCH_LIMIT)
+                return branchFreeBound(key, 1);
+            int low = 0;
+            int high = this.number;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(key.compareTo((V) this.keys[middle]) > 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * In-node binary search, first index whose key is greater than the key.
+         * For a non-leaf node this is the index of the child that covers the key.
+         * @param key
+         * @return
+         */
+        int upperBound(V key)
+        {
+            if(branchFreeSearch && this.number <= BRANCH_FREE_SEARCH_LIMIT)
+                return branchFreeBound(key, 0);
+            int low = 0;
+            int high = this.number;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(key.compareTo((V) this.keys[middle]) >= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * Bound search without a data dependent branch, a key k counts as before the key when key.compareTo(k) >= bias,
+         * so bias 1 gives the lower bound and bias 0 the upper bound. The loop runs log2(number) times whatever the key is
+         * and each step is a select, so small nodes avoid branch mispredictions
+         * @param key
+         * @param bias
+         * @return
+         */
+        private int branchFreeBound(V key, int bias)
+        {
+            int n = this.number;
+            if(n == 0)
+                return 0;
+            int base = 0;
+            while(n > 1){
+                int half = n >>> 1;
+                base = (key.compareTo((V) this.keys[base + half]) >= bias) ? base + half : base;
+                n -= half;
+            }
+            return base + ((key.compareTo((V) this.keys[base]) >= bias) ? 1 : 0);
+        }
     }
 
 
@@ -148,10 +1378,17 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
 
     class NonLeafNode <T, V extends Comparable<V>> extends Node<T, V>
     {
+        //Entries below each child, null unless the tree keeps subtree counts
+        protected long[] counts;
+        //Aggregate of the values below each child, null unless the tree has an aggregator
+        protected Object[] aggregates;
 
         public NonLeafNode()
         {
             super();
+            this.childNodes = new Node[maxKeys + 2];
+            this.counts = subtreeCounts ? new long[maxKeys + 2] : null;
+            this.aggregates = aggregator != null ? new Object[maxKeys + 2] : null;
         }
 
         /**
@@ -162,59 +1399,11 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         @Override
         T search(V key)
         {
-            int i = 0;
-            while(i < this.number){
-                if((this.keys[i] != null) && (key.compareTo((V) this.keys[i]) < 0)){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    break;
-                }
-                if((this.keys[i] != null) && (this.number > i+1)){
-                    if((this.keys[i+1] != null) && (key.compareTo((V) this.keys[i]) >= 0) && (key.compareTo((V) this.keys[i+1]) < 0)){
-                        System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                        i++;
-                        break;
-                    }
-                }
-                else if((this.keys[i] == null) || (this.number == (i+1) && (key.compareTo((V) this.keys[i]) >= 0))){
-                    if(this.keys[i] != null){
-                        System.out.println("Non-leaf node: lookup key -" + this.keys[i]);
-                        i++;
-                    }
-                    else{
-//                        System.out.println("Non-leaf node: lookup key -" + this.keys[i-1]);
-                    }
-                    break;
-                }
-                i++;
-            }
+            int i = this.upperBound(key);
+            listener.onDescend(this.keys[i == 0 ? 0 : i - 1]);
             return this.childNodes[i].search(key);
         }
 
-        @Override
-        T rangeSearch(V key1, V key2) {
-            int i = 0;
-            while(i < this.number){
-                if(key1.compareTo((V) this.keys[i]) < 0){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    break;
-                }
-                if(this.number > i+1){
-                    if((key1.compareTo((V) this.keys[i]) >= 0) && (key1.compareTo((V) this.keys[i+1]) < 0)){
-                        System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                        i++;
-                        break;
-                    }
-                }
-                else if(this.number == (i+1) && (key1.compareTo((V) this.keys[i]) >= 0)){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    i++;
-                    break;
-                }
-                i++;
-            }
-            return this.childNodes[i].rangeSearch(key1, key2);
-        }
-
         /**
          * Recursive insertion, first insert the value into the corresponding leaf node, and finally call the insert class of the leaf node
          * @param value
@@ -223,32 +1412,8 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         @Override
         Node<T, V> insert(T value, V key)
         {
-            int i = 0;
-            while(i < this.number){
-                if(this.keys[i] != null && (key.compareTo((V) this.keys[i]) < 0)){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    break;
-                }
-                if(this.keys[i] != null && (this.number > i+1)){
-                    if((this.keys[i+1] != null) && (key.compareTo((V) this.keys[i]) >= 0) && (key.compareTo((V) this.keys[i+1]) < 0)){
-                        System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                        i++;
-                        break;
-                    }
-                }
-                else if(this.keys[i] == null || (this.number == (i+1) && (key.compareTo((V) this.keys[i]) >= 0))){
-                    if(this.keys[i] != null){
-                        System.out.println("Non-leaf node: lookup key -" + this.keys[i]);
-                        i++;
-                    }
-                    else{
-//                        System.out.println("Non-leaf node: lookup key -" + this.keys[i-1]);
-                    }
-
-                    break;
-                }
-                i++;
-            }
+            int i = this.upperBound(key);
+            listener.onDescend(this.keys[i == 0 ? 0 : i - 1]);
 
             return this.childNodes[i].insert(value, key);
         }
@@ -259,19 +1424,37 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
             return this.childNodes[0].refreshLeft();
         }
 
+        @Override
+        long size()
+        {
+            long size = 0;
+            for(int i = 0; i <= this.number; i++){
+                size += this.counts[i];
+            }
+            return size;
+        }
+
+        @Override
+        Object aggregate()
+        {
+            Object aggregate = this.aggregates[0];
+            for(int i = 1; i <= this.number; i++){
+                aggregate = aggregator.combine(aggregate, this.aggregates[i]);
+            }
+            return aggregate;
+        }
+
         /**
-         * When the leaf node inserts successfully completes the decomposition, recursively inserts a new node to the parent node to maintain balance
+         * When the leaf node inserts successfully completes the decomposition, recursively inserts a new node to the parent node to maintain balance.
+         * The key and node2 go in right after node1, the keys and children behind them are shifted in place.
          * @param node1
          * @param node2
          * @param key
          */
-        Node<T, V> insertNode(Node<T, V> node1, Node<T, V> node2, V key, boolean update, V nKey){
-
-            V oldKey = null;
-            V newKey = null;
+        Node<T, V> insertNode(Node<T, V> node1, Node<T, V> node2, V key){
 
-            // If the original key is null, indicating that this non-node is empty, you can directly put in two nodes
-            if((key == null && !update) || this.number <= 0){
+            // A freshly created root has no children yet, you can directly put in two nodes
+            if(this.childNodes[0] == null){
                 if(key != null){
                     this.keys[0] = key;
                 }
@@ -281,214 +1464,262 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
                 this.childNodes[0] = node1;
                 this.childNodes[1] = node2;
                 this.number += 1;
+                this.refresh(0);
+                this.refresh(1);
                 return this;
             }
-            if(!update){
-                // The original node is not empty, you should first search the location of the original node, and then insert the new node into the original node
-                int i = 0;
-                while((this.number <= bTreeOrder) && (i < this.number)){
-                    if((this.keys[i] != null) && key.compareTo((V) this.keys[i]) < 0)
-                        break;
-                    i++;
-                }
-
-                if(this.number > bTreeOrder){
-                    this.number = bTreeOrder;
-                }
-                Object tempKeys[] = new Object[maxKeys + 1];
-                Object tempChildNodes[] = new Node[maxKeys + 2];
-
-                System.arraycopy(this.keys, 0, tempKeys, 0, i);
-                System.arraycopy(this.childNodes, 0, tempChildNodes, 0, i);
-                System.arraycopy(this.keys, i, tempKeys, i+1, this.number - i);
-                System.arraycopy(this.childNodes, i+1, tempChildNodes, i+2, this.number - i);
-                tempKeys[i] = key;
-                tempChildNodes[i] = node1;
-                tempChildNodes[i + 1] = node2;
 
-                this.number++;
-
-                // Determine whether you need to split
-                // If you do not need to split, copy the array back, return directly
-                if(this.number <= bTreeOrder){
-                    System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                    System.arraycopy(tempChildNodes, 0, this.childNodes, 0, this.number + 1);
+            int i = this.childIndex(node1);
+            System.arraycopy(this.keys, i, this.keys, i + 1, this.number - i);
+            System.arraycopy(this.childNodes, i + 1, this.childNodes, i + 2, this.number - i);
+            if(this.counts != null){
+                System.arraycopy(this.counts, i + 1, this.counts, i + 2, this.number - i);
+            }
+            if(this.aggregates != null){
+                System.arraycopy(this.aggregates, i + 1, this.aggregates, i + 2, this.number - i);
+            }
+            this.keys[i] = key;
+            this.childNodes[i + 1] = node2;
+            node2.parent = this;
+            this.number++;
+            this.refresh(i);
+            this.refresh(i + 1);
 
-                    System.out.println("Non-leaf node: insert key- " + key + ", no split required" );
+            // Determine whether you need to split
+            // If you do not need to split, return directly
+            if(this.number <= bTreeOrder){
+                listener.onNodeInsert(false, key, false);
+                return null;
+            }
 
-                    return null;
-                }
+            listener.onNodeInsert(false, key, true);
 
-                System.out.println("Non-leaf node: insert key- " + key + ", need to split") ;
-                System.out.println("Non- leaf node: before the split - ");
-                System.out.print("[");
-                for(int j=0; j<this.keys.length; j++){
-                    if(this.keys[j] != null){
-                        System.out.print(this.keys[j]);
-                        System.out.print(" ");
-                    }
-                }
-                System.out.println("]");
-
-                // Create a new non-leaf node, as the right half of the split
-                NonLeafNode<T, V> tempNode = new NonLeafNode<T, V>();
-                // After the non-leaf node split, the parent node pointer of its child node should be updated to the correct pointer
-                tempNode.number = this.number - minKeys - 1;
-                tempNode.parent = this.parent;
-                //If the parent node is empty, create a new non-leaf node as the parent node, and let the pointers of the two non-leaf nodes that are successfully split point to the parent node.
-                if(this.parent == null) {
-
-                    NonLeafNode<T, V> tempNonLeafNode = new NonLeafNode<>();
-                    tempNode.parent = tempNonLeafNode;
-                    this.parent = tempNonLeafNode;
-                    oldKey = null;
-                }
-                System.arraycopy(tempKeys, tempNode.number + 1, tempNode.keys, 0, minKeys);
-                System.arraycopy(tempChildNodes, tempNode.number + 1, tempNode.childNodes, 0, minKeys + 1);
-                for(int j = 0; j <= minKeys; j++){
-                    if(tempNode.childNodes[j] != null){
-                        tempNode.childNodes[j].parent = tempNode;
-                    }
-                }
-                // Let the original non-leaf node as the left node
-                this.number = tempNode.number;
-                this.keys = new Object[maxKeys];
-                this.childNodes = new Node[maxKeys + 1];
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                System.arraycopy(tempChildNodes, 0, this.childNodes, 0, this.number + 1);
-
-                if(this.number > 0){
-                    oldKey = (V) tempKeys[this.number];
-                }
-                System.out.println("Non-leaf-node: after the split - ");
-                System.out.print("[");
-                for(int j=0; j<this.keys.length; j++){
-                    if(this.keys[j] != null){
-                        System.out.print(this.keys[j]);
-                        System.out.print(" ");
-                    }
-                }
-                System.out.print("] ");
-                System.out.print("[");
-                for(int j=0; j<tempNode.number; j++){
-                    if(tempNode.keys[j] != null){
-                        System.out.print(tempNode.keys[j]);
-                        System.out.print(" ");
-                    }
+            // Create a new non-leaf node, as the right half of the split, only the keys and children behind the middle key move
+            NonLeafNode<T, V> tempNode = new NonLeafNode<T, V>();
+            int leftNodeNumber = this.number - minKeys - 1;
+            tempNode.number = this.number - leftNodeNumber - 1;
+            tempNode.parent = this.parent;
+            //If the parent node is empty, create a new non-leaf node as the parent node, and let the pointers of the two non-leaf nodes that are successfully split point to the parent node.
+            if(this.parent == null) {
+                listener.onNewRoot();
+                if(statistics != null){
+                    statistics.rootAdded();
                 }
-                System.out.println("]");
-
-                //After the leaf node is successfully split, the newly generated node needs to be inserted into the parent node.
-                NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
-                return parentNode.insertNode(this, tempNode, oldKey, false, newKey);
+                NonLeafNode<T, V> tempNonLeafNode = new NonLeafNode<>();
+                tempNode.parent = tempNonLeafNode;
+                this.parent = tempNonLeafNode;
             }
-            else{
-                // The original node is not empty, you should first search the location of the original node, and then insert the new node into the original node
-                int i = 0;
-                while(i < this.number){
-                    if(key.compareTo((V) this.keys[i]) == 0)
-                        break;
-                    i++;
-                }
-
-                Object tempKeys[] = new Object[maxKeys];
-
-                System.arraycopy(this.keys, 0, tempKeys, 0, i);
-                System.arraycopy(this.keys, i, tempKeys, i + 1, this.number - i -1);
-                tempKeys[i] = nKey;
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                this.childNodes[i+1] = node2;
+            V oldKey = (V) this.keys[leftNodeNumber];
+            System.arraycopy(this.keys, leftNodeNumber + 1, tempNode.keys, 0, tempNode.number);
+            System.arraycopy(this.childNodes, leftNodeNumber + 1, tempNode.childNodes, 0, tempNode.number + 1);
+            if(this.counts != null){
+                System.arraycopy(this.counts, leftNodeNumber + 1, tempNode.counts, 0, tempNode.number + 1);
+            }
+            if(this.aggregates != null){
+                System.arraycopy(this.aggregates, leftNodeNumber + 1, tempNode.aggregates, 0, tempNode.number + 1);
+                Arrays.fill(this.aggregates, leftNodeNumber + 1, this.number + 1, null);
+            }
+            // After the non-leaf node split, the parent node pointer of its child node should be updated to the correct pointer
+            for(int j = 0; j <= tempNode.number; j++){
+                tempNode.childNodes[j].parent = tempNode;
+            }
+            // Let the original non-leaf node as the left node, clear the slots that moved out
+            Arrays.fill(this.keys, leftNodeNumber, this.number, null);
+            Arrays.fill(this.childNodes, leftNodeNumber + 1, this.number + 1, null);
+            this.number = leftNodeNumber;
 
-                return null;
+            listener.onSplit(false, this.keys, this.number, tempNode.keys, tempNode.number);
+            if(statistics != null){
+                statistics.nodeSplit(this.level());
             }
 
+            //After the non-leaf node is successfully split, the newly generated node needs to be inserted into the parent node.
+            NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
+            return parentNode.insertNode(this, tempNode, oldKey);
         }
 
         @Override
         Node<T, V> delete(V key) {
-            int i = 0;
-            while(i < this.number){
-                if(key.compareTo((V) this.keys[i]) < 0){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    break;
-                }
-                if(this.number > i+1){
-                    if((key.compareTo((V) this.keys[i]) >= 0) && (key.compareTo((V) this.keys[i+1]) < 0)){
-                        System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                        i++;
-                        break;
-                    }
-                }
-                else if(this.number == (i+1) && (key.compareTo((V) this.keys[i]) >= 0)){
-                    System.out.println("Non-leaf node: lookup key - " + this.keys[i]);
-                    i++;
-                    break;
-                }
-                i++;
-            }
+            int i = this.upperBound(key);
+            listener.onDescend(this.keys[i == 0 ? 0 : i - 1]);
 
             return this.childNodes[i].delete(key);
         }
 
-        Node<T, V> deleteNode(V key){
-
-            V oldKey = null;
-            V newKey = null;
-
-            // The original node is not empty, you should first search the location of the original node, and then insert the new node into the original node
-            int i = 0;
-            while(i < this.number){
-                if(key.compareTo((V) this.keys[i]) == 0)
-                    break;
-                i++;
+        /**
+         * Remove the key at index i together with the child to its right, after that child was coalesced into its left sibling
+         * @param i
+         * @return the new root when the root lost its last key, otherwise null
+         */
+        Node<T, V> deleteNode(int i){
+            V key = (V) this.keys[i];
+            System.arraycopy(this.keys, i + 1, this.keys, i, this.number - i - 1);
+            System.arraycopy(this.childNodes, i + 2, this.childNodes, i + 1, this.number - i - 1);
+            if(this.counts != null){
+                System.arraycopy(this.counts, i + 2, this.counts, i + 1, this.number - i - 1);
+            }
+            if(this.aggregates != null){
+                System.arraycopy(this.aggregates, i + 2, this.aggregates, i + 1, this.number - i - 1);
+                this.aggregates[this.number] = null;
             }
-
-            Object tempKeys[] = new Object[maxKeys];
-
-            System.arraycopy(this.keys, 0, tempKeys, 0, i);
-            System.arraycopy(this.keys, i+1, tempKeys, i, this.number - i - 1);
-
             this.number--;
+            this.keys[this.number] = null;
+            this.childNodes[this.number + 1] = null;
+            // Child i took in the entries of the removed child
+            this.refresh(i);
+
+            // The root shrinks by one level once its last key is gone
+            if(this.parent == null && this.number == 0){
+                Node<T, V> child = this.childNodes[0];
+                this.childNodes[0] = null;
+                child.parent = null;
+                listener.onNodeDelete(false, key, false);
+                if(statistics != null){
+                    statistics.rootRemoved();
+                }
+                return child;
+            }
+
+            if(this.parent == null || this.number >= minKeys){
+                listener.onNodeDelete(false, key, false);
+                return null;
+            }
 
-            // Determine whether you need to split
-            // If you do not need to split, copy the array back, return directly
-            if(this.number >= minKeys){
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
+            listener.onNodeDelete(false, key, true);
 
-                System.out.println("Non-leaf node: delete key - " + key + ", no coalescence required" );
+            return this.rebalance();
+        }
 
+        /**
+         * Rebalance an underfull non-leaf node with its siblings under the same parent. A sibling with keys to spare
+         * hands its nearest child over, its separator moves down into this node and the key next to it moves up into
+         * the parent. Otherwise the two are coalesced and the separator between them is pulled down.
+         * @return the new root when the coalesce shrank the tree, otherwise null
+         */
+        Node<T, V> rebalance(){
+            NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
+            int j = parentNode.childIndex(this);
+            NonLeafNode<T, V> left = j > 0 ? (NonLeafNode<T, V>) parentNode.childNodes[j - 1] : null;
+            NonLeafNode<T, V> right = j < parentNode.number ? (NonLeafNode<T, V>) parentNode.childNodes[j + 1] : null;
+
+            if(left != null && left.number > minKeys){
+                // Rotate the last child of the left sibling through the parent
+                System.arraycopy(this.keys, 0, this.keys, 1, this.number);
+                System.arraycopy(this.childNodes, 0, this.childNodes, 1, this.number + 1);
+                if(this.counts != null){
+                    System.arraycopy(this.counts, 0, this.counts, 1, this.number + 1);
+                    this.counts[0] = left.counts[left.number];
+                }
+                if(this.aggregates != null){
+                    System.arraycopy(this.aggregates, 0, this.aggregates, 1, this.number + 1);
+                    this.aggregates[0] = left.aggregates[left.number];
+                    left.aggregates[left.number] = null;
+                }
+                this.keys[0] = parentNode.keys[j - 1];
+                this.childNodes[0] = left.childNodes[left.number];
+                this.childNodes[0].parent = this;
+                this.number++;
+                parentNode.keys[j - 1] = left.keys[left.number - 1];
+                left.keys[left.number - 1] = null;
+                left.childNodes[left.number] = null;
+                left.number--;
+                parentNode.refresh(j - 1);
+                parentNode.refresh(j);
+                this.redistributed(left, this);
+                return null;
+            }
+            if(right != null && right.number > minKeys){
+                // Rotate the first child of the right sibling through the parent
+                this.keys[this.number] = parentNode.keys[j];
+                this.childNodes[this.number + 1] = right.childNodes[0];
+                this.childNodes[this.number + 1].parent = this;
+                if(this.counts != null){
+                    this.counts[this.number + 1] = right.counts[0];
+                    System.arraycopy(right.counts, 1, right.counts, 0, right.number);
+                }
+                if(this.aggregates != null){
+                    this.aggregates[this.number + 1] = right.aggregates[0];
+                    System.arraycopy(right.aggregates, 1, right.aggregates, 0, right.number);
+                    right.aggregates[right.number] = null;
+                }
+                this.number++;
+                parentNode.keys[j] = right.keys[0];
+                System.arraycopy(right.keys, 1, right.keys, 0, right.number - 1);
+                System.arraycopy(right.childNodes, 1, right.childNodes, 0, right.number);
+                right.number--;
+                right.keys[right.number] = null;
+                right.childNodes[right.number + 1] = null;
+                parentNode.refresh(j);
+                parentNode.refresh(j + 1);
+                this.redistributed(this, right);
                 return null;
             }
 
-            System.out.println("Non-leaf node: delete key - " + key + ", need to coalesce") ;
+            // Coalesce, the right one of the two nodes moves into the left one and leaves the parent
+            if(right != null){
+                this.absorb((V) parentNode.keys[j], right);
+                return parentNode.deleteNode(j);
+            }
+            left.absorb((V) parentNode.keys[j - 1], this);
+            return parentNode.deleteNode(j - 1);
+        }
 
-            // New leaf node, as the right half of the split
-//            LeafNode<T, V> tempNode = new LeafNode<T, V>();
-//            tempNode.number = this.right.number - 1;
-//            tempNode.parent = this.parent;
-//            int leftNodeNumber = minKeys;
-//            oldKey = (V) this.right.keys[0];
+        //Report a child that moved between two non-leaf nodes, the two nodes in key order
+        private void redistributed(NonLeafNode<T, V> first, NonLeafNode<T, V> second){
+            listener.onRedistribute(false, first.keys, first.number, second.keys, second.number);
+            if(statistics != null){
+                statistics.redistributed();
+            }
+        }
 
-            // Create a new non-leaf node, as the right half of the split
-            NonLeafNode<T, V> tempNode = new NonLeafNode<T, V>();
-            // After the non-leaf node split, the parent node pointer of its child node should be updated to the correct pointer
-            tempNode.number = this.number - minKeys - 1;
-            tempNode.parent = this.parent;
+        //Take in the separator and every key and child of the right sibling, the caller removes it from the parent
+        void absorb(V key, NonLeafNode<T, V> right){
+            this.keys[this.number] = key;
+            System.arraycopy(right.keys, 0, this.keys, this.number + 1, right.number);
+            System.arraycopy(right.childNodes, 0, this.childNodes, this.number + 1, right.number + 1);
+            if(this.counts != null){
+                System.arraycopy(right.counts, 0, this.counts, this.number + 1, right.number + 1);
+            }
+            if(this.aggregates != null){
+                System.arraycopy(right.aggregates, 0, this.aggregates, this.number + 1, right.number + 1);
+            }
+            for(int i = 0; i <= right.number; i++){
+                right.childNodes[i].parent = this;
+            }
+            this.number += right.number + 1;
 
-            // Let the original non-leaf node as the left node
-            this.number = tempNode.number;
-            this.keys = new Object[maxKeys];
-            this.childNodes = new Node[maxKeys + 1];
-            System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
+            listener.onCoalesce(false, this.keys, this.number);
+            if(statistics != null){
+                statistics.nodeCoalesced(this.level());
+            }
+        }
 
-            if(this.number > 0){
-                oldKey = (V) tempKeys[this.number];
+        //Height of the node above the leaves, the leaves are level 0
+        int level(){
+            int level = 1;
+            for(Node<T, V> node = this.childNodes[0]; node instanceof NonLeafNode; node = node.childNodes[0]){
+                level++;
             }
+            return level;
+        }
 
-            //After the leaf node is successfully split, the newly generated node needs to be inserted into the parent node.
-            NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
-            return parentNode.deleteNode(oldKey);
+        //Take the count and the aggregate of child i from the child itself, after its entries changed
+        void refresh(int i){
+            if(this.counts != null){
+                this.counts[i] = this.childNodes[i].size();
+            }
+            if(this.aggregates != null){
+                this.aggregates[i] = this.childNodes[i].aggregate();
+            }
+        }
 
+        //Position of a child, found by identity because equal keys may sit on both sides of a separator
+        int childIndex(Node<T, V> child){
+            for(int i = 0; i <= this.number; i++){
+                if(this.childNodes[i] == child)
+                    return i;
+            }
+            throw new IllegalStateException("Node is not a child of its parent");
         }
     }
 
@@ -502,12 +1733,15 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         protected Object values[];
         protected LeafNode left;
         protected LeafNode right;
+        //Bloom filter over the keys, null unless the tree keeps filters
+        protected BloomFilter filter;
 
         public LeafNode(){
             super();
-            this.values = new Object[maxKeys];
+            this.values = new Object[maxKeys + 1];
             this.left = null;
             this.right = null;
+            this.filter = bloomBitsPerKey > 0 ? new BloomFilter(maxKeys + 1, bloomBitsPerKey) : null;
         }
 
         /**
@@ -517,185 +1751,102 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
          */
         @Override
         T search(V key) {
-            if(this.number <=0)
+            if(this.number <=0 || !this.mightContain(key))
                 return null;
 
-            int i = 0;
-            while(i < this.number){
-                if(key.compareTo((V) this.keys[i]) == 0){
-                    System.out.println("Leaf-node: Key found in node - ");
-                    System.out.print("[");
-                    for(int j=0; j<this.keys.length; j++){
-                        if (this.keys[j] != null) {
-                            System.out.print(this.keys[j]);
-                            System.out.print(" ");
-                        }
-                    }
-                    System.out.println("]");
-                    System.out.println();
-                    return (T) this.values[i];
-                }
-                i++;
+            int i = this.find(key);
+            if(i < this.number){
+                listener.onFound(key, this.keys, this.number);
+                return (T) this.values[i];
             }
             return null;
         }
 
-        @Override
-        T rangeSearch(V key1, V key2) {
-            ArrayList<Object> keyValues = new ArrayList<Object>();
-            if(this.number <=0)
-                return null;
-
-            if(this.parent == null){
-                int i = 0;
-                while(i < this.number){
-                    if(key1.compareTo((V) this.keys[i]) <= 0){
-                        keyValues.add(this.values[i]);
-                    }
-                    i++;
-                }
-            }
-
-            else if(this.parent != null){
-                        int k = 0;
-                        while(k < 5 && (this.parent.childNodes[k] != null)){
-                            int x = 0;
-                            while(x < this.parent.childNodes[k].number){
-                                if((key1.compareTo((V) this.parent.childNodes[k].keys[x]) <= 0) && (key2.compareTo((V) this.parent.childNodes[k].keys[x]) >= 0)){
-                                    keyValues.add(this.parent.childNodes[k].keys[x]);
-                                }
-                                else{
-                                    break;
-                                }
-                                x++;
-                            }
-                            k++;
-                        }
-            }
-            return (T) keyValues;
-        }
-
         /**
-         *
+         * Insert the key in place, the larger keys shift one slot to the right. A full node splits and only the keys that leave it are moved.
          * @param value
          * @param key
          */
         @Override
         Node<T, V> insert(T value, V key) {
 
-//            System.out.println("leaf node, insert key: " + key);
-
-            // Save the key value of the original existence of the parent node
-            V oldKey = null;
-            V newKey = null;
-            // Insert data first
-            int i = 0;
-            while(i < this.number){
-                if(key.compareTo((V) this.keys[i]) < 0){
-                    System.out.println("Leaf-node: Insert key, before- " + this.keys[i]);
-                    break;
+            int i = this.upperBound(key);
+            // The last entry with the key was deleted lazily, the value takes over its slot
+            if(i > 0 && this.values[i - 1] == TOMBSTONE && key.compareTo((V) this.keys[i - 1]) == 0){
+                this.values[i - 1] = value;
+                tombstones--;
+                if(statistics != null){
+                    statistics.keysAdded(1);
                 }
-                i++;
+                this.entriesChanged(1);
+                listener.onNodeInsert(true, key, false);
+                return null;
             }
-
-            // Copy the array, complete the addition
-            Object tempKeys[] = new Object[maxKeys + 1];
-            Object tempValues[] = new Object[maxKeys + 1];
-            System.arraycopy(this.keys, 0, tempKeys, 0, i);
-            System.arraycopy(this.values, 0, tempValues, 0, i);
-            System.arraycopy(this.keys, i, tempKeys, i + 1, this.number - i);
-            System.arraycopy(this.values, i, tempValues, i + 1, this.number - i);
-            tempKeys[i] = key;
-            tempValues[i] = value;
-
+            System.arraycopy(this.keys, i, this.keys, i + 1, this.number - i);
+            System.arraycopy(this.values, i, this.values, i + 1, this.number - i);
+            this.keys[i] = key;
+            this.values[i] = value;
             this.number++;
-
-//            System.out.println("Insert completed, current node key is:");
-//            for(int j = 0; j < this.number; j++)
-//                System.out.print(tempKeys[j] + " ");
-//            System.out.println();
+            if(statistics != null){
+                statistics.keysAdded(1);
+            }
+            // A split below takes the counts and aggregates of both halves from the halves
+            this.entriesChanged(1);
+            if(this.filter != null){
+                this.filter.add(BloomFilter.hash(key));
+            }
 
             // Determine whether you need to split
-            // If you do not need to split to complete the copy and return directly
+            // If you do not need to split, return directly
             if(this.number <= bTreeOrder){
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                System.arraycopy(tempValues, 0, this.values, 0, this.number);
-
-                System.out.println("Leaf-node: insert key- " + key + ", no splitting is required");
-
+                listener.onNodeInsert(true, key, false);
                 return null;
             }
 
-            System.out.println("Leaf-node: insert key: " + key + ", need to split");
-            System.out.println("Leaf-node: before the split - ");
-            System.out.print("[");
-            for(int j=0; j<this.keys.length; j++){
-                if (this.keys[j] != null) {
-                    System.out.print(this.keys[j]);
-                    System.out.print(" ");
-                }
-            }
-            System.out.println("]");
+            listener.onNodeInsert(true, key, true);
 
             // New leaf node, as the right half of the split
             LeafNode<T, V> tempNode = new LeafNode<T, V>();
-            tempNode.number = minKeys;
-            tempNode.parent = this.parent;
             int leftNodeNumber = this.number - minKeys;
+            tempNode.number = this.number - leftNodeNumber;
+            tempNode.parent = this.parent;
             //If the parent node is empty, create a new non-leaf node as the parent node, and let the pointers of the two leaf nodes that are successfully split point to the parent node.
             if(this.parent == null) {
-
-                System.out.println("Leaf-node: insert key- " + key + ", parent node is empty, create new parent node");
-
+                listener.onNewRoot();
+                if(statistics != null){
+                    statistics.rootAdded();
+                }
                 NonLeafNode<T, V> tempNonLeafNode = new NonLeafNode<>();
                 tempNode.parent = tempNonLeafNode;
                 this.parent = tempNonLeafNode;
-                oldKey = null;
             }
-            System.arraycopy(tempKeys, leftNodeNumber, tempNode.keys, 0, minKeys);
-            System.arraycopy(tempValues, leftNodeNumber, tempNode.values, 0, minKeys);
+            System.arraycopy(this.keys, leftNodeNumber, tempNode.keys, 0, tempNode.number);
+            System.arraycopy(this.values, leftNodeNumber, tempNode.values, 0, tempNode.number);
 
-            // Let the original leaf node as the left half of the split
+            // Let the original leaf node as the left half of the split, clear the slots that moved out
+            Arrays.fill(this.keys, leftNodeNumber, this.number, null);
+            Arrays.fill(this.values, leftNodeNumber, this.number, null);
             this.number = leftNodeNumber;
-            this.keys = new Object[maxKeys];
-            this.values = new Object[maxKeys];
-            System.arraycopy(tempKeys, 0, this.keys, 0, leftNodeNumber);
-            System.arraycopy(tempValues, 0, this.values, 0, leftNodeNumber);
 
+            this.rebuildFilter();
+            tempNode.rebuildFilter();
+
+            // Link the new leaf into the leaf chain
+            tempNode.right = this.right;
             if(this.right != null){
-                LeafNode<T, V> tempRightNode = new LeafNode<T, V>();
-                tempRightNode = this.right;
-                this.right = tempNode;
-                this.right.right = tempRightNode;
-            }
-            else{
-                this.right = tempNode;
+                this.right.left = tempNode;
             }
+            this.right = tempNode;
             tempNode.left = this;
-            if(this.number > 0){
-                oldKey = (V) this.right.keys[0];
-            }
-            System.out.println("Leaf-node: after the split - ");
-            System.out.print("[");
-            for(int j=0; j<this.keys.length; j++){
-                if(this.keys[j] != null){
-                    System.out.print(this.keys[j]);
-                    System.out.print(" ");
-                }
-            }
-            System.out.print("] ");
-            System.out.print("[");
-            for(int j=0; j<tempNode.number; j++){
-                if(tempNode.keys[j] != null){
-                    System.out.print(tempNode.keys[j]);
-                    System.out.print(" ");
-                }
+
+            listener.onSplit(true, this.keys, this.number, tempNode.keys, tempNode.number);
+            if(statistics != null){
+                statistics.nodeSplit(0);
             }
-            System.out.println("]");
 
             //After the leaf node is successfully split, the newly generated node needs to be inserted into the parent node.
             NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
-            return parentNode.insertNode(this, tempNode, oldKey, false, newKey);
+            return parentNode.insertNode(this, tempNode, (V) tempNode.keys[0]);
         }
 
         @Override
@@ -706,130 +1857,651 @@ public class DenseBPlusTree<T, V extends Comparable<V>>
         }
 
         @Override
-        Node<T, V> delete(V key) {
-            System.out.println("leaf node, delete key: " + key);
+        long size() {
+            return this.live(this.number);
+        }
 
-            // Save the key value of the original existence of the parent node
-            V oldKey = null;
-            V newKey = null;
-            // Insert data first
-            int i = 0;
-            while(i < this.number){
-                if(key.compareTo((V) this.keys[i]) == 0)
-                    break;
-                i++;
+        @Override
+        Object aggregate() {
+            return this.aggregate(0, this.number);
+        }
+
+        //Aggregate of the entries in [from, to) that are not marked deleted
+        Object aggregate(int from, int to) {
+            Object aggregate = aggregator.identity();
+            for(int i = from; i < to; i++){
+                if(this.values[i] != TOMBSTONE){
+                    aggregate = aggregator.combine(aggregate, aggregator.lift(this.values[i]));
+                }
             }
+            return aggregate;
+        }
+
+        /**
+         * Delete the key in place, the larger keys shift one slot to the left, or only mark it when deletes are lazy.
+         * A leaf left below the merge threshold is rebalanced with its siblings.
+         * @param key
+         * @return
+         */
+        @Override
+        Node<T, V> delete(V key) {
+            int i = this.find(key);
             if(i >= this.number){
-                System.out.println("Key: " + key + " not found");
+                listener.onNotFound(key);
                 return null;
             }
+            return this.deleteAt(i, key);
+        }
 
-            // Copy the array, complete the addition
-            Object tempKeys[] = new Object[maxKeys];
-            Object tempValues[] = new Object[maxKeys];
-            System.arraycopy(this.keys, 0, tempKeys, 0, i);
-            System.arraycopy(this.values, 0, tempValues, 0, i);
-            System.arraycopy(this.keys, i+1, tempKeys, i, this.number - i - 1);
-            System.arraycopy(this.values, i+1, tempValues, i, this.number - i - 1);
+        //Delete the entry in slot i, which holds the key, as delete does
+        Node<T, V> deleteAt(int i, V key) {
+            if(lazyDeletes){
+                this.values[i] = TOMBSTONE;
+                tombstones++;
+                if(statistics != null){
+                    statistics.keysAdded(-1);
+                }
+                this.entriesChanged(-1);
+                listener.onNodeDelete(true, key, false);
+                return null;
+            }
 
+            System.arraycopy(this.keys, i + 1, this.keys, i, this.number - i - 1);
+            System.arraycopy(this.values, i + 1, this.values, i, this.number - i - 1);
             this.number--;
+            this.keys[this.number] = null;
+            this.values[this.number] = null;
+            if(statistics != null){
+                statistics.keysAdded(-1);
+            }
+            this.entriesChanged(-1);
+            this.filterRemoved(1);
 
-//            System.out.println("Insert completed, current node key is:");
-//            for(int j = 0; j < this.number; j++)
-//                System.out.print(tempKeys[j] + " ");
-//            System.out.println();
+            // Determine whether you need to re-distribute
+            // If you do not need to re-distribute, return directly
+            if(this.number >= mergeThreshold || this.parent == null){
+                listener.onNodeDelete(true, key, false);
+                return null;
+            }
 
-            // Determine whether you need to split
-            // If you do not need to split to complete the copy and return directly
-            if(this.number >= minKeys){
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                System.arraycopy(tempValues, 0, this.values, 0, this.number);
+            listener.onNodeDelete(true, key, true);
 
-                System.out.println("Leaf-node: delete key - " + key + ", no re-distribution is required");
+            return this.rebalance();
+        }
 
+        /**
+         * Rebalance an underfull leaf with its siblings under the same parent. A sibling that holds enough keys for
+         * both to reach the minimum, the fuller one first, gives enough of them to even the two leaves out, so the next
+         * deletes do not underflow the leaf again at once. Otherwise the two fit into one leaf and are coalesced.
+         * Non-leaf nodes below the root are rebalanced too, so every parent has at least two children
+         * @return the new root when the coalesce shrank the tree, otherwise null
+         */
+        Node<T, V> rebalance() {
+            NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
+            int j = parentNode.childIndex(this);
+            LeafNode<T, V> left = j > 0 ? (LeafNode<T, V>) parentNode.childNodes[j - 1] : null;
+            LeafNode<T, V> right = j < parentNode.number ? (LeafNode<T, V>) parentNode.childNodes[j + 1] : null;
+
+            if(right != null && right.number + this.number >= 2 * minKeys && (left == null || right.number >= left.number)){
+                int count = (right.number - this.number) / 2;
+                System.arraycopy(right.keys, 0, this.keys, this.number, count);
+                System.arraycopy(right.values, 0, this.values, this.number, count);
+                this.number += count;
+                right.number -= count;
+                System.arraycopy(right.keys, count, right.keys, 0, right.number);
+                System.arraycopy(right.values, count, right.values, 0, right.number);
+                Arrays.fill(right.keys, right.number, right.number + count, null);
+                Arrays.fill(right.values, right.number, right.number + count, null);
+                // The separator becomes the new first key of the right leaf
+                parentNode.keys[j] = right.keys[0];
+                parentNode.refresh(j);
+                parentNode.refresh(j + 1);
+                this.redistributed(right, this, right, count);
+                return null;
+            }
+            if(left != null && left.number + this.number >= 2 * minKeys){
+                int count = (left.number - this.number) / 2;
+                System.arraycopy(this.keys, 0, this.keys, count, this.number);
+                System.arraycopy(this.values, 0, this.values, count, this.number);
+                left.number -= count;
+                System.arraycopy(left.keys, left.number, this.keys, 0, count);
+                System.arraycopy(left.values, left.number, this.values, 0, count);
+                Arrays.fill(left.keys, left.number, left.number + count, null);
+                Arrays.fill(left.values, left.number, left.number + count, null);
+                this.number += count;
+                parentNode.keys[j - 1] = this.keys[0];
+                parentNode.refresh(j - 1);
+                parentNode.refresh(j);
+                this.redistributed(left, left, this, count);
                 return null;
             }
 
-            System.out.println("Leaf node: delete key - " + key + ", need to re-distribute");
-            System.out.println("Leaf-node: before the redistribution - ");
-            System.out.print("[");
-            for(int j=0; j<this.keys.length; j++){
-                if (this.keys[j] != null) {
-                    System.out.print(this.keys[j]);
-                    System.out.print(" ");
+            // Coalesce, the right one of the two leaves moves into the left one and leaves the parent
+            if(right != null){
+                this.absorb(right);
+                return parentNode.deleteNode(j);
+            }
+            left.absorb(this);
+            return parentNode.deleteNode(j - 1);
+        }
+
+        //Report count entries that moved from the donor into this leaf, the two leaves in key order
+        private void redistributed(LeafNode<T, V> donor, LeafNode<T, V> first, LeafNode<T, V> second, int count) {
+            this.rebuildFilter();
+            donor.filterRemoved(count);
+            listener.onRedistribute(true, first.keys, first.number, second.keys, second.number);
+            if(statistics != null){
+                statistics.redistributed();
+            }
+        }
+
+        //Take in every entry of the right sibling and unlink it, the caller removes it from the parent. The sibling keeps its right link
+        void absorb(LeafNode<T, V> right) {
+            System.arraycopy(right.keys, 0, this.keys, this.number, right.number);
+            System.arraycopy(right.values, 0, this.values, this.number, right.number);
+            this.number += right.number;
+            this.right = right.right;
+            if(this.right != null){
+                this.right.left = this;
+            }
+            this.rebuildFilter();
+
+            listener.onCoalesce(true, this.keys, this.number);
+            if(statistics != null){
+                statistics.nodeCoalesced(0);
+            }
+        }
+
+        //Remove the entries marked by lazy deletes, the others close up in place
+        void squeeze() {
+            int kept = 0;
+            for(int i = 0; i < this.number; i++){
+                if(this.values[i] != TOMBSTONE){
+                    this.keys[kept] = this.keys[i];
+                    this.values[kept] = this.values[i];
+                    kept++;
                 }
             }
-            System.out.println("]");
+            if(kept == this.number)
+                return;
+            Arrays.fill(this.keys, kept, this.number, null);
+            Arrays.fill(this.values, kept, this.number, null);
+            int removed = this.number - kept;
+            this.number = kept;
+            tombstones -= removed;
+            this.filterRemoved(removed);
+        }
 
-            // New leaf node, as the right half of the split
-            LeafNode<T, V> tempNode = new LeafNode<T, V>();
-            tempNode.number = this.right.number - 1;
-            tempNode.parent = this.parent;
-            int leftNodeNumber = minKeys;
-            oldKey = (V) this.right.keys[0];
-
-            if(tempNode.number < minKeys){
-                // Add one element in the left node from the right one
-                this.keys = new Object[maxKeys];
-                this.values = new Object[maxKeys];
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                System.arraycopy(tempValues, 0, this.values, 0, this.number);
-                System.arraycopy(this.right.keys, 0, this.keys, this.number, this.right.number);
-                System.arraycopy(this.right.values, 0, this.values, this.number, this.right.number);
-                this.number = this.number + this.right.number;
-                tempNode.left = this;
-
-                System.out.println("Leaf-node: after redistribution - ");
-                System.out.print("[");
-                for(int j=0; j<this.keys.length; j++){
-                    if (this.keys[j] != null) {
-                        System.out.print(this.keys[j]);
-                        System.out.print(" ");
-                    }
+        /**
+         * Merge a sorted run of batch entries into the leaf from the back. Each new key finds its slot with a binary
+         * search below the previous one and the keys above it move as one block, so every entry is moved once.
+         * A new key goes behind the equal keys already in the leaf, as insert puts it. The run must fit into the leaf.
+         * @param keys
+         * @param values
+         * @param positions batch positions in key order
+         * @param from first position of the run
+         * @param run
+         */
+        void insertRun(V[] keys, T[] values, Integer[] positions, int from, int run) {
+            int high = this.number;
+            int to = this.number + run;
+            for(int b = from + run - 1; b >= from; b--){
+                V key = keys[positions[b]];
+                int i = this.upperBound(key, 0, high);
+                to -= high - i;
+                System.arraycopy(this.keys, i, this.keys, to, high - i);
+                System.arraycopy(this.values, i, this.values, to, high - i);
+                high = i;
+                to--;
+                this.keys[to] = key;
+                this.values[to] = values[positions[b]];
+            }
+            this.number += run;
+            if(statistics != null){
+                statistics.keysAdded(run);
+            }
+            this.entriesChanged(run);
+            for(int b = from; b < from + run; b++){
+                V key = keys[positions[b]];
+                if(this.filter != null){
+                    this.filter.add(BloomFilter.hash(key));
                 }
-                System.out.println("]");
-
-                NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
-                return parentNode.deleteNode(oldKey);
-            }
-            else{
-                // Add one element in the left node from the right one
-                this.number = leftNodeNumber;
-                System.arraycopy(this.right.keys, 0, tempKeys, this.number - 1, 1);
-                System.arraycopy(this.right.values, 0, tempValues, this.number - 1, 1);
-                System.arraycopy(tempKeys, 0, this.keys, 0, this.number);
-                System.arraycopy(tempValues, 0, this.values, 0, this.number);
-
-                //Update the right leaf node to have one less element
-                System.arraycopy(this.right.keys, 1, tempNode.keys, 0, tempNode.number);
-                System.arraycopy(this.right.values, 1, tempNode.values, 0, tempNode.number);
-                this.right = tempNode;
-                tempNode.left = this;
-                if(this.number > 0){
-                    newKey = (V) this.right.keys[0];
-                }
-                System.out.println("Leaf-node: after redistribution - ");
-                System.out.print("[");
-                for(int j=0; j<this.keys.length; j++){
-                    if(this.keys[j] != null){
-                        System.out.print(this.keys[j]);
-                        System.out.print(" ");
-                    }
+                listener.onInsert(key);
+                listener.onNodeInsert(true, key, false);
+                listener.onInsertCompleted(key);
+            }
+        }
+
+        /**
+         * Remove a sorted run of batch keys from the leaf in one pass, every key removes its first match.
+         * Each key is found with a binary search above the previous match and the keys between two matches move
+         * down as one block. Keys without a match are reported as not found
+         * @param keys
+         * @param positions batch positions in key order
+         * @param from first position of the run
+         * @param run
+         */
+        void deleteRun(V[] keys, Integer[] positions, int from, int run) {
+            if(lazyDeletes){
+                this.markRun(keys, positions, from, run);
+                return;
+            }
+            int read = 0;
+            int kept = 0;
+            for(int b = from; b < from + run; b++){
+                V key = keys[positions[b]];
+                listener.onDelete(key);
+                int i = this.lowerBound(key, read, this.number);
+                if(i >= this.number || key.compareTo((V) this.keys[i]) != 0){
+                    listener.onNotFound(key);
+                    continue;
+                }
+                System.arraycopy(this.keys, read, this.keys, kept, i - read);
+                System.arraycopy(this.values, read, this.values, kept, i - read);
+                kept += i - read;
+                read = i + 1;
+                listener.onNodeDelete(true, key, false);
+                listener.onDeleteCompleted(key);
+            }
+            System.arraycopy(this.keys, read, this.keys, kept, this.number - read);
+            System.arraycopy(this.values, read, this.values, kept, this.number - read);
+            kept += this.number - read;
+            Arrays.fill(this.keys, kept, this.number, null);
+            Arrays.fill(this.values, kept, this.number, null);
+            if(statistics != null){
+                statistics.keysAdded(kept - this.number);
+            }
+            int removed = this.number - kept;
+            this.number = kept;
+            this.entriesChanged(-removed);
+            this.filterRemoved(removed);
+        }
+
+        //Mark the first live match of every key of a sorted run, searching above the previous mark
+        private void markRun(V[] keys, Integer[] positions, int from, int run) {
+            int low = 0;
+            int marked = 0;
+            for(int b = from; b < from + run; b++){
+                V key = keys[positions[b]];
+                listener.onDelete(key);
+                int i = this.lowerBound(key, low, this.number);
+                while(i < this.number && this.values[i] == TOMBSTONE && key.compareTo((V) this.keys[i]) == 0){
+                    i++;
+                }
+                if(i >= this.number || key.compareTo((V) this.keys[i]) != 0){
+                    listener.onNotFound(key);
+                    continue;
+                }
+                this.values[i] = TOMBSTONE;
+                tombstones++;
+                if(statistics != null){
+                    statistics.keysAdded(-1);
+                }
+                marked++;
+                low = i + 1;
+                listener.onNodeDelete(true, key, false);
+                listener.onDeleteCompleted(key);
+            }
+            this.entriesChanged(-marked);
+        }
+
+        //Entries in [0, to) that are not marked deleted
+        int live(int to) {
+            if(tombstones == 0)
+                return to;
+            int live = 0;
+            for(int i = 0; i < to; i++){
+                if(this.values[i] != TOMBSTONE)
+                    live++;
+            }
+            return live;
+        }
+
+        /**
+         * Bring the subtree counts and aggregates on the path up to the root up to date after entries of the leaf
+         * were added, removed or revived. A count takes the change, an aggregate is combined again from the child
+         * @param delta change in the number of entries
+         */
+        void entriesChanged(long delta) {
+            if(delta == 0 || (!subtreeCounts && aggregator == null))
+                return;
+            Node<T, V> child = this;
+            for(Node<T, V> node = this.parent; node != null; child = node, node = node.parent){
+                NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>) node;
+                int i = parentNode.childIndex(child);
+                if(parentNode.counts != null){
+                    parentNode.counts[i] += delta;
+                }
+                if(parentNode.aggregates != null){
+                    parentNode.aggregates[i] = child.aggregate();
+                }
+            }
+        }
+
+        //Index of the first entry with the key that is not marked deleted, or number if there is none
+        int find(V key) {
+            int i = this.lowerBound(key);
+            while(i < this.number && key.compareTo((V) this.keys[i]) == 0){
+                if(this.values[i] != TOMBSTONE)
+                    return i;
+                i++;
+            }
+            return this.number;
+        }
+
+        //False when the filter rules the key out, always true without a filter
+        boolean mightContain(V key) {
+            return this.filter == null || this.filter.mightContain(BloomFilter.hash(key));
+        }
+
+        //Refill the filter from the keys of the leaf, it is created here when the tree keeps filters
+        void rebuildFilter() {
+            if(bloomBitsPerKey == 0)
+                return;
+            if(this.filter == null)
+                this.filter = new BloomFilter(maxKeys + 1, bloomBitsPerKey);
+            else
+                this.filter.clear();
+            for(int i = 0; i < this.number; i++){
+                this.filter.add(BloomFilter.hash(this.keys[i]));
+            }
+        }
+
+        //Count keys that left the leaf, their bits are cleared by a rebuild once they outnumber the live keys
+        void filterRemoved(int keys) {
+            if(this.filter == null)
+                return;
+            this.filter.removed(keys);
+            if(this.filter.isStale(this.number)){
+                this.rebuildFilter();
+            }
+        }
+
+        //First index in [low, high) whose key is greater than the key
+        private int upperBound(V key, int low, int high) {
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(key.compareTo((V) this.keys[middle]) >= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        //First index in [low, high) whose key is greater than or equal to the key
+        private int lowerBound(V key, int low, int high) {
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(key.compareTo((V) this.keys[middle]) > 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Builds the nodes [from, to) of one level of a parallel bulk load, halving the range until it is small enough
+     * to build in place. The leaf level has keys and values, a non-leaf level the level below it.
+     */
+    private class BuildTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final V[] keys;
+        private final T[] values;
+        private final Node<T, V>[] children;
+        private final Object[] childLowKeys;
+        private final Node<T, V>[] level;
+        private final Object[] lowKeys;
+        private final int from;
+        private final int to;
+
+        BuildTask(V[] keys, T[] values, Node<T, V>[] children, Object[] childLowKeys, Node<T, V>[] level, Object[] lowKeys, int from, int to)
+        {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+            this.childLowKeys = childLowKeys;
+            this.level = level;
+            this.lowKeys = lowKeys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(this.to - this.from <= PARALLEL_BUILD_NODES){
+                if(this.keys != null){
+                    checkSorted(this.keys, offset(this.keys.length, this.level.length, this.from), offset(this.keys.length, this.level.length, this.to));
+                    buildLeaves(this.keys, this.values, this.level, this.lowKeys, this.from, this.to);
+                }
+                else{
+                    buildParents(this.children, this.childLowKeys, this.level, this.lowKeys, this.from, this.to);
+                }
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new BuildTask(this.keys, this.values, this.children, this.childLowKeys, this.level, this.lowKeys, this.from, middle),
+                    new BuildTask(this.keys, this.values, this.children, this.childLowKeys, this.level, this.lowKeys, middle, this.to));
+            // Both halves are built, stitch the leaf chain across the cut
+            if(this.keys != null){
+                link((LeafNode<T, V>) this.level[middle - 1], (LeafNode<T, V>) this.level[middle]);
+            }
+        }
+    }
+
+    /**
+     * Spliterator over a key range. It spans the children from..to of one node and trySplit cuts them at the middle
+     * separator: the prefix runs up to the first leaf of the middle child, which is where the rest starts. The cut
+     * follows the tree rather than the separator key, so equal keys on both sides of a separator stay in order.
+     * A piece that fits under one child narrows down to it, a piece inside one leaf no longer splits.
+     */
+    private class RangeSpliterator implements Spliterator<T>
+    {
+        private LeafNode<T, V> leaf;
+        private int index;
+        //First leaf of the next piece, null when the piece runs to the upper bound or the end of the leaf chain
+        private final LeafNode<T, V> stop;
+        private final V upper;
+        //Node whose children from..to hold the piece, null once it is inside a single leaf
+        private Node<T, V> node;
+        private int from;
+        private int to;
+
+        RangeSpliterator(LeafNode<T, V> leaf, int index, LeafNode<T, V> stop, V upper, Node<T, V> node)
+        {
+            this.leaf = leaf;
+            this.index = index;
+            this.stop = stop;
+            this.upper = upper;
+            settle();
+            narrow(node);
+        }
+
+        // Skip exhausted leaves and deleted entries and stop at the upper bound or at the next piece
+        private void settle()
+        {
+            while(this.leaf != null && (this.index >= this.leaf.number || this.leaf.values[this.index] == TOMBSTONE)){
+                if(this.index < this.leaf.number){
+                    this.index++;
+                    continue;
+                }
+                this.leaf = this.leaf.right == this.stop ? null : this.leaf.right;
+                this.index = 0;
+            }
+            if(this.leaf != null && this.upper != null && this.upper.compareTo((V) this.leaf.keys[this.index]) < 0){
+                this.leaf = null;
+            }
+        }
+
+        // Find the lowest node below the given one that still holds the rest of the piece in more than one child
+        private void narrow(Node<T, V> node)
+        {
+            while(this.leaf != null && node instanceof NonLeafNode){
+                this.from = childOf(node, this.leaf);
+                this.to = this.stop == null ? node.number : childOf(node, this.stop.left);
+                if(this.upper != null){
+                    this.to = Math.min(this.to, node.upperBound(this.upper));
+                }
+                if(this.from < this.to){
+                    this.node = node;
+                    return;
+                }
+                node = node.childNodes[this.from];
+            }
+            this.node = null;
+        }
+
+        //Index of the child of the node that the leaf sits under
+        private int childOf(Node<T, V> node, LeafNode<T, V> leaf)
+        {
+            Node<T, V> child = leaf;
+            while(child.parent != node){
+                child = child.parent;
+            }
+            return ((NonLeafNode<T, V>) node).childIndex(child);
+        }
+
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            // Steps taken since the last split may have left the children before the middle
+            narrow(this.node);
+            if(this.node == null)
+                return null;
+            Node<T, V> first = this.node.childNodes[(this.from + this.to + 1) / 2];
+            while(first instanceof NonLeafNode){
+                first = first.childNodes[0];
+            }
+            RangeSpliterator prefix = new RangeSpliterator(this.leaf, this.index, (LeafNode<T, V>) first, this.upper, this.node);
+            this.leaf = (LeafNode<T, V>) first;
+            this.index = 0;
+            settle();
+            narrow(this.node);
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            if(this.leaf == null)
+                return false;
+            T value = (T) this.leaf.values[this.index];
+            this.index++;
+            settle();
+            action.accept(value);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action)
+        {
+            LeafNode<T, V> leaf = this.leaf;
+            int index = this.index;
+            this.leaf = null;
+            while(leaf != null){
+                // Only the leaf with the upper bound in it needs a key comparison
+                int end = leaf.number;
+                if(this.upper != null && end > 0 && this.upper.compareTo((V) leaf.keys[end - 1]) < 0){
+                    end = leaf.upperBound(this.upper);
                 }
-                System.out.print("] ");
-                System.out.print("[");
-                for(int j=0; j<tempNode.number; j++){
-                    if(tempNode.keys[j] != null){
-                        System.out.print(tempNode.keys[j]);
-                        System.out.print(" ");
+                for(; index < end; index++){
+                    Object value = leaf.values[index];
+                    if(value != TOMBSTONE){
+                        action.accept((T) value);
                     }
                 }
-                System.out.println("]");
+                if(end < leaf.number)
+                    return;
+                leaf = leaf.right == this.stop ? null : leaf.right;
+                index = 0;
+            }
+        }
+
+        //Children in the piece times the entries of a subtree at about three quarters full, or what is left of the leaf
+        @Override
+        public long estimateSize()
+        {
+            if(this.leaf == null)
+                return 0;
+            if(this.node == null)
+                return this.leaf.number - this.index;
+            long fill = (minKeys + maxKeys + 1) / 2;
+            long size = (this.to - this.from + 1) * fill;
+            for(int level = ((NonLeafNode<T, V>) this.node).level() - 1; level > 0; level--){
+                size *= fill + 1;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics()
+        {
+            return Spliterator.ORDERED;
+        }
+    }
+
+    /**
+     * Cursor over a key range. It holds a leaf and a position, next() steps along the leaf and then over the right link,
+     * and the cursor is exhausted at the first key above the upper bound or at the end of the leaf chain.
+     */
+    public class RangeCursor implements Iterator<T>
+    {
+        private LeafNode<T, V> leaf;
+        private int index;
+        private final V upper;
+        private V key;
+
+        RangeCursor(LeafNode<T, V> leaf, int index, V upper)
+        {
+            this.leaf = leaf;
+            this.index = index;
+            this.upper = upper;
+            settle();
+        }
 
-                //After the leaf node is successfully split, the newly generated node needs to be inserted into the parent node.
-                NonLeafNode<T, V> parentNode = (NonLeafNode<T, V>)this.parent;
-                return parentNode.insertNode(this, tempNode, oldKey, true, newKey);
+        // Skip exhausted leaves and deleted entries and stop at the upper bound, a null bound runs to the end of the leaf chain
+        private void settle()
+        {
+            while(this.leaf != null && (this.index >= this.leaf.number || this.leaf.values[this.index] == TOMBSTONE)){
+                if(this.index < this.leaf.number){
+                    this.index++;
+                    continue;
+                }
+                this.leaf = this.leaf.right;
+                this.index = 0;
             }
+            if(this.leaf != null && this.upper != null && this.upper.compareTo((V) this.leaf.keys[this.index]) < 0){
+                this.leaf = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.leaf != null;
+        }
+
+        @Override
+        public T next()
+        {
+            if(this.leaf == null)
+                throw new NoSuchElementException();
+            this.key = (V) this.leaf.keys[this.index];
+            T value = (T) this.leaf.values[this.index];
+            this.index++;
+            settle();
+            return value;
+        }
+
+        //Key of the value last returned by next
+        public V key()
+        {
+            return this.key;
         }
     }
 }
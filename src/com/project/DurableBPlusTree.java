@@ -0,0 +1,176 @@
+package com.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class DurableBPlusTree<T, V extends Comparable<V>> implements Closeable
+{
+    /**
+     * Sparse B+ tree whose mutations survive a crash. Every insert and delete is appended to a write-ahead log
+     * and applied to the tree under one lock, then the writer waits for the group commit outside the lock, so
+     * concurrent writers share their fsyncs. Opening the directory again loads the last checkpoint and replays the
+     * log behind it. Checkpoints are written every checkpointInterval records, or on request.
+     * Keys may repeat. A delete logs the value of the entry it removes and removes exactly that entry, so recovery,
+     * which rebuilds the tree in another shape, takes out the same entries as the live tree did.
+     *
+     * @param <T> specifies the value type
+     * @param <V> specifies the index type
+     */
+    static final String LOG_FILE = "tree.wal";
+    static final String CHECKPOINT_FILE = "tree.checkpoint";
+    //Records between two automatic checkpoints unless the caller chooses
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1000000;
+
+    private final SparseBPlusTree<T, V> tree;
+    private final WriteAheadLog<T, V> log;
+    //Every tree access holds this lock, the log has its own
+    private final Object treeLock = new Object();
+
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    private long replayed;
+
+    /**
+     * Open the tree kept in the directory, recovering its state from the checkpoint and the log
+     * @param directory created if it does not exist
+     * @param bTreeOrder
+     * @param keyCodec
+     * @param valueCodec
+     * @throws IOException
+     */
+    public DurableBPlusTree(Path directory, int bTreeOrder, Codec<V> keyCodec, Codec<T> valueCodec) throws IOException
+    {
+        Files.createDirectories(directory);
+        this.tree = new SparseBPlusTree<>(bTreeOrder);
+        this.log = new WriteAheadLog<>(directory.resolve(LOG_FILE), directory.resolve(CHECKPOINT_FILE), keyCodec, valueCodec);
+        this.replayed = this.log.recover(new WriteAheadLog.Replayer<T, V>()
+        {
+            @Override
+            public void load(V[] keys, T[] values)
+            {
+                tree.bulkLoad(keys, values, 0.5);
+            }
+
+            @Override
+            public void insert(T value, V key)
+            {
+                tree.insert(value, key);
+            }
+
+            @Override
+            public void delete(V key)
+            {
+                tree.delete(key);
+            }
+
+            @Override
+            public void delete(T value, V key)
+            {
+                tree.delete(key, value);
+            }
+        });
+    }
+
+    // Checkpoint after this many logged records, 0 switches automatic checkpoints off
+    public void setCheckpointInterval(long checkpointInterval)
+    {
+        if(checkpointInterval < 0)
+            throw new IllegalArgumentException("Checkpoint interval must not be negative: " + checkpointInterval);
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    //Number of log records replayed when the tree was opened
+    public long getReplayedRecords()
+    {
+        return this.replayed;
+    }
+
+    public WriteAheadLog<T, V> getLog()
+    {
+        return this.log;
+    }
+
+    //Search
+    public T search(V key)
+    {
+        synchronized (this.treeLock) {
+            return this.tree.search(key);
+        }
+    }
+
+    //Insert, returns once the insert is durable
+    public void insert(T value, V key)
+    {
+        long lsn;
+        synchronized (this.treeLock) {
+            lsn = this.log.logInsert(value, key);
+            this.tree.insert(value, key);
+            checkpointIfDue();
+        }
+        this.log.sync(lsn);
+    }
+
+    //Delete the entry search finds for the key, returns once the delete is durable
+    public void delete(V key)
+    {
+        long lsn;
+        synchronized (this.treeLock) {
+            // Codecs cannot write null, so every entry has a value and null means the key is absent
+            T value = this.tree.search(key);
+            if(value == null)
+                return;
+            lsn = this.log.logDelete(value, key);
+            this.tree.delete(key, value);
+            checkpointIfDue();
+        }
+        this.log.sync(lsn);
+    }
+
+    //Write a checkpoint of the whole tree and empty the log, writers wait until it is done
+    public void checkpoint()
+    {
+        synchronized (this.treeLock) {
+            SparseBPlusTree<T, V>.RangeCursor cursor = this.tree.entries();
+            try {
+                this.log.checkpoint(new Iterator<Map.Entry<V, T>>()
+                {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return cursor.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<V, T> next()
+                    {
+                        T value = cursor.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(cursor.key(), value);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this.treeLock) {
+            this.log.close();
+        }
+    }
+
+    private void checkpointIfDue()
+    {
+        if(this.checkpointInterval > 0 && this.log.getRecordsSinceCheckpoint() >= this.checkpointInterval){
+            checkpoint();
+        }
+    }
+}
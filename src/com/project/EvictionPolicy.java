@@ -0,0 +1,22 @@
+package com.project;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Chooses which frame of a buffer pool gives up its page when a page that is not cached has to be loaded.
+ * Frames are numbered from 0; the pool only asks for a victim once every frame holds a page.
+ */
+public interface EvictionPolicy
+{
+    //Called once by the pool before any other method
+    void attach(int frameCount);
+
+    //The page in the frame was loaded or used
+    void recordAccess(int frame);
+
+    //The page in the frame was evicted, its history is dropped
+    void remove(int frame);
+
+    //Frame to evict among those the predicate accepts (the unpinned ones), -1 if there is none
+    int victim(IntPredicate evictable);
+}
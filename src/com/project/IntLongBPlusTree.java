@@ -0,0 +1,512 @@
+package com.project;
+
+import java.util.Arrays;
+
+public class IntLongBPlusTree
+{
+    /**
+     * B+ tree specialised for int keys and long values, for indexes whose payload is a row id or file offset.
+     * Keys and values are kept in primitive arrays inside every node, so search, insert and delete
+     * never box a key and never allocate anything per entry; only splits allocate (the new node).
+     */
+    //B+ tree order
+    private final int bTreeOrder;
+    // The minimum number of keys for a node other than the root
+    private final int minKeys;
+    //The maximum number of keys for a node
+    private final int maxKeys;
+    //Value returned by search when the key does not exist
+    private final long missingValue;
+
+    private Node root;
+
+    private int size;
+
+    // No parameter construction method, the default order is 3
+    public IntLongBPlusTree()
+    {
+        this(3);
+    }
+
+    public IntLongBPlusTree(int bTreeOrder)
+    {
+        this(bTreeOrder, Long.MIN_VALUE);
+    }
+
+    // Set the order of the B+ tree and the value search returns for absent keys
+    public IntLongBPlusTree(int bTreeOrder, long missingValue)
+    {
+        if(bTreeOrder < 2)
+            throw new IllegalArgumentException("B+ tree order must be at least 2: " + bTreeOrder);
+        this.bTreeOrder = bTreeOrder;
+        this.minKeys = (int) (Math.ceil((bTreeOrder + 1) / 2.0) - 1.0);
+        this.maxKeys = bTreeOrder;
+        this.missingValue = missingValue;
+        this.root = new LeafNode();
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public long getMissingValue()
+    {
+        return this.missingValue;
+    }
+
+    //Search, returns the value of the first entry with the key or the missing value
+    public long search(int key)
+    {
+        return valueOf(findLeaf(key), key);
+    }
+
+    /**
+     * Search a batch of keys, result[i] is the value of keys[i] as search returns it. The keys are sorted together
+     * with their positions and split into IntBPlusTree.SEARCH_LANES runs. Each run does a shared descent: it keeps its path and
+     * the upper fence of every node on it, so the next key climbs only as far as needed. The runs advance one node at
+     * a time in turn, so the node loads of different runs are independent and their cache misses overlap.
+     * @param keys
+     * @return
+     */
+    public long[] searchAll(int[] keys)
+    {
+        long[] result = new long[keys.length];
+        // Sorting and the lane state cost more than a few separate descents
+        if(keys.length < IntBPlusTree.SEARCH_ALL_MIN_BATCH){
+            for(int i = 0; i < keys.length; i++){
+                result[i] = search(keys[i]);
+            }
+            return result;
+        }
+        // Key in the high half, position in the low half, so one primitive sort orders both
+        long[] sorted = new long[keys.length];
+        for(int i = 0; i < keys.length; i++){
+            sorted[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(sorted);
+
+        int height = 1;
+        for(Node node = this.root; node instanceof NonLeafNode; node = ((NonLeafNode) node).childNodes[0]){
+            height++;
+        }
+        int lanes = Math.min(IntBPlusTree.SEARCH_LANES, keys.length);
+        Node[][] path = new Node[lanes][height];
+        long[][] fences = new long[lanes][height];
+        int[] depth = new int[lanes];
+        int[] next = new int[lanes];
+        int[] end = new int[lanes];
+        for(int lane = 0; lane < lanes; lane++){
+            next[lane] = (int) ((long) keys.length * lane / lanes);
+            end[lane] = (int) ((long) keys.length * (lane + 1) / lanes);
+            path[lane][0] = this.root;
+            // Nothing is above the fence of the root
+            fences[lane][0] = Long.MAX_VALUE;
+        }
+
+        int active = lanes;
+        while(active > 0){
+            for(int lane = 0; lane < lanes; lane++){
+                if(next[lane] == end[lane])
+                    continue;
+                int key = (int) (sorted[next[lane]] >> 32);
+                int d = depth[lane];
+                Node node = path[lane][d];
+                if(node instanceof NonLeafNode){
+                    // One level down, the child left of the first separator not below the key, as findLeaf takes
+                    NonLeafNode nonLeafNode = (NonLeafNode) node;
+                    int c = IntBPlusTree.lowerBound(nonLeafNode.keys, nonLeafNode.number, key);
+                    fences[lane][d + 1] = c < nonLeafNode.number ? nonLeafNode.keys[c] : fences[lane][d];
+                    path[lane][d + 1] = nonLeafNode.childNodes[c];
+                    depth[lane] = d + 1;
+                    continue;
+                }
+
+                result[(int) sorted[next[lane]]] = valueOf((LeafNode) node, key);
+                next[lane]++;
+                if(next[lane] == end[lane]){
+                    active--;
+                    continue;
+                }
+                // Climb while the next key lies beyond the subtree
+                int nextKey = (int) (sorted[next[lane]] >> 32);
+                while(depth[lane] > 0 && nextKey > fences[lane][depth[lane]]){
+                    depth[lane]--;
+                }
+            }
+        }
+        return result;
+    }
+
+    public boolean contains(int key)
+    {
+        LeafNode leaf = findLeaf(key);
+        int i = IntBPlusTree.lowerBound(leaf.keys, leaf.number, key);
+        if(i == leaf.number && leaf.right != null){
+            leaf = leaf.right;
+            i = 0;
+        }
+        return i < leaf.number && leaf.keys[i] == key;
+    }
+
+    //Range search, returns the values of all keys in [key1, key2] in key order
+    public long[] rangeSearch(int key1, int key2)
+    {
+        long[] result = new long[16];
+        int count = 0;
+        LeafNode leaf = findLeaf(key1);
+        int i = IntBPlusTree.lowerBound(leaf.keys, leaf.number, key1);
+        while(leaf != null){
+            for(; i < leaf.number; i++){
+                if(leaf.keys[i] > key2)
+                    return Arrays.copyOf(result, count);
+                if(count == result.length)
+                    result = Arrays.copyOf(result, count * 2);
+                result[count++] = leaf.values[i];
+            }
+            leaf = leaf.right;
+            i = 0;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    //Visit all entries with keys in [key1, key2] in key order, stops early when the visitor returns false
+    public void rangeSearch(int key1, int key2, EntryVisitor visitor)
+    {
+        LeafNode leaf = findLeaf(key1);
+        int i = IntBPlusTree.lowerBound(leaf.keys, leaf.number, key1);
+        while(leaf != null){
+            for(; i < leaf.number; i++){
+                if(leaf.keys[i] > key2 || !visitor.visit(leaf.keys[i], leaf.values[i]))
+                    return;
+            }
+            leaf = leaf.right;
+            i = 0;
+        }
+    }
+
+    //Insert, duplicate keys are kept after the existing ones
+    public void insert(long value, int key)
+    {
+        Node node = this.root;
+        while(node instanceof NonLeafNode){
+            NonLeafNode nonLeafNode = (NonLeafNode) node;
+            node = nonLeafNode.childNodes[IntBPlusTree.upperBound(nonLeafNode.keys, nonLeafNode.number, key)];
+        }
+        LeafNode leaf = (LeafNode) node;
+        int i = IntBPlusTree.upperBound(leaf.keys, leaf.number, key);
+        System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.number - i);
+        System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.number - i);
+        leaf.keys[i] = key;
+        leaf.values[i] = value;
+        leaf.number++;
+        this.size++;
+
+        if(leaf.number > this.bTreeOrder)
+            splitLeaf(leaf);
+    }
+
+    //Delete the first entry with the key, returns false if the key does not exist
+    public boolean delete(int key)
+    {
+        LeafNode leaf = findLeaf(key);
+        int i = IntBPlusTree.lowerBound(leaf.keys, leaf.number, key);
+        if(i == leaf.number && leaf.right != null){
+            leaf = leaf.right;
+            i = 0;
+        }
+        if(i >= leaf.number || leaf.keys[i] != key)
+            return false;
+
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.number - i - 1);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.number - i - 1);
+        leaf.number--;
+        this.size--;
+
+        if(leaf != this.root && leaf.number < this.minKeys)
+            rebalanceLeaf(leaf);
+        return true;
+    }
+
+    //Value of the first entry with the key, starting at the leftmost leaf that can hold it, or the missing value
+    private long valueOf(LeafNode leaf, int key)
+    {
+        int i = IntBPlusTree.lowerBound(leaf.keys, leaf.number, key);
+        if(i == leaf.number && leaf.right != null){
+            leaf = leaf.right;
+            i = 0;
+        }
+        if(i < leaf.number && leaf.keys[i] == key)
+            return leaf.values[i];
+        return this.missingValue;
+    }
+
+    /**
+     * Descend to the leftmost leaf that can hold the key: at every non-leaf node take the child left of the
+     * first separator that is greater than or equal to the key
+     * @param key
+     * @return
+     */
+    private LeafNode findLeaf(int key)
+    {
+        Node node = this.root;
+        while(node instanceof NonLeafNode){
+            NonLeafNode nonLeafNode = (NonLeafNode) node;
+            node = nonLeafNode.childNodes[IntBPlusTree.lowerBound(nonLeafNode.keys, nonLeafNode.number, key)];
+        }
+        return (LeafNode) node;
+    }
+
+    private void splitLeaf(LeafNode leaf)
+    {
+        // New leaf node, as the right half of the split
+        LeafNode tempNode = new LeafNode();
+        int leftNodeNumber = (leaf.number + 1) / 2;
+        tempNode.number = leaf.number - leftNodeNumber;
+        System.arraycopy(leaf.keys, leftNodeNumber, tempNode.keys, 0, tempNode.number);
+        System.arraycopy(leaf.values, leftNodeNumber, tempNode.values, 0, tempNode.number);
+        leaf.number = leftNodeNumber;
+
+        tempNode.right = leaf.right;
+        if(leaf.right != null)
+            leaf.right.left = tempNode;
+        leaf.right = tempNode;
+        tempNode.left = leaf;
+
+        insertIntoParent(leaf, tempNode.keys[0], tempNode);
+    }
+
+    private void splitNonLeaf(NonLeafNode node)
+    {
+        // Create a new non-leaf node, as the right half of the split, the middle key moves up
+        NonLeafNode tempNode = new NonLeafNode();
+        int middle = node.number / 2;
+        int middleKey = node.keys[middle];
+        tempNode.number = node.number - middle - 1;
+        System.arraycopy(node.keys, middle + 1, tempNode.keys, 0, tempNode.number);
+        System.arraycopy(node.childNodes, middle + 1, tempNode.childNodes, 0, tempNode.number + 1);
+        for(int j = 0; j <= tempNode.number; j++){
+            tempNode.childNodes[j].parent = tempNode;
+        }
+        Arrays.fill(node.childNodes, middle + 1, node.number + 1, null);
+        node.number = middle;
+
+        insertIntoParent(node, middleKey, tempNode);
+    }
+
+    //After a split, insert the new right node and its separator into the parent of the left node
+    private void insertIntoParent(Node left, int key, Node right)
+    {
+        NonLeafNode parent = left.parent;
+        if(parent == null){
+            parent = new NonLeafNode();
+            parent.keys[0] = key;
+            parent.childNodes[0] = left;
+            parent.childNodes[1] = right;
+            parent.number = 1;
+            left.parent = parent;
+            right.parent = parent;
+            this.root = parent;
+            return;
+        }
+        int i = parent.indexOf(left);
+        System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.number - i);
+        System.arraycopy(parent.childNodes, i + 1, parent.childNodes, i + 2, parent.number - i);
+        parent.keys[i] = key;
+        parent.childNodes[i + 1] = right;
+        parent.number++;
+        right.parent = parent;
+
+        if(parent.number > this.bTreeOrder)
+            splitNonLeaf(parent);
+    }
+
+    //Borrow from a sibling under the same parent if it can spare a key, otherwise coalesce with it
+    private void rebalanceLeaf(LeafNode leaf)
+    {
+        NonLeafNode parent = leaf.parent;
+        int i = parent.indexOf(leaf);
+        LeafNode left = i > 0 ? (LeafNode) parent.childNodes[i - 1] : null;
+        LeafNode right = i < parent.number ? (LeafNode) parent.childNodes[i + 1] : null;
+
+        if(left != null && left.number > this.minKeys){
+            System.arraycopy(leaf.keys, 0, leaf.keys, 1, leaf.number);
+            System.arraycopy(leaf.values, 0, leaf.values, 1, leaf.number);
+            left.number--;
+            leaf.keys[0] = left.keys[left.number];
+            leaf.values[0] = left.values[left.number];
+            leaf.number++;
+            parent.keys[i - 1] = leaf.keys[0];
+        }
+        else if(right != null && right.number > this.minKeys){
+            leaf.keys[leaf.number] = right.keys[0];
+            leaf.values[leaf.number] = right.values[0];
+            leaf.number++;
+            right.number--;
+            System.arraycopy(right.keys, 1, right.keys, 0, right.number);
+            System.arraycopy(right.values, 1, right.values, 0, right.number);
+            parent.keys[i] = right.keys[0];
+        }
+        else if(left != null){
+            mergeLeaves(left, leaf);
+            removeFromNonLeaf(parent, i - 1);
+        }
+        else{
+            mergeLeaves(leaf, right);
+            removeFromNonLeaf(parent, i);
+        }
+    }
+
+    //Move all entries of the right leaf into the left one and unlink the right leaf
+    private void mergeLeaves(LeafNode left, LeafNode right)
+    {
+        System.arraycopy(right.keys, 0, left.keys, left.number, right.number);
+        System.arraycopy(right.values, 0, left.values, left.number, right.number);
+        left.number += right.number;
+        left.right = right.right;
+        if(right.right != null)
+            right.right.left = left;
+    }
+
+    //Remove the key at index i and the child to its right
+    private void removeFromNonLeaf(NonLeafNode node, int i)
+    {
+        System.arraycopy(node.keys, i + 1, node.keys, i, node.number - i - 1);
+        System.arraycopy(node.childNodes, i + 2, node.childNodes, i + 1, node.number - i - 1);
+        node.childNodes[node.number] = null;
+        node.number--;
+
+        if(node == this.root){
+            if(node.number == 0){
+                this.root = node.childNodes[0];
+                this.root.parent = null;
+                node.childNodes[0] = null;
+            }
+            return;
+        }
+        if(node.number < this.minKeys)
+            rebalanceNonLeaf(node);
+    }
+
+    private void rebalanceNonLeaf(NonLeafNode node)
+    {
+        NonLeafNode parent = node.parent;
+        int i = parent.indexOf(node);
+        NonLeafNode left = i > 0 ? (NonLeafNode) parent.childNodes[i - 1] : null;
+        NonLeafNode right = i < parent.number ? (NonLeafNode) parent.childNodes[i + 1] : null;
+
+        if(left != null && left.number > this.minKeys){
+            // Rotate the last child of the left sibling through the parent
+            System.arraycopy(node.keys, 0, node.keys, 1, node.number);
+            System.arraycopy(node.childNodes, 0, node.childNodes, 1, node.number + 1);
+            node.keys[0] = parent.keys[i - 1];
+            node.childNodes[0] = left.childNodes[left.number];
+            node.childNodes[0].parent = node;
+            node.number++;
+            parent.keys[i - 1] = left.keys[left.number - 1];
+            left.childNodes[left.number] = null;
+            left.number--;
+        }
+        else if(right != null && right.number > this.minKeys){
+            // Rotate the first child of the right sibling through the parent
+            node.keys[node.number] = parent.keys[i];
+            node.childNodes[node.number + 1] = right.childNodes[0];
+            node.childNodes[node.number + 1].parent = node;
+            node.number++;
+            parent.keys[i] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.number - 1);
+            System.arraycopy(right.childNodes, 1, right.childNodes, 0, right.number);
+            right.childNodes[right.number] = null;
+            right.number--;
+        }
+        else if(left != null){
+            mergeNonLeaves(left, parent.keys[i - 1], node);
+            removeFromNonLeaf(parent, i - 1);
+        }
+        else{
+            mergeNonLeaves(node, parent.keys[i], right);
+            removeFromNonLeaf(parent, i);
+        }
+    }
+
+    //Pull the separator down and append the keys and children of the right node to the left one
+    private void mergeNonLeaves(NonLeafNode left, int key, NonLeafNode right)
+    {
+        left.keys[left.number] = key;
+        System.arraycopy(right.keys, 0, left.keys, left.number + 1, right.number);
+        System.arraycopy(right.childNodes, 0, left.childNodes, left.number + 1, right.number + 1);
+        for(int j = 0; j <= right.number; j++){
+            right.childNodes[j].parent = left;
+        }
+        left.number += right.number + 1;
+    }
+
+    /**
+     * Callback for range searches
+     */
+    public interface EntryVisitor
+    {
+        //Return false to stop the scan
+        boolean visit(int key, long value);
+    }
+
+    /**
+     * Node parent class, leaves and non-leaf nodes share the key array and the parent pointer.
+     * Both arrays have one spare slot so a node can overflow by one key before it is split.
+     */
+    abstract class Node
+    {
+        //parent node
+        protected NonLeafNode parent;
+        // number of keys
+        protected int number;
+        //key
+        protected int[] keys;
+
+        public Node()
+        {
+            this.keys = new int[maxKeys + 1];
+        }
+    }
+
+    /**
+     * Non-leaf node class
+     */
+    class NonLeafNode extends Node
+    {
+        // child node
+        protected Node[] childNodes;
+
+        public NonLeafNode()
+        {
+            super();
+            this.childNodes = new Node[maxKeys + 2];
+        }
+
+        //Position of a child, found by identity because duplicate keys may sit on both sides of a separator
+        int indexOf(Node child)
+        {
+            for(int i = 0; i <= this.number; i++){
+                if(this.childNodes[i] == child)
+                    return i;
+            }
+            throw new IllegalStateException("Node is not a child of its parent");
+        }
+    }
+
+    /**
+     * Leaf node class
+     */
+    class LeafNode extends Node
+    {
+        protected long[] values;
+        protected LeafNode left;
+        protected LeafNode right;
+
+        public LeafNode()
+        {
+            super();
+            this.values = new long[maxKeys + 1];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.project;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ConstructorParameters;
+
+/**
+ * Histogram of operation latencies in nanoseconds that threads can record into concurrently. Values below 16 get a
+ * bucket each, above that every power of two is split into 8 linear buckets, so a percentile is off by at most an
+ * eighth of its value whatever the range, with a fixed array of counters and no allocation per value.
+ */
+public class LatencyHistogram
+{
+    //Linear sub-buckets per power of two, as a shift
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    //Values below this get a bucket each
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        if(nanos < 0)
+            nanos = 0;
+        this.counts.incrementAndGet(bucket(nanos));
+        this.total.add(nanos);
+        if(nanos > this.max.get()){
+            this.max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    public void reset()
+    {
+        for(int i = 0; i < BUCKETS; i++){
+            this.counts.set(i, 0);
+        }
+        this.total.reset();
+        this.max.set(0);
+    }
+
+    //Counts and percentiles as of now, values recorded meanwhile may or may not be in it
+    public Snapshot snapshot()
+    {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            copy[i] = this.counts.get(i);
+            count += copy[i];
+        }
+        // A percentile is reported as the top of its bucket, which can be above the largest value actually seen
+        long max = this.max.get();
+        return new Snapshot(count, count == 0 ? 0 : (double) this.total.sum() / count,
+                Math.min(percentile(copy, count, 0.5), max), Math.min(percentile(copy, count, 0.99), max),
+                Math.min(percentile(copy, count, 0.999), max), max);
+    }
+
+    static int bucket(long value)
+    {
+        if(value < LINEAR)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    //Largest value that falls into the bucket
+    static long upperBound(int bucket)
+    {
+        if(bucket < LINEAR)
+            return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    private static long percentile(long[] counts, long count, double fraction)
+    {
+        if(count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if(seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * Read-only view of a histogram, an open type so JMX clients see it as composite data
+     */
+    public static class Snapshot
+    {
+        private final long count;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        @ConstructorParameters({"count", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+        public Snapshot(long count, double meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos)
+        {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount()
+        {
+            return this.count;
+        }
+
+        public double getMeanNanos()
+        {
+            return this.meanNanos;
+        }
+
+        public long getP50Nanos()
+        {
+            return this.p50Nanos;
+        }
+
+        public long getP99Nanos()
+        {
+            return this.p99Nanos;
+        }
+
+        public long getP999Nanos()
+        {
+            return this.p999Nanos;
+        }
+
+        public long getMaxNanos()
+        {
+            return this.maxNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count=" + this.count + " mean=" + (long) this.meanNanos + "ns p50=" + this.p50Nanos + "ns p99="
+                    + this.p99Nanos + "ns p99.9=" + this.p999Nanos + "ns max=" + this.maxNanos + "ns";
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.project;
+
+import java.util.HashMap;
+
+/**
+ * Bounded cache of search results, a segmented LRU behind a TinyLFU admission filter.
+ * Every lookup counts its key in a small frequency sketch. Once the cache is full a missed key only gets in when
+ * the sketch has seen it more often than the key it would evict, so keys that are looked up once, like a scan, are
+ * turned away without touching the cache. An admitted key enters the probation segment and moves to the protected
+ * segment when it is hit again there; the protected segment overflows into the head of probation, which gives a
+ * demoted key one more chance before it is evicted.
+ * Keys are matched by equals and hashCode. Not thread-safe, like the trees it sits in front of.
+ * @param <K>
+ * @param <T>
+ */
+public class LookupCache<K, T>
+{
+    //Share of the capacity held by the protected segment
+    static final double PROTECTED_SHARE = 0.8;
+
+    private final int capacity;
+    private final int protectedCapacity;
+
+    private final HashMap<K, Entry<K, T>> entries;
+    private final FrequencySketch sketch;
+    //Sentinels of the two segments, the most recently used entry sits right behind the sentinel
+    private final Entry<K, T> probation = new Entry<>(null, null);
+    private final Entry<K, T> protectedSegment = new Entry<>(null, null);
+    private int protectedCount;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private long invalidations;
+
+    public LookupCache(int capacity)
+    {
+        if(capacity < 1)
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + capacity);
+        this.capacity = capacity;
+        this.protectedCapacity = (int) (capacity * PROTECTED_SHARE);
+        this.entries = new HashMap<>(capacity * 4 / 3 + 1);
+        this.sketch = new FrequencySketch(capacity);
+        this.probation.prev = this.probation.next = this.probation;
+        this.protectedSegment.prev = this.protectedSegment.next = this.protectedSegment;
+    }
+
+    //Cached value of the key or null, a hit in probation promotes the key to the protected segment
+    public T get(K key)
+    {
+        this.sketch.increment(key);
+        Entry<K, T> entry = this.entries.get(key);
+        if(entry == null){
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        unlink(entry);
+        if(entry.hot){
+            linkFirst(this.protectedSegment, entry);
+            return entry.value;
+        }
+        entry.hot = true;
+        linkFirst(this.protectedSegment, entry);
+        this.protectedCount++;
+        // The least recently used protected key goes back to probation
+        if(this.protectedCount > this.protectedCapacity){
+            Entry<K, T> demoted = this.protectedSegment.prev;
+            unlink(demoted);
+            demoted.hot = false;
+            linkFirst(this.probation, demoted);
+            this.protectedCount--;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Offer the value found by a search that missed the cache. A full cache admits it into probation only when the
+     * key is more frequent than the least recently used key of probation, which is evicted for it
+     * @param key
+     * @param value
+     */
+    public void put(K key, T value)
+    {
+        Entry<K, T> entry = this.entries.get(key);
+        if(entry != null){
+            entry.value = value;
+            return;
+        }
+        if(this.entries.size() < this.capacity){
+            entry = new Entry<>(key, value);
+        }
+        else{
+            // The protected segment is smaller than the cache, so a full cache always has a key in probation
+            Entry<K, T> victim = this.probation.prev;
+            if(this.sketch.frequency(key) <= this.sketch.frequency(victim.key)){
+                this.rejections++;
+                return;
+            }
+            remove(victim);
+            this.evictions++;
+            // Reuse the evicted entry
+            entry = victim;
+            entry.key = key;
+            entry.value = value;
+        }
+        this.entries.put(key, entry);
+        linkFirst(this.probation, entry);
+    }
+
+    //Drop the key, called when an insert or delete may have changed what a search for it returns
+    public void invalidate(K key)
+    {
+        Entry<K, T> entry = this.entries.get(key);
+        if(entry != null){
+            remove(entry);
+            this.invalidations++;
+        }
+    }
+
+    public void clear()
+    {
+        this.entries.clear();
+        this.probation.prev = this.probation.next = this.probation;
+        this.protectedSegment.prev = this.protectedSegment.next = this.protectedSegment;
+        this.protectedCount = 0;
+    }
+
+    public void resetCounters()
+    {
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+        this.rejections = 0;
+        this.invalidations = 0;
+    }
+
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    public long getHits()
+    {
+        return this.hits;
+    }
+
+    public long getMisses()
+    {
+        return this.misses;
+    }
+
+    //Share of the lookups answered by the cache since the counters were last reset
+    public double getHitRatio()
+    {
+        long lookups = this.hits + this.misses;
+        return lookups == 0 ? 0 : (double) this.hits / lookups;
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions;
+    }
+
+    //Missed keys the admission filter turned away
+    public long getRejections()
+    {
+        return this.rejections;
+    }
+
+    public long getInvalidations()
+    {
+        return this.invalidations;
+    }
+
+    private void remove(Entry<K, T> entry)
+    {
+        unlink(entry);
+        if(entry.hot){
+            this.protectedCount--;
+        }
+        this.entries.remove(entry.key);
+    }
+
+    private static <K, T> void unlink(Entry<K, T> entry)
+    {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+    }
+
+    private static <K, T> void linkFirst(Entry<K, T> sentinel, Entry<K, T> entry)
+    {
+        entry.prev = sentinel;
+        entry.next = sentinel.next;
+        sentinel.next.prev = entry;
+        sentinel.next = entry;
+    }
+
+    private static class Entry<K, T>
+    {
+        K key;
+        T value;
+        //In the protected segment
+        boolean hot;
+        Entry<K, T> prev;
+        Entry<K, T> next;
+
+        Entry(K key, T value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, that estimates how often a key was looked up recently.
+     * After ten lookups per cached key every counter is halved, so old popularity fades and the counters never
+     * saturate for good.
+     */
+    private static class FrequencySketch
+    {
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        //Sixteen counters per long
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int samples;
+
+        FrequencySketch(int capacity)
+        {
+            this.table = new long[Math.max(8, Integer.highestOneBit(capacity - 1) << 1)];
+            this.mask = this.table.length - 1;
+            this.sampleSize = 10 * capacity;
+        }
+
+        void increment(Object key)
+        {
+            long hash = BloomFilter.hash(key);
+            for(int i = 0; i < 4; i++){
+                int probe = probe(hash, i);
+                int index = probe & this.mask;
+                int shift = (probe >>> 28) << 2;
+                if(((this.table[index] >>> shift) & 15) < 15){
+                    this.table[index] += 1L << shift;
+                }
+            }
+            if(++this.samples == this.sampleSize){
+                for(int i = 0; i < this.table.length; i++){
+                    this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+                }
+                this.samples /= 2;
+            }
+        }
+
+        //Smallest of the key's counters, the others may include collisions
+        int frequency(Object key)
+        {
+            long hash = BloomFilter.hash(key);
+            int frequency = 15;
+            for(int i = 0; i < 4; i++){
+                int probe = probe(hash, i);
+                frequency = Math.min(frequency, (int) (this.table[probe & this.mask] >>> ((probe >>> 28) << 2)) & 15);
+            }
+            return frequency;
+        }
+
+        //The table slot is taken from the low bits of a probe and the counter in it from the top four
+        private static int probe(long hash, int i)
+        {
+            return (int) hash + i * (int) (hash >>> 32);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.project;
+
+import java.util.function.IntPredicate;
+
+/**
+ * LRU-K eviction: the victim is the frame whose K-th most recent access lies furthest in the past. Frames with
+ * fewer than K accesses count as infinitely old and go first, the least recently used of them before the others,
+ * so a single scan over cold pages cannot push out the pages every lookup needs.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy
+{
+    private final int k;
+
+    //Last K access times of every frame, a ring indexed by the access count
+    private long[][] history;
+
+    private int[] accesses;
+
+    //Logical clock, advanced on every access
+    private long time;
+
+    public LruKEvictionPolicy()
+    {
+        this(2);
+    }
+
+    public LruKEvictionPolicy(int k)
+    {
+        if(k < 1)
+            throw new IllegalArgumentException("K must be at least 1: " + k);
+        this.k = k;
+    }
+
+    @Override
+    public void attach(int frameCount)
+    {
+        this.history = new long[frameCount][this.k];
+        this.accesses = new int[frameCount];
+        this.time = 0;
+    }
+
+    @Override
+    public void recordAccess(int frame)
+    {
+        this.history[frame][this.accesses[frame] % this.k] = ++this.time;
+        this.accesses[frame]++;
+    }
+
+    @Override
+    public void remove(int frame)
+    {
+        this.accesses[frame] = 0;
+    }
+
+    @Override
+    public int victim(IntPredicate evictable)
+    {
+        int victim = -1;
+        boolean victimComplete = true;
+        long victimTime = Long.MAX_VALUE;
+        for(int frame = 0; frame < this.accesses.length; frame++){
+            if(!evictable.test(frame))
+                continue;
+            int count = this.accesses[frame];
+            boolean complete = count >= this.k;
+            //The K-th most recent access for a full history, the most recent one otherwise
+            long time = complete ? this.history[frame][count % this.k] : this.history[frame][(count - 1) % this.k];
+            if(count == 0)
+                time = 0;
+            if((victimComplete && !complete) || (victimComplete == complete && time < victimTime)){
+                victim = frame;
+                victimComplete = complete;
+                victimTime = time;
+            }
+        }
+        return victim;
+    }
+}
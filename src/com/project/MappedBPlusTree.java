@@ -0,0 +1,376 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class MappedBPlusTree
+{
+    /**
+     * Read-only B+ tree with int keys and long values that serves lookups straight from a memory-mapped file.
+     * The file has the format of PagedBPlusTree: fixed-size pages with the same page layout, page 0 is the meta page and
+     * nodes refer to each other by page id, so the offset of a node is its id times the page size. A search reads
+     * the pages through the mapping and creates no node objects, the heap only holds the table of mapped windows.
+     * Every JVM that maps the same file shares its pages in the page cache, and opening the tree reads the meta page only.
+     * write builds such a file bottom-up from a DenseBPlusTree, and PagedBPlusTree can open it for updates.
+     * The file must not change while it is mapped. Lookups never modify the mapping, so any number of threads may share the tree.
+     */
+    //Bytes of the file mapped at once, a whole number of pages
+    static final int WINDOW = 1 << 30;
+
+    private final int pageSize;
+    //log2 of the page size
+    private final int pageShift;
+    //B+ tree order, the maximum number of keys in a page
+    private final int bTreeOrder;
+    //Key slots in a page, as PagedBPlusTree lays them out
+    private final int slots;
+    //Value returned by search when the key does not exist
+    private final long missingValue;
+
+    private final int root;
+    private final int pageCount;
+    private final long size;
+
+    //Mapped windows of the file, a page id names the window in its high bits and the page inside it in its low bits
+    private final ByteBuffer[] windows;
+    private final int windowShift;
+
+    /**
+     * Map the tree stored in the file
+     * @param file written by write or by PagedBPlusTree
+     * @throws IOException
+     */
+    public MappedBPlusTree(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < PagedBPlusTree.META_SIZE + 8)
+                throw new IOException("Not a B+ tree file: " + file);
+            ByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, 0, PagedBPlusTree.META_SIZE + 8);
+            if(meta.getInt(PagedBPlusTree.META_MAGIC) != PagedBPlusTree.MAGIC)
+                throw new IOException("Not a B+ tree file: " + file);
+            this.pageSize = meta.getInt(PagedBPlusTree.META_PAGE_SIZE);
+            this.bTreeOrder = meta.getInt(PagedBPlusTree.META_ORDER);
+            this.root = meta.getInt(PagedBPlusTree.META_ROOT);
+            this.pageCount = meta.getInt(PagedBPlusTree.META_PAGE_COUNT);
+            this.size = meta.getLong(PagedBPlusTree.META_SIZE);
+            if(this.pageSize < PagedBPlusTree.MIN_PAGE_SIZE || this.pageSize > PagedBPlusTree.MAX_PAGE_SIZE
+                    || Integer.bitCount(this.pageSize) != 1 || this.bTreeOrder < 2 || this.bTreeOrder > PagedBPlusTree.maxOrder(this.pageSize)
+                    || this.root < 1 || this.root >= this.pageCount || channel.size() < (long) this.pageCount * this.pageSize)
+                throw new IOException("B+ tree file is corrupt: " + file);
+            this.pageShift = Integer.numberOfTrailingZeros(this.pageSize);
+            this.slots = this.bTreeOrder + 1;
+            this.missingValue = Long.MIN_VALUE;
+            this.windowShift = Integer.numberOfTrailingZeros(WINDOW / this.pageSize);
+            this.windows = map(channel, FileChannel.MapMode.READ_ONLY, this.pageCount, this.pageSize);
+        }
+    }
+
+    /**
+     * Write the entries of the tree to a new file in 4 KB pages with the largest order that fits
+     * @param tree
+     * @param file replaced atomically if it exists
+     * @throws IOException
+     */
+    public static void write(DenseBPlusTree<Long, Integer> tree, Path file) throws IOException
+    {
+        int pageSize = PagedBPlusTree.DEFAULT_PAGE_SIZE;
+        write(tree, file, pageSize, PagedBPlusTree.maxOrder(pageSize));
+    }
+
+    /**
+     * Write the entries of the tree to a new file, built bottom-up: the leaves are packed full in key order and
+     * linked through their left and right ids, then every non-leaf level follows the level below it, so the pages of
+     * one level are adjacent and the root is the last page. The separator in front of a child is its lowest key.
+     * Lazily deleted entries are left out, values must not be null.
+     * @param tree
+     * @param file replaced atomically if it exists
+     * @param pageSize power of two between 4 KB and 16 KB
+     * @param bTreeOrder
+     * @throws IOException
+     */
+    public static void write(DenseBPlusTree<Long, Integer> tree, Path file, int pageSize, int bTreeOrder) throws IOException
+    {
+        if(pageSize < PagedBPlusTree.MIN_PAGE_SIZE || pageSize > PagedBPlusTree.MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1)
+            throw new IllegalArgumentException("Page size must be a power of two between 4 KB and 16 KB: " + pageSize);
+        if(bTreeOrder < 2 || bTreeOrder > PagedBPlusTree.maxOrder(pageSize))
+            throw new IllegalArgumentException("B+ tree order must be between 2 and " + PagedBPlusTree.maxOrder(pageSize) + ": " + bTreeOrder);
+        int minKeys = (int) (Math.ceil((bTreeOrder + 1) / 2.0) - 1.0);
+
+        long entries = 0;
+        for(DenseBPlusTree<Long, Integer>.RangeCursor cursor = tree.entries(); cursor.hasNext(); cursor.next()){
+            entries++;
+        }
+        if(entries > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many entries for one file: " + entries);
+
+        // Page count of every level, leaves first
+        int[] levels = {DenseBPlusTree.nodeCount((int) entries, bTreeOrder, minKeys, bTreeOrder)};
+        while(levels[levels.length - 1] > 1){
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = DenseBPlusTree.nodeCount(levels[levels.length - 2], bTreeOrder + 1, minKeys + 1, bTreeOrder + 1);
+        }
+        long pages = 1;
+        for(int count : levels){
+            pages += count;
+        }
+        if(pages > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many pages for one file: " + pages);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            writePages(tree, temp, entries, levels, pageSize, bTreeOrder);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        //Force the directory too, or a power failure can lose the rename
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    //Lay out the pages planned by write in the file
+    private static void writePages(DenseBPlusTree<Long, Integer> tree, Path file, long entries, int[] levels, int pageSize, int bTreeOrder) throws IOException
+    {
+        int slots = bTreeOrder + 1;
+        int pageCount = 1;
+        for(int count : levels){
+            pageCount += count;
+        }
+        int windowShift = Integer.numberOfTrailingZeros(WINDOW / pageSize);
+        int pageShift = Integer.numberOfTrailingZeros(pageSize);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] windows = map(channel, FileChannel.MapMode.READ_WRITE, pageCount, pageSize);
+
+            // Leaves, the lowest key of each one separates it from the leaf in front of it
+            int first = 1;
+            int[] lowKeys = new int[levels[0]];
+            DenseBPlusTree<Long, Integer>.RangeCursor cursor = tree.entries();
+            for(int j = 0; j < levels[0]; j++){
+                int id = first + j;
+                ByteBuffer b = windows[id >>> windowShift];
+                int base = (id & ((1 << windowShift) - 1)) << pageShift;
+                int number = DenseBPlusTree.share((int) entries, levels[0], j);
+                for(int i = 0; i < number; i++){
+                    Long value = cursor.next();
+                    if(value == null)
+                        throw new IllegalArgumentException("Null values cannot be written, check key " + cursor.key());
+                    PagedBPlusTree.setKey(b, base, i, cursor.key());
+                    PagedBPlusTree.setLeafValue(b, base, slots, i, value);
+                }
+                lowKeys[j] = number > 0 ? PagedBPlusTree.key(b, base, 0) : 0;
+                writeHeader(b, base, PagedBPlusTree.LEAF, number, j > 0 ? id - 1 : PagedBPlusTree.NO_PAGE,
+                        j < levels[0] - 1 ? id + 1 : PagedBPlusTree.NO_PAGE);
+            }
+
+            // Non-leaf levels, every page takes the next children of the level below
+            for(int l = 1; l < levels.length; l++){
+                int below = first;
+                first += levels[l - 1];
+                int[] parentLowKeys = new int[levels[l]];
+                int offset = 0;
+                for(int j = 0; j < levels[l]; j++){
+                    int id = first + j;
+                    ByteBuffer b = windows[id >>> windowShift];
+                    int base = (id & ((1 << windowShift) - 1)) << pageShift;
+                    int children = DenseBPlusTree.share(levels[l - 1], levels[l], j);
+                    for(int c = 0; c < children; c++){
+                        int child = below + offset + c;
+                        PagedBPlusTree.setChild(b, base, slots, c, child);
+                        PagedBPlusTree.setParent(windows[child >>> windowShift], (child & ((1 << windowShift) - 1)) << pageShift, id);
+                        if(c > 0){
+                            PagedBPlusTree.setKey(b, base, c - 1, lowKeys[offset + c]);
+                        }
+                    }
+                    writeHeader(b, base, PagedBPlusTree.NON_LEAF, children - 1, PagedBPlusTree.NO_PAGE, PagedBPlusTree.NO_PAGE);
+                    parentLowKeys[j] = lowKeys[offset];
+                    offset += children;
+                }
+                lowKeys = parentLowKeys;
+            }
+            // The root was written last and has no parent
+            ByteBuffer b = windows[first >>> windowShift];
+            PagedBPlusTree.setParent(b, (first & ((1 << windowShift) - 1)) << pageShift, PagedBPlusTree.NO_PAGE);
+
+            ByteBuffer meta = windows[0];
+            meta.putInt(PagedBPlusTree.META_MAGIC, PagedBPlusTree.MAGIC);
+            meta.putInt(PagedBPlusTree.META_PAGE_SIZE, pageSize);
+            meta.putInt(PagedBPlusTree.META_ORDER, bTreeOrder);
+            meta.putInt(PagedBPlusTree.META_ROOT, first);
+            meta.putInt(PagedBPlusTree.META_PAGE_COUNT, pageCount);
+            meta.putLong(PagedBPlusTree.META_SIZE, entries);
+            meta.putInt(PagedBPlusTree.META_FREE, PagedBPlusTree.NO_PAGE);
+            channel.force(true);
+        }
+    }
+
+    public long size()
+    {
+        return this.size;
+    }
+
+    public int getPageSize()
+    {
+        return this.pageSize;
+    }
+
+    public int getOrder()
+    {
+        return this.bTreeOrder;
+    }
+
+    //Number of pages in the file, the meta page included
+    public int getPageCount()
+    {
+        return this.pageCount;
+    }
+
+    public long getMissingValue()
+    {
+        return this.missingValue;
+    }
+
+    //Search, returns the value of the first entry with the key or the missing value
+    public long search(int key)
+    {
+        int id = findLeaf(key);
+        ByteBuffer b = buffer(id);
+        int base = base(id);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key);
+        //The key may start the next non-empty leaf
+        while(i == PagedBPlusTree.number(b, base) && PagedBPlusTree.right(b, base) != PagedBPlusTree.NO_PAGE){
+            id = PagedBPlusTree.right(b, base);
+            b = buffer(id);
+            base = base(id);
+            i = 0;
+        }
+        if(i < PagedBPlusTree.number(b, base) && PagedBPlusTree.key(b, base, i) == key)
+            return PagedBPlusTree.leafValue(b, base, this.slots, i);
+        return this.missingValue;
+    }
+
+    public boolean contains(int key)
+    {
+        int id = findLeaf(key);
+        ByteBuffer b = buffer(id);
+        int base = base(id);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key);
+        while(i == PagedBPlusTree.number(b, base) && PagedBPlusTree.right(b, base) != PagedBPlusTree.NO_PAGE){
+            id = PagedBPlusTree.right(b, base);
+            b = buffer(id);
+            base = base(id);
+            i = 0;
+        }
+        return i < PagedBPlusTree.number(b, base) && PagedBPlusTree.key(b, base, i) == key;
+    }
+
+    //Range search, returns the values of all keys in [key1, key2] in key order
+    public long[] rangeSearch(int key1, int key2)
+    {
+        long[][] result = {new long[16]};
+        int[] count = {0};
+        rangeSearch(key1, key2, (key, value) -> {
+            if(count[0] == result[0].length)
+                result[0] = Arrays.copyOf(result[0], count[0] * 2);
+            result[0][count[0]++] = value;
+            return true;
+        });
+        return Arrays.copyOf(result[0], count[0]);
+    }
+
+    //Visit all entries with keys in [key1, key2] in key order, stops early when the visitor returns false
+    public void rangeSearch(int key1, int key2, IntLongBPlusTree.EntryVisitor visitor)
+    {
+        int id = findLeaf(key1);
+        ByteBuffer b = buffer(id);
+        int base = base(id);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key1);
+        scan(id, i, key2, visitor);
+    }
+
+    //Visit every entry in key order, stops early when the visitor returns false
+    public void forEach(IntLongBPlusTree.EntryVisitor visitor)
+    {
+        int id = this.root;
+        ByteBuffer b = buffer(id);
+        int base = base(id);
+        while(PagedBPlusTree.type(b, base) == PagedBPlusTree.NON_LEAF){
+            id = PagedBPlusTree.child(b, base, this.slots, 0);
+            b = buffer(id);
+            base = base(id);
+        }
+        scan(id, 0, Integer.MAX_VALUE, visitor);
+    }
+
+    //Walk the leaf chain from slot i of the leaf up to the last key not above the upper bound
+    private void scan(int id, int i, int upper, IntLongBPlusTree.EntryVisitor visitor)
+    {
+        while(true){
+            ByteBuffer b = buffer(id);
+            int base = base(id);
+            for(int number = PagedBPlusTree.number(b, base); i < number; i++){
+                int key = PagedBPlusTree.key(b, base, i);
+                if(key > upper || !visitor.visit(key, PagedBPlusTree.leafValue(b, base, this.slots, i)))
+                    return;
+            }
+            id = PagedBPlusTree.right(b, base);
+            if(id == PagedBPlusTree.NO_PAGE)
+                return;
+            i = 0;
+        }
+    }
+
+    private int findLeaf(int key)
+    {
+        int id = this.root;
+        ByteBuffer b = buffer(id);
+        int base = base(id);
+        while(PagedBPlusTree.type(b, base) == PagedBPlusTree.NON_LEAF){
+            id = PagedBPlusTree.child(b, base, this.slots, PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key));
+            b = buffer(id);
+            base = base(id);
+        }
+        return id;
+    }
+
+    //Window that holds the page
+    private ByteBuffer buffer(int id)
+    {
+        return this.windows[id >>> this.windowShift];
+    }
+
+    //Offset of the page inside its window
+    private int base(int id)
+    {
+        return (id & ((1 << this.windowShift) - 1)) << this.pageShift;
+    }
+
+    //Map the pages of the file in windows of WINDOW bytes, the last one only as far as the pages reach
+    private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int pageCount, int pageSize) throws IOException
+    {
+        int pagesPerWindow = WINDOW / pageSize;
+        ByteBuffer[] windows = new ByteBuffer[(pageCount + pagesPerWindow - 1) / pagesPerWindow];
+        for(int w = 0; w < windows.length; w++){
+            long pages = Math.min(pagesPerWindow, pageCount - (long) w * pagesPerWindow);
+            windows[w] = channel.map(mode, (long) w * WINDOW, pages * pageSize);
+        }
+        return windows;
+    }
+
+    //Fill the header of a page, the parent is set when the level above is written
+    private static void writeHeader(ByteBuffer b, int base, byte type, int number, int left, int right)
+    {
+        b.put(base + PagedBPlusTree.TYPE, type);
+        PagedBPlusTree.setNumber(b, base, number);
+        PagedBPlusTree.setLeft(b, base, left);
+        PagedBPlusTree.setRight(b, base, right);
+    }
+}
@@ -0,0 +1,116 @@
+package com.project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Allocator of fixed-size node slots outside the heap. Slots are carved from direct buffers of one chunk each,
+ * a slot id names the chunk in its high bits and the slot inside it in its low bits. Freed slots are kept on a
+ * free list that is threaded through the slots themselves and reused before a new chunk is added, so the heap
+ * only holds the chunk table, whatever the number of nodes.
+ */
+public class NodeArena
+{
+    //Bytes per chunk unless the caller chooses
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    //Type byte of a slot on the free list, node slots use PagedBPlusTree.LEAF or NON_LEAF
+    static final byte FREE = 0;
+    //Offset of the next free slot id inside a free slot, behind the type
+    private static final int NEXT_FREE = 4;
+
+    private final int slotSize;
+    private final int slotsPerChunk;
+    private final int chunkShift;
+
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+    private int chunkCount;
+    //Slots handed out of the last chunk so far
+    private int used;
+    //Head of the free list, NO_PAGE when it is empty
+    private int free = PagedBPlusTree.NO_PAGE;
+
+    private long liveSlots;
+
+    public NodeArena(int slotSize)
+    {
+        this(slotSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param slotSize bytes per slot, rounded up to 8
+     * @param chunkSize bytes per direct buffer, rounded down to a power of two number of slots
+     */
+    public NodeArena(int slotSize, int chunkSize)
+    {
+        if(slotSize < 8)
+            throw new IllegalArgumentException("Slots must hold at least 8 bytes: " + slotSize);
+        this.slotSize = (slotSize + 7) & ~7;
+        if(chunkSize < this.slotSize)
+            throw new IllegalArgumentException("A chunk must hold at least one slot: " + chunkSize);
+        this.slotsPerChunk = Integer.highestOneBit(chunkSize / this.slotSize);
+        this.chunkShift = Integer.numberOfTrailingZeros(this.slotsPerChunk);
+        this.used = this.slotsPerChunk;
+    }
+
+    //Id of a slot that is free to use, its contents are undefined
+    public int allocate()
+    {
+        this.liveSlots++;
+        if(this.free != PagedBPlusTree.NO_PAGE){
+            int id = this.free;
+            this.free = buffer(id).getInt(base(id) + NEXT_FREE);
+            return id;
+        }
+        if(this.used == this.slotsPerChunk){
+            if(this.chunkCount == this.chunks.length){
+                this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+            }
+            if(((long) this.chunkCount + 1) << this.chunkShift > Integer.MAX_VALUE)
+                throw new IllegalStateException("Arena is full: " + this.chunkCount + " chunks");
+            this.chunks[this.chunkCount++] = ByteBuffer.allocateDirect(this.slotsPerChunk * this.slotSize).order(ByteOrder.nativeOrder());
+            this.used = 0;
+        }
+        return ((this.chunkCount - 1) << this.chunkShift) | this.used++;
+    }
+
+    //Put the slot on the free list, the next allocate hands it out again
+    public void free(int id)
+    {
+        ByteBuffer chunk = buffer(id);
+        int base = base(id);
+        chunk.put(base + PagedBPlusTree.TYPE, FREE);
+        chunk.putInt(base + NEXT_FREE, this.free);
+        this.free = id;
+        this.liveSlots--;
+    }
+
+    //Buffer that holds the slot
+    public ByteBuffer buffer(int id)
+    {
+        return this.chunks[id >>> this.chunkShift];
+    }
+
+    //Offset of the slot inside its buffer
+    public int base(int id)
+    {
+        return (id & (this.slotsPerChunk - 1)) * this.slotSize;
+    }
+
+    public int getSlotSize()
+    {
+        return this.slotSize;
+    }
+
+    public long getLiveSlots()
+    {
+        return this.liveSlots;
+    }
+
+    //Direct memory reserved by the arena, live and free slots together
+    public long getReservedBytes()
+    {
+        return (long) this.chunkCount * this.slotsPerChunk * this.slotSize;
+    }
+}
@@ -0,0 +1,511 @@
+package com.project;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class OffHeapBPlusTree
+{
+    /**
+     * B+ tree with int keys and long values whose nodes live outside the heap. Every node is one slot of a
+     * NodeArena and uses the page layout of PagedBPlusTree, nodes refer to each other by slot id, so the heap holds
+     * the tree object and the chunk table only and the garbage collector has nothing to mark per node.
+     * Deletes rebalance like IntLongBPlusTree: an underfull node borrows from a sibling or is merged with it, and the
+     * slot of a merged node goes back to the arena for the next split.
+     * Keys and values are fixed-width primitives on purpose: slots have one size and keys are compared in place. Generic
+     * Comparable keys would need variable-width slots and a Codec decode per comparison, so the dense and sparse trees stay on the heap.
+     */
+    //B+ tree order
+    private final int bTreeOrder;
+    // The minimum number of keys for a node other than the root
+    private final int minKeys;
+    //Key slots in a node, one spare so a node can overflow by one key before it is split
+    private final int slots;
+    //Value returned by search when the key does not exist
+    private final long missingValue;
+
+    private final NodeArena arena;
+
+    private int root;
+
+    private long size;
+
+    // No parameter construction method, the default order is 3
+    public OffHeapBPlusTree()
+    {
+        this(3);
+    }
+
+    public OffHeapBPlusTree(int bTreeOrder)
+    {
+        this(bTreeOrder, NodeArena.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param bTreeOrder
+     * @param chunkSize bytes of every direct buffer the arena allocates
+     */
+    public OffHeapBPlusTree(int bTreeOrder, int chunkSize)
+    {
+        if(bTreeOrder < 2)
+            throw new IllegalArgumentException("B+ tree order must be at least 2: " + bTreeOrder);
+        this.bTreeOrder = bTreeOrder;
+        this.minKeys = (int) (Math.ceil((bTreeOrder + 1) / 2.0) - 1.0);
+        this.slots = bTreeOrder + 1;
+        this.missingValue = Long.MIN_VALUE;
+        this.arena = new NodeArena(nodeSize(this.slots), chunkSize);
+        this.root = newNode(PagedBPlusTree.LEAF);
+    }
+
+    //Bytes of a node with the given key slots, 8 bytes of payload per slot hold the values or the slots + 1 children
+    static int nodeSize(int slots)
+    {
+        return PagedBPlusTree.payloadOffset(slots) + 8 * slots;
+    }
+
+    public long size()
+    {
+        return this.size;
+    }
+
+    public long getMissingValue()
+    {
+        return this.missingValue;
+    }
+
+    public NodeArena getArena()
+    {
+        return this.arena;
+    }
+
+    //Search, returns the value of the first entry with the key or the missing value
+    public long search(int key)
+    {
+        int leaf = findLeaf(key);
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key);
+        if(i == PagedBPlusTree.number(b, base) && PagedBPlusTree.right(b, base) != PagedBPlusTree.NO_PAGE){
+            leaf = PagedBPlusTree.right(b, base);
+            b = this.arena.buffer(leaf);
+            base = this.arena.base(leaf);
+            i = 0;
+        }
+        if(i < PagedBPlusTree.number(b, base) && PagedBPlusTree.key(b, base, i) == key)
+            return PagedBPlusTree.leafValue(b, base, this.slots, i);
+        return this.missingValue;
+    }
+
+    public boolean contains(int key)
+    {
+        int leaf = findLeaf(key);
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key);
+        if(i == PagedBPlusTree.number(b, base) && PagedBPlusTree.right(b, base) != PagedBPlusTree.NO_PAGE){
+            leaf = PagedBPlusTree.right(b, base);
+            b = this.arena.buffer(leaf);
+            base = this.arena.base(leaf);
+            i = 0;
+        }
+        return i < PagedBPlusTree.number(b, base) && PagedBPlusTree.key(b, base, i) == key;
+    }
+
+    //Range search, returns the values of all keys in [key1, key2] in key order
+    public long[] rangeSearch(int key1, int key2)
+    {
+        long[][] result = {new long[16]};
+        int[] count = {0};
+        rangeSearch(key1, key2, (key, value) -> {
+            if(count[0] == result[0].length)
+                result[0] = Arrays.copyOf(result[0], count[0] * 2);
+            result[0][count[0]++] = value;
+            return true;
+        });
+        return Arrays.copyOf(result[0], count[0]);
+    }
+
+    //Visit all entries with keys in [key1, key2] in key order, stops early when the visitor returns false
+    public void rangeSearch(int key1, int key2, IntLongBPlusTree.EntryVisitor visitor)
+    {
+        int leaf = findLeaf(key1);
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key1);
+        while(true){
+            for(; i < PagedBPlusTree.number(b, base); i++){
+                int key = PagedBPlusTree.key(b, base, i);
+                if(key > key2 || !visitor.visit(key, PagedBPlusTree.leafValue(b, base, this.slots, i)))
+                    return;
+            }
+            leaf = PagedBPlusTree.right(b, base);
+            if(leaf == PagedBPlusTree.NO_PAGE)
+                return;
+            b = this.arena.buffer(leaf);
+            base = this.arena.base(leaf);
+            i = 0;
+        }
+    }
+
+    //Insert, duplicate keys are kept after the existing ones
+    public void insert(long value, int key)
+    {
+        int node = this.root;
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        while(PagedBPlusTree.type(b, base) == PagedBPlusTree.NON_LEAF){
+            node = PagedBPlusTree.child(b, base, this.slots, PagedBPlusTree.upperBound(b, base, PagedBPlusTree.number(b, base), key));
+            b = this.arena.buffer(node);
+            base = this.arena.base(node);
+        }
+        int number = PagedBPlusTree.number(b, base);
+        int i = PagedBPlusTree.upperBound(b, base, number, key);
+        PagedBPlusTree.moveKeys(b, base, i, i + 1, number - i);
+        PagedBPlusTree.moveLeafValues(b, base, this.slots, i, i + 1, number - i);
+        PagedBPlusTree.setKey(b, base, i, key);
+        PagedBPlusTree.setLeafValue(b, base, this.slots, i, value);
+        PagedBPlusTree.setNumber(b, base, number + 1);
+        this.size++;
+
+        if(number + 1 > this.bTreeOrder)
+            splitLeaf(node);
+    }
+
+    //Delete the first entry with the key, returns false if the key does not exist
+    public boolean delete(int key)
+    {
+        int leaf = findLeaf(key);
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        int i = PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key);
+        if(i == PagedBPlusTree.number(b, base) && PagedBPlusTree.right(b, base) != PagedBPlusTree.NO_PAGE){
+            leaf = PagedBPlusTree.right(b, base);
+            b = this.arena.buffer(leaf);
+            base = this.arena.base(leaf);
+            i = 0;
+        }
+        int number = PagedBPlusTree.number(b, base);
+        if(i >= number || PagedBPlusTree.key(b, base, i) != key)
+            return false;
+
+        PagedBPlusTree.moveKeys(b, base, i + 1, i, number - i - 1);
+        PagedBPlusTree.moveLeafValues(b, base, this.slots, i + 1, i, number - i - 1);
+        PagedBPlusTree.setNumber(b, base, number - 1);
+        this.size--;
+
+        if(leaf != this.root && number - 1 < this.minKeys)
+            rebalanceLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * Descend to the leftmost leaf that can hold the key: at every non-leaf node take the child left of the
+     * first separator that is greater than or equal to the key
+     * @param key
+     * @return
+     */
+    private int findLeaf(int key)
+    {
+        int node = this.root;
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        while(PagedBPlusTree.type(b, base) == PagedBPlusTree.NON_LEAF){
+            node = PagedBPlusTree.child(b, base, this.slots, PagedBPlusTree.lowerBound(b, base, PagedBPlusTree.number(b, base), key));
+            b = this.arena.buffer(node);
+            base = this.arena.base(node);
+        }
+        return node;
+    }
+
+    private void splitLeaf(int leaf)
+    {
+        // New leaf node, as the right half of the split
+        int tempNode = newNode(PagedBPlusTree.LEAF);
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        ByteBuffer tb = this.arena.buffer(tempNode);
+        int tempBase = this.arena.base(tempNode);
+        int number = PagedBPlusTree.number(b, base);
+        int leftNodeNumber = (number + 1) / 2;
+        copyKeys(leaf, leftNodeNumber, tempNode, 0, number - leftNodeNumber);
+        copyLeafValues(leaf, leftNodeNumber, tempNode, 0, number - leftNodeNumber);
+        PagedBPlusTree.setNumber(tb, tempBase, number - leftNodeNumber);
+        PagedBPlusTree.setNumber(b, base, leftNodeNumber);
+
+        // Link the new leaf into the leaf chain
+        int right = PagedBPlusTree.right(b, base);
+        if(right != PagedBPlusTree.NO_PAGE){
+            PagedBPlusTree.setLeft(this.arena.buffer(right), this.arena.base(right), tempNode);
+        }
+        PagedBPlusTree.setRight(tb, tempBase, right);
+        PagedBPlusTree.setLeft(tb, tempBase, leaf);
+        PagedBPlusTree.setRight(b, base, tempNode);
+
+        insertIntoParent(leaf, PagedBPlusTree.key(tb, tempBase, 0), tempNode);
+    }
+
+    private void splitNonLeaf(int node)
+    {
+        // Create a new non-leaf node, as the right half of the split, the middle key moves up
+        int tempNode = newNode(PagedBPlusTree.NON_LEAF);
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        ByteBuffer tb = this.arena.buffer(tempNode);
+        int tempBase = this.arena.base(tempNode);
+        int number = PagedBPlusTree.number(b, base);
+        int middle = number / 2;
+        int middleKey = PagedBPlusTree.key(b, base, middle);
+        int tempNumber = number - middle - 1;
+        copyKeys(node, middle + 1, tempNode, 0, tempNumber);
+        copyChildren(node, middle + 1, tempNode, 0, tempNumber + 1);
+        for(int j = 0; j <= tempNumber; j++){
+            setParent(PagedBPlusTree.child(tb, tempBase, this.slots, j), tempNode);
+        }
+        PagedBPlusTree.setNumber(tb, tempBase, tempNumber);
+        PagedBPlusTree.setNumber(b, base, middle);
+
+        insertIntoParent(node, middleKey, tempNode);
+    }
+
+    //After a split, insert the new right node and its separator into the parent of the left node
+    private void insertIntoParent(int left, int key, int right)
+    {
+        int parent = PagedBPlusTree.parent(this.arena.buffer(left), this.arena.base(left));
+        if(parent == PagedBPlusTree.NO_PAGE){
+            parent = newNode(PagedBPlusTree.NON_LEAF);
+            ByteBuffer pb = this.arena.buffer(parent);
+            int parentBase = this.arena.base(parent);
+            PagedBPlusTree.setKey(pb, parentBase, 0, key);
+            PagedBPlusTree.setChild(pb, parentBase, this.slots, 0, left);
+            PagedBPlusTree.setChild(pb, parentBase, this.slots, 1, right);
+            PagedBPlusTree.setNumber(pb, parentBase, 1);
+            setParent(left, parent);
+            setParent(right, parent);
+            this.root = parent;
+            return;
+        }
+        setParent(right, parent);
+        ByteBuffer pb = this.arena.buffer(parent);
+        int parentBase = this.arena.base(parent);
+        int number = PagedBPlusTree.number(pb, parentBase);
+        int i = PagedBPlusTree.childIndex(pb, parentBase, this.slots, number, left);
+        PagedBPlusTree.moveKeys(pb, parentBase, i, i + 1, number - i);
+        PagedBPlusTree.moveChildren(pb, parentBase, this.slots, i + 1, i + 2, number - i);
+        PagedBPlusTree.setKey(pb, parentBase, i, key);
+        PagedBPlusTree.setChild(pb, parentBase, this.slots, i + 1, right);
+        PagedBPlusTree.setNumber(pb, parentBase, number + 1);
+
+        if(number + 1 > this.bTreeOrder)
+            splitNonLeaf(parent);
+    }
+
+    //Borrow from a sibling under the same parent if it can spare a key, otherwise coalesce with it
+    private void rebalanceLeaf(int leaf)
+    {
+        ByteBuffer b = this.arena.buffer(leaf);
+        int base = this.arena.base(leaf);
+        int parent = PagedBPlusTree.parent(b, base);
+        ByteBuffer pb = this.arena.buffer(parent);
+        int parentBase = this.arena.base(parent);
+        int parentNumber = PagedBPlusTree.number(pb, parentBase);
+        int i = PagedBPlusTree.childIndex(pb, parentBase, this.slots, parentNumber, leaf);
+        int left = i > 0 ? PagedBPlusTree.child(pb, parentBase, this.slots, i - 1) : PagedBPlusTree.NO_PAGE;
+        int right = i < parentNumber ? PagedBPlusTree.child(pb, parentBase, this.slots, i + 1) : PagedBPlusTree.NO_PAGE;
+        int number = PagedBPlusTree.number(b, base);
+
+        if(left != PagedBPlusTree.NO_PAGE && number(left) > this.minKeys){
+            ByteBuffer lb = this.arena.buffer(left);
+            int leftBase = this.arena.base(left);
+            int leftNumber = PagedBPlusTree.number(lb, leftBase) - 1;
+            PagedBPlusTree.moveKeys(b, base, 0, 1, number);
+            PagedBPlusTree.moveLeafValues(b, base, this.slots, 0, 1, number);
+            PagedBPlusTree.setKey(b, base, 0, PagedBPlusTree.key(lb, leftBase, leftNumber));
+            PagedBPlusTree.setLeafValue(b, base, this.slots, 0, PagedBPlusTree.leafValue(lb, leftBase, this.slots, leftNumber));
+            PagedBPlusTree.setNumber(b, base, number + 1);
+            PagedBPlusTree.setNumber(lb, leftBase, leftNumber);
+            PagedBPlusTree.setKey(pb, parentBase, i - 1, PagedBPlusTree.key(b, base, 0));
+        }
+        else if(right != PagedBPlusTree.NO_PAGE && number(right) > this.minKeys){
+            ByteBuffer rb = this.arena.buffer(right);
+            int rightBase = this.arena.base(right);
+            int rightNumber = PagedBPlusTree.number(rb, rightBase) - 1;
+            PagedBPlusTree.setKey(b, base, number, PagedBPlusTree.key(rb, rightBase, 0));
+            PagedBPlusTree.setLeafValue(b, base, this.slots, number, PagedBPlusTree.leafValue(rb, rightBase, this.slots, 0));
+            PagedBPlusTree.setNumber(b, base, number + 1);
+            PagedBPlusTree.moveKeys(rb, rightBase, 1, 0, rightNumber);
+            PagedBPlusTree.moveLeafValues(rb, rightBase, this.slots, 1, 0, rightNumber);
+            PagedBPlusTree.setNumber(rb, rightBase, rightNumber);
+            PagedBPlusTree.setKey(pb, parentBase, i, PagedBPlusTree.key(rb, rightBase, 0));
+        }
+        else if(left != PagedBPlusTree.NO_PAGE){
+            mergeLeaves(left, leaf);
+            removeFromNonLeaf(parent, i - 1);
+        }
+        else{
+            mergeLeaves(leaf, right);
+            removeFromNonLeaf(parent, i);
+        }
+    }
+
+    //Move all entries of the right leaf into the left one, unlink the right leaf and free its slot
+    private void mergeLeaves(int left, int right)
+    {
+        ByteBuffer lb = this.arena.buffer(left);
+        int leftBase = this.arena.base(left);
+        ByteBuffer rb = this.arena.buffer(right);
+        int rightBase = this.arena.base(right);
+        int leftNumber = PagedBPlusTree.number(lb, leftBase);
+        int rightNumber = PagedBPlusTree.number(rb, rightBase);
+        copyKeys(right, 0, left, leftNumber, rightNumber);
+        copyLeafValues(right, 0, left, leftNumber, rightNumber);
+        PagedBPlusTree.setNumber(lb, leftBase, leftNumber + rightNumber);
+        int next = PagedBPlusTree.right(rb, rightBase);
+        PagedBPlusTree.setRight(lb, leftBase, next);
+        if(next != PagedBPlusTree.NO_PAGE){
+            PagedBPlusTree.setLeft(this.arena.buffer(next), this.arena.base(next), left);
+        }
+        this.arena.free(right);
+    }
+
+    //Remove the key at index i and the child to its right
+    private void removeFromNonLeaf(int node, int i)
+    {
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        int number = PagedBPlusTree.number(b, base);
+        PagedBPlusTree.moveKeys(b, base, i + 1, i, number - i - 1);
+        PagedBPlusTree.moveChildren(b, base, this.slots, i + 2, i + 1, number - i - 1);
+        PagedBPlusTree.setNumber(b, base, number - 1);
+
+        if(node == this.root){
+            if(number - 1 == 0){
+                this.root = PagedBPlusTree.child(b, base, this.slots, 0);
+                setParent(this.root, PagedBPlusTree.NO_PAGE);
+                this.arena.free(node);
+            }
+            return;
+        }
+        if(number - 1 < this.minKeys)
+            rebalanceNonLeaf(node);
+    }
+
+    private void rebalanceNonLeaf(int node)
+    {
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        int parent = PagedBPlusTree.parent(b, base);
+        ByteBuffer pb = this.arena.buffer(parent);
+        int parentBase = this.arena.base(parent);
+        int parentNumber = PagedBPlusTree.number(pb, parentBase);
+        int i = PagedBPlusTree.childIndex(pb, parentBase, this.slots, parentNumber, node);
+        int left = i > 0 ? PagedBPlusTree.child(pb, parentBase, this.slots, i - 1) : PagedBPlusTree.NO_PAGE;
+        int right = i < parentNumber ? PagedBPlusTree.child(pb, parentBase, this.slots, i + 1) : PagedBPlusTree.NO_PAGE;
+        int number = PagedBPlusTree.number(b, base);
+
+        if(left != PagedBPlusTree.NO_PAGE && number(left) > this.minKeys){
+            // Rotate the last child of the left sibling through the parent
+            ByteBuffer lb = this.arena.buffer(left);
+            int leftBase = this.arena.base(left);
+            int leftNumber = PagedBPlusTree.number(lb, leftBase);
+            PagedBPlusTree.moveKeys(b, base, 0, 1, number);
+            PagedBPlusTree.moveChildren(b, base, this.slots, 0, 1, number + 1);
+            PagedBPlusTree.setKey(b, base, 0, PagedBPlusTree.key(pb, parentBase, i - 1));
+            int child = PagedBPlusTree.child(lb, leftBase, this.slots, leftNumber);
+            PagedBPlusTree.setChild(b, base, this.slots, 0, child);
+            setParent(child, node);
+            PagedBPlusTree.setNumber(b, base, number + 1);
+            PagedBPlusTree.setKey(pb, parentBase, i - 1, PagedBPlusTree.key(lb, leftBase, leftNumber - 1));
+            PagedBPlusTree.setNumber(lb, leftBase, leftNumber - 1);
+        }
+        else if(right != PagedBPlusTree.NO_PAGE && number(right) > this.minKeys){
+            // Rotate the first child of the right sibling through the parent
+            ByteBuffer rb = this.arena.buffer(right);
+            int rightBase = this.arena.base(right);
+            int rightNumber = PagedBPlusTree.number(rb, rightBase);
+            PagedBPlusTree.setKey(b, base, number, PagedBPlusTree.key(pb, parentBase, i));
+            int child = PagedBPlusTree.child(rb, rightBase, this.slots, 0);
+            PagedBPlusTree.setChild(b, base, this.slots, number + 1, child);
+            setParent(child, node);
+            PagedBPlusTree.setNumber(b, base, number + 1);
+            PagedBPlusTree.setKey(pb, parentBase, i, PagedBPlusTree.key(rb, rightBase, 0));
+            PagedBPlusTree.moveKeys(rb, rightBase, 1, 0, rightNumber - 1);
+            PagedBPlusTree.moveChildren(rb, rightBase, this.slots, 1, 0, rightNumber);
+            PagedBPlusTree.setNumber(rb, rightBase, rightNumber - 1);
+        }
+        else if(left != PagedBPlusTree.NO_PAGE){
+            mergeNonLeaves(left, PagedBPlusTree.key(pb, parentBase, i - 1), node);
+            removeFromNonLeaf(parent, i - 1);
+        }
+        else{
+            mergeNonLeaves(node, PagedBPlusTree.key(pb, parentBase, i), right);
+            removeFromNonLeaf(parent, i);
+        }
+    }
+
+    //Pull the separator down, append the keys and children of the right node to the left one and free the right one
+    private void mergeNonLeaves(int left, int key, int right)
+    {
+        ByteBuffer lb = this.arena.buffer(left);
+        int leftBase = this.arena.base(left);
+        ByteBuffer rb = this.arena.buffer(right);
+        int rightBase = this.arena.base(right);
+        int leftNumber = PagedBPlusTree.number(lb, leftBase);
+        int rightNumber = PagedBPlusTree.number(rb, rightBase);
+        PagedBPlusTree.setKey(lb, leftBase, leftNumber, key);
+        copyKeys(right, 0, left, leftNumber + 1, rightNumber);
+        copyChildren(right, 0, left, leftNumber + 1, rightNumber + 1);
+        for(int j = 0; j <= rightNumber; j++){
+            setParent(PagedBPlusTree.child(rb, rightBase, this.slots, j), left);
+        }
+        PagedBPlusTree.setNumber(lb, leftBase, leftNumber + rightNumber + 1);
+        this.arena.free(right);
+    }
+
+    //Take a slot from the arena and make it an empty node of the given type
+    private int newNode(byte type)
+    {
+        int node = this.arena.allocate();
+        ByteBuffer b = this.arena.buffer(node);
+        int base = this.arena.base(node);
+        b.put(base + PagedBPlusTree.TYPE, type);
+        PagedBPlusTree.setNumber(b, base, 0);
+        PagedBPlusTree.setParent(b, base, PagedBPlusTree.NO_PAGE);
+        PagedBPlusTree.setLeft(b, base, PagedBPlusTree.NO_PAGE);
+        PagedBPlusTree.setRight(b, base, PagedBPlusTree.NO_PAGE);
+        return node;
+    }
+
+    private int number(int node)
+    {
+        return PagedBPlusTree.number(this.arena.buffer(node), this.arena.base(node));
+    }
+
+    private void setParent(int node, int parent)
+    {
+        PagedBPlusTree.setParent(this.arena.buffer(node), this.arena.base(node), parent);
+    }
+
+    /*
+     * Copies between two nodes, one bulk copy each. The nodes are different slots, so the ranges never overlap
+     * even when both slots sit in the same chunk.
+     */
+
+    private void copyKeys(int from, int fromSlot, int to, int toSlot, int count)
+    {
+        this.arena.buffer(to).put(this.arena.base(to) + PagedBPlusTree.HEADER + 4 * toSlot,
+                this.arena.buffer(from), this.arena.base(from) + PagedBPlusTree.HEADER + 4 * fromSlot, 4 * count);
+    }
+
+    private void copyLeafValues(int from, int fromSlot, int to, int toSlot, int count)
+    {
+        int payload = PagedBPlusTree.payloadOffset(this.slots);
+        this.arena.buffer(to).put(this.arena.base(to) + payload + 8 * toSlot,
+                this.arena.buffer(from), this.arena.base(from) + payload + 8 * fromSlot, 8 * count);
+    }
+
+    private void copyChildren(int from, int fromSlot, int to, int toSlot, int count)
+    {
+        int payload = PagedBPlusTree.payloadOffset(this.slots);
+        this.arena.buffer(to).put(this.arena.base(to) + payload + 4 * toSlot,
+                this.arena.buffer(from), this.arena.base(from) + payload + 4 * fromSlot, 4 * count);
+    }
+}
@@ -0,0 +1,974 @@
+package com.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class PagedBPlusTree implements Closeable
+{
+    /**
+     * Disk resident B+ tree with int keys and long values. Every node is one fixed-size page of a single file,
+     * read and written with positional FileChannel calls, and nodes refer to each other by page id instead of
+     * by Java reference, so the size of the tree is limited by the disk and not by the heap.
+     * Page 0 is the meta page (root, page count, size, free list); node pages start at page 1.
+     * All page access goes through a buffer pool, so the upper levels stay cached and a lookup reads at most
+     * the pages that are not.
+     * Deletes rebalance like the in-memory trees: an underfull page borrows from a sibling or is merged into it.
+     * Pages that leave the tree are chained into a free list, and splits take pages from it before the file grows.
+     * Optionally a Bloom filter per leaf page is kept on the heap, indexed by page id, so a lookup of an absent key
+     * usually stops at the last non-leaf page and never reads the leaf.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int MIN_PAGE_SIZE = 4096;
+    public static final int MAX_PAGE_SIZE = 16384;
+    //Pages cached by the buffer pool unless the caller chooses
+    public static final int DEFAULT_FRAMES = 256;
+    //A split pins up to four pages at once, a merge up to five
+    static final int MIN_FRAMES = 8;
+
+    //Page id used for a missing parent or sibling
+    static final int NO_PAGE = -1;
+    //Identifies the file format in the meta page
+    static final int MAGIC = 0x42505452;
+
+    //Page types
+    static final byte FREE = 0;
+    static final byte LEAF = 1;
+    static final byte NON_LEAF = 2;
+
+    //Node page header
+    static final int TYPE = 0;
+    static final int NUMBER = 4;
+    static final int PARENT = 8;
+    static final int LEFT = 12;
+    static final int RIGHT = 16;
+    static final int HEADER = 24;
+    //A free page holds the next page of the free list in place of the number of keys
+    static final int NEXT_FREE = 4;
+
+    //Meta page fields
+    static final int META_MAGIC = 0;
+    static final int META_PAGE_SIZE = 4;
+    static final int META_ORDER = 8;
+    static final int META_ROOT = 12;
+    static final int META_PAGE_COUNT = 16;
+    static final int META_SIZE = 24;
+    //Head of the free list, 0 in files written before there was one
+    static final int META_FREE = 32;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final int pageSize;
+    //B+ tree order, the maximum number of keys in a page
+    private final int bTreeOrder;
+    //Key slots in a page, one spare so a page can overflow by one key before it is split
+    private final int slots;
+    //Fewest keys a page other than the root may hold after a delete
+    private final int minKeys;
+    //Value returned by search when the key does not exist
+    private final long missingValue;
+
+    private int root;
+
+    private int pageCount;
+
+    //First page of the free list
+    private int freePage = NO_PAGE;
+
+    private long size;
+
+    //Bloom filter of every leaf page indexed by page id, null when filters are off
+    private BloomFilter[] filters;
+    private int bloomBitsPerKey;
+
+    //Open the file with 4 KB pages and the largest order that fits
+    public PagedBPlusTree(Path file) throws IOException
+    {
+        this(file, DEFAULT_PAGE_SIZE);
+    }
+
+    public PagedBPlusTree(Path file, int pageSize) throws IOException
+    {
+        this(file, pageSize, maxOrder(pageSize));
+    }
+
+    public PagedBPlusTree(Path file, int pageSize, int bTreeOrder) throws IOException
+    {
+        this(file, pageSize, bTreeOrder, DEFAULT_FRAMES, new ClockEvictionPolicy());
+    }
+
+    /**
+     * Open the tree stored in the file, or create an empty one if the file is empty or does not exist.
+     * An existing file keeps the order it was created with.
+     * @param file
+     * @param pageSize
+     * @param bTreeOrder
+     * @param frames number of pages cached by the buffer pool
+     * @param policy eviction policy of the buffer pool
+     * @throws IOException
+     */
+    public PagedBPlusTree(Path file, int pageSize, int bTreeOrder, int frames, EvictionPolicy policy) throws IOException
+    {
+        if(pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1)
+            throw new IllegalArgumentException("Page size must be a power of two between 4 KB and 16 KB: " + pageSize);
+        if(bTreeOrder < 2 || bTreeOrder > maxOrder(pageSize))
+            throw new IllegalArgumentException("B+ tree order must be between 2 and " + maxOrder(pageSize) + ": " + bTreeOrder);
+        if(frames < MIN_FRAMES)
+            throw new IllegalArgumentException("The buffer pool needs at least " + MIN_FRAMES + " frames: " + frames);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pool = new BufferPool(this.channel, pageSize, frames, policy);
+        this.pageSize = pageSize;
+        this.missingValue = Long.MIN_VALUE;
+
+        if(this.channel.size() == 0){
+            this.bTreeOrder = bTreeOrder;
+            this.pool.create(0);
+            this.pool.unpin(0, true);
+            this.pageCount = 1;
+            this.root = allocatePage();
+            newPage(this.root, LEAF);
+            this.pool.unpin(this.root, true);
+            writeMeta();
+        }
+        else{
+            ByteBuffer meta = this.pool.fetch(0);
+            int magic = meta.getInt(META_MAGIC);
+            int filePageSize = meta.getInt(META_PAGE_SIZE);
+            this.bTreeOrder = meta.getInt(META_ORDER);
+            this.root = meta.getInt(META_ROOT);
+            this.pageCount = meta.getInt(META_PAGE_COUNT);
+            this.size = meta.getLong(META_SIZE);
+            int free = meta.getInt(META_FREE);
+            this.freePage = free == 0 ? NO_PAGE : free;
+            this.pool.unpin(0, false);
+            if(magic != MAGIC){
+                this.channel.close();
+                throw new IOException("Not a B+ tree file: " + file);
+            }
+            if(filePageSize != pageSize){
+                this.channel.close();
+                throw new IllegalArgumentException("File was created with " + filePageSize + " byte pages: " + file);
+            }
+        }
+        this.slots = this.bTreeOrder + 1;
+        this.minKeys = (int) (Math.ceil((this.bTreeOrder + 1) / 2.0) - 1.0);
+    }
+
+    //Largest order whose leaf page, keys plus values plus the spare slot, fits in one page
+    public static int maxOrder(int pageSize)
+    {
+        return (pageSize - HEADER - 8) / 12 - 1;
+    }
+
+    public long size()
+    {
+        return this.size;
+    }
+
+    public int getPageSize()
+    {
+        return this.pageSize;
+    }
+
+    public int getOrder()
+    {
+        return this.bTreeOrder;
+    }
+
+    //Number of pages in the file, the meta page included
+    public int getPageCount()
+    {
+        return this.pageCount;
+    }
+
+    public long getMissingValue()
+    {
+        return this.missingValue;
+    }
+
+    //Buffer pool in front of the file, for its hit, miss and eviction counters
+    public BufferPool getBufferPool()
+    {
+        return this.pool;
+    }
+
+    /**
+     * Keep a Bloom filter over the keys of every leaf page on the heap. The filters are built here from one pass over
+     * the leaf chain and kept up to date by every insert, split and delete after that. They are not stored in the
+     * file, a reopened tree has to enable them again.
+     * @param bitsPerKey filter bits per key slot of a page, 0 drops the filters
+     */
+    public void enableBloomFilters(int bitsPerKey)
+    {
+        if(bitsPerKey < 0)
+            throw new IllegalArgumentException("Bits per key must not be negative: " + bitsPerKey);
+        this.bloomBitsPerKey = bitsPerKey;
+        if(bitsPerKey == 0){
+            this.filters = null;
+            return;
+        }
+        this.filters = new BloomFilter[this.pageCount];
+        int id = findLeaf(Integer.MIN_VALUE, false);
+        while(true){
+            ByteBuffer page = this.pool.pinned(id);
+            rebuildFilter(id, page);
+            int right = right(page, 0);
+            this.pool.unpin(id, false);
+            if(right == NO_PAGE)
+                break;
+            id = right;
+            this.pool.fetch(id);
+        }
+    }
+
+    //Search, returns the value of the first entry with the key or the missing value
+    public long search(int key)
+    {
+        int id = findLeaf(key, true);
+        if(id == NO_PAGE)
+            return this.missingValue;
+        ByteBuffer page = this.pool.pinned(id);
+        int i = lowerBound(page, 0, number(page, 0), key);
+        //The key may start the next non-empty leaf
+        while(i == number(page, 0) && right(page, 0) != NO_PAGE){
+            int right = right(page, 0);
+            this.pool.unpin(id, false);
+            id = right;
+            page = this.pool.fetch(id);
+            i = 0;
+        }
+        long value = i < number(page, 0) && key(page, 0, i) == key ? leafValue(page, 0, this.slots, i) : this.missingValue;
+        this.pool.unpin(id, false);
+        return value;
+    }
+
+    public boolean contains(int key)
+    {
+        int id = findLeaf(key, true);
+        if(id == NO_PAGE)
+            return false;
+        ByteBuffer page = this.pool.pinned(id);
+        int i = lowerBound(page, 0, number(page, 0), key);
+        while(i == number(page, 0) && right(page, 0) != NO_PAGE){
+            int right = right(page, 0);
+            this.pool.unpin(id, false);
+            id = right;
+            page = this.pool.fetch(id);
+            i = 0;
+        }
+        boolean found = i < number(page, 0) && key(page, 0, i) == key;
+        this.pool.unpin(id, false);
+        return found;
+    }
+
+    //Range search, returns the values of all keys in [key1, key2] in key order
+    public long[] rangeSearch(int key1, int key2)
+    {
+        long[][] result = {new long[16]};
+        int[] count = {0};
+        rangeSearch(key1, key2, (key, value) -> {
+            if(count[0] == result[0].length)
+                result[0] = Arrays.copyOf(result[0], count[0] * 2);
+            result[0][count[0]++] = value;
+            return true;
+        });
+        return Arrays.copyOf(result[0], count[0]);
+    }
+
+    //Visit all entries with keys in [key1, key2] in key order, stops early when the visitor returns false
+    public void rangeSearch(int key1, int key2, IntLongBPlusTree.EntryVisitor visitor)
+    {
+        int id = findLeaf(key1, false);
+        ByteBuffer page = this.pool.pinned(id);
+        int i = lowerBound(page, 0, number(page, 0), key1);
+        try {
+            while(true){
+                for(; i < number(page, 0); i++){
+                    if(key(page, 0, i) > key2 || !visitor.visit(key(page, 0, i), leafValue(page, 0, this.slots, i)))
+                        return;
+                }
+                int right = right(page, 0);
+                if(right == NO_PAGE)
+                    return;
+                this.pool.unpin(id, false);
+                id = right;
+                page = this.pool.fetch(id);
+                i = 0;
+            }
+        } finally {
+            this.pool.unpin(id, false);
+        }
+    }
+
+    //Insert, duplicate keys are kept after the existing ones
+    public void insert(long value, int key)
+    {
+        int id = this.root;
+        ByteBuffer page = this.pool.fetch(id);
+        while(type(page, 0) == NON_LEAF){
+            int child = child(page, 0, this.slots, upperBound(page, 0, number(page, 0), key));
+            this.pool.unpin(id, false);
+            id = child;
+            page = this.pool.fetch(id);
+        }
+        int number = number(page, 0);
+        int i = upperBound(page, 0, number, key);
+        moveKeys(page, 0, i, i + 1, number - i);
+        moveLeafValues(page, 0, this.slots, i, i + 1, number - i);
+        setKey(page, 0, i, key);
+        setLeafValue(page, 0, this.slots, i, value);
+        setNumber(page, 0, number + 1);
+        this.size++;
+        if(this.filters != null){
+            this.filters[id].add(BloomFilter.hash(key));
+        }
+
+        if(number + 1 > this.bTreeOrder)
+            splitLeaf(id, page);
+        else
+            this.pool.unpin(id, true);
+    }
+
+    //Delete the first entry with the key, returns false if the key does not exist
+    public boolean delete(int key)
+    {
+        int id = findLeaf(key, true);
+        if(id == NO_PAGE)
+            return false;
+        ByteBuffer page = this.pool.pinned(id);
+        int i = lowerBound(page, 0, number(page, 0), key);
+        while(i == number(page, 0) && right(page, 0) != NO_PAGE){
+            int right = right(page, 0);
+            this.pool.unpin(id, false);
+            id = right;
+            page = this.pool.fetch(id);
+            i = 0;
+        }
+        int number = number(page, 0);
+        if(i >= number || key(page, 0, i) != key){
+            this.pool.unpin(id, false);
+            return false;
+        }
+
+        moveKeys(page, 0, i + 1, i, number - i - 1);
+        moveLeafValues(page, 0, this.slots, i + 1, i, number - i - 1);
+        setNumber(page, 0, number - 1);
+        if(this.filters != null){
+            removedFromFilter(id, page);
+        }
+        this.size--;
+
+        if(id != this.root && number - 1 < this.minKeys)
+            rebalanceLeaf(id, page);
+        else
+            this.pool.unpin(id, true);
+        return true;
+    }
+
+    //Write the meta page and every dirty page, then force them to the device
+    public void flush()
+    {
+        writeMeta();
+        this.pool.flush();
+        try {
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if(!this.channel.isOpen())
+            return;
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Descend to the leftmost leaf that can hold the key: at every non-leaf page take the child left of the
+     * first separator that is greater than or equal to the key.
+     * With filtering the leaf is only read when its Bloom filter may hold the key. Keys at or above a separator
+     * always go right of it, so the key can continue in a later leaf only when a separator on the path equals it,
+     * and then the leaf is read whatever its filter says.
+     * @param key
+     * @param filtered
+     * @return the page id of the leaf, which stays pinned, or NO_PAGE when the filter ruled the key out
+     */
+    private int findLeaf(int key, boolean filtered)
+    {
+        filtered &= this.filters != null;
+        long hash = filtered ? BloomFilter.hash(key) : 0;
+        boolean fence = false;
+        int id = this.root;
+        while(true){
+            // Only leaf pages have filters
+            if(filtered && !fence && this.filters[id] != null && !this.filters[id].mightContain(hash))
+                return NO_PAGE;
+            ByteBuffer page = this.pool.fetch(id);
+            if(type(page, 0) != NON_LEAF)
+                return id;
+            int number = number(page, 0);
+            int i = lowerBound(page, 0, number, key);
+            fence |= i < number && key(page, 0, i) == key;
+            int child = child(page, 0, this.slots, i);
+            this.pool.unpin(id, false);
+            id = child;
+        }
+    }
+
+    //Split the pinned leaf, every page involved is unpinned when it returns
+    private void splitLeaf(int id, ByteBuffer page)
+    {
+        // New leaf page, as the right half of the split
+        int tempId = allocatePage();
+        ByteBuffer tempPage = newPage(tempId, LEAF);
+        int number = number(page, 0);
+        int leftNodeNumber = (number + 1) / 2;
+        int tempNumber = number - leftNodeNumber;
+        for(int j = 0; j < tempNumber; j++){
+            setKey(tempPage, 0, j, key(page, 0, leftNodeNumber + j));
+            setLeafValue(tempPage, 0, this.slots, j, leafValue(page, 0, this.slots, leftNodeNumber + j));
+        }
+        setNumber(tempPage, 0, tempNumber);
+        setNumber(page, 0, leftNodeNumber);
+        if(this.filters != null){
+            rebuildFilter(id, page);
+            rebuildFilter(tempId, tempPage);
+        }
+
+        // Link the new leaf into the leaf chain
+        int right = right(page, 0);
+        if(right != NO_PAGE){
+            ByteBuffer rightPage = this.pool.fetch(right);
+            setLeft(rightPage, 0, tempId);
+            this.pool.unpin(right, true);
+        }
+        setRight(tempPage, 0, right);
+        setLeft(tempPage, 0, id);
+        setRight(page, 0, tempId);
+
+        insertIntoParent(id, page, key(tempPage, 0, 0), tempId, tempPage);
+    }
+
+    private void splitNonLeaf(int id, ByteBuffer page)
+    {
+        // Create a new non-leaf page, as the right half of the split, the middle key moves up
+        int tempId = allocatePage();
+        ByteBuffer tempPage = newPage(tempId, NON_LEAF);
+        int number = number(page, 0);
+        int middle = number / 2;
+        int middleKey = key(page, 0, middle);
+        int tempNumber = number - middle - 1;
+        for(int j = 0; j < tempNumber; j++){
+            setKey(tempPage, 0, j, key(page, 0, middle + 1 + j));
+        }
+        // The moved children now have the new page as their parent
+        for(int j = 0; j <= tempNumber; j++){
+            int child = child(page, 0, this.slots, middle + 1 + j);
+            setChild(tempPage, 0, this.slots, j, child);
+            ByteBuffer childPage = this.pool.fetch(child);
+            setParent(childPage, 0, tempId);
+            this.pool.unpin(child, true);
+        }
+        setNumber(tempPage, 0, tempNumber);
+        setNumber(page, 0, middle);
+
+        insertIntoParent(id, page, middleKey, tempId, tempPage);
+    }
+
+    //After a split, insert the new right page and its separator into the parent of the left page, both are unpinned
+    private void insertIntoParent(int left, ByteBuffer leftPage, int key, int right, ByteBuffer rightPage)
+    {
+        int parent = parent(leftPage, 0);
+        if(parent == NO_PAGE){
+            parent = allocatePage();
+            ByteBuffer parentPage = newPage(parent, NON_LEAF);
+            setKey(parentPage, 0, 0, key);
+            setChild(parentPage, 0, this.slots, 0, left);
+            setChild(parentPage, 0, this.slots, 1, right);
+            setNumber(parentPage, 0, 1);
+            setParent(leftPage, 0, parent);
+            setParent(rightPage, 0, parent);
+            this.pool.unpin(left, true);
+            this.pool.unpin(right, true);
+            this.pool.unpin(parent, true);
+            this.root = parent;
+            return;
+        }
+        setParent(rightPage, 0, parent);
+        this.pool.unpin(left, true);
+        this.pool.unpin(right, true);
+
+        ByteBuffer parentPage = this.pool.fetch(parent);
+        int number = number(parentPage, 0);
+        int i = childIndex(parentPage, 0, this.slots, number, left);
+        moveKeys(parentPage, 0, i, i + 1, number - i);
+        moveChildren(parentPage, 0, this.slots, i + 1, i + 2, number - i);
+        setKey(parentPage, 0, i, key);
+        setChild(parentPage, 0, this.slots, i + 1, right);
+        setNumber(parentPage, 0, number + 1);
+
+        if(number + 1 > this.bTreeOrder)
+            splitNonLeaf(parent, parentPage);
+        else
+            this.pool.unpin(parent, true);
+    }
+
+    //Borrow from a sibling under the same parent if it can spare a key, otherwise merge with it, every page involved is unpinned when it returns
+    private void rebalanceLeaf(int id, ByteBuffer page)
+    {
+        int parent = parent(page, 0);
+        ByteBuffer parentPage = this.pool.fetch(parent);
+        int parentNumber = number(parentPage, 0);
+        int i = childIndex(parentPage, 0, this.slots, parentNumber, id);
+        int left = i > 0 ? child(parentPage, 0, this.slots, i - 1) : NO_PAGE;
+        int right = i < parentNumber ? child(parentPage, 0, this.slots, i + 1) : NO_PAGE;
+        ByteBuffer leftPage = left != NO_PAGE ? this.pool.fetch(left) : null;
+        ByteBuffer rightPage = right != NO_PAGE ? this.pool.fetch(right) : null;
+        int number = number(page, 0);
+
+        if(leftPage != null && number(leftPage, 0) > this.minKeys){
+            int leftNumber = number(leftPage, 0) - 1;
+            moveKeys(page, 0, 0, 1, number);
+            moveLeafValues(page, 0, this.slots, 0, 1, number);
+            setKey(page, 0, 0, key(leftPage, 0, leftNumber));
+            setLeafValue(page, 0, this.slots, 0, leafValue(leftPage, 0, this.slots, leftNumber));
+            setNumber(page, 0, number + 1);
+            setNumber(leftPage, 0, leftNumber);
+            setKey(parentPage, 0, i - 1, key(page, 0, 0));
+            if(this.filters != null){
+                this.filters[id].add(BloomFilter.hash(key(page, 0, 0)));
+                removedFromFilter(left, leftPage);
+            }
+            this.pool.unpin(left, true);
+            if(rightPage != null){
+                this.pool.unpin(right, false);
+            }
+        }
+        else if(rightPage != null && number(rightPage, 0) > this.minKeys){
+            int rightNumber = number(rightPage, 0) - 1;
+            setKey(page, 0, number, key(rightPage, 0, 0));
+            setLeafValue(page, 0, this.slots, number, leafValue(rightPage, 0, this.slots, 0));
+            setNumber(page, 0, number + 1);
+            moveKeys(rightPage, 0, 1, 0, rightNumber);
+            moveLeafValues(rightPage, 0, this.slots, 1, 0, rightNumber);
+            setNumber(rightPage, 0, rightNumber);
+            setKey(parentPage, 0, i, key(rightPage, 0, 0));
+            if(this.filters != null){
+                this.filters[id].add(BloomFilter.hash(key(page, 0, number)));
+                removedFromFilter(right, rightPage);
+            }
+            this.pool.unpin(right, true);
+            if(leftPage != null){
+                this.pool.unpin(left, false);
+            }
+        }
+        else if(leftPage != null){
+            if(rightPage != null){
+                this.pool.unpin(right, false);
+            }
+            mergeLeaves(left, leftPage, id, page);
+            removeFromNonLeaf(parent, parentPage, i - 1);
+            return;
+        }
+        else{
+            mergeLeaves(id, page, right, rightPage);
+            removeFromNonLeaf(parent, parentPage, i);
+            return;
+        }
+        this.pool.unpin(id, true);
+        this.pool.unpin(parent, true);
+    }
+
+    //Move all entries of the right leaf into the left one, unlink the right leaf and free its page, both are unpinned
+    private void mergeLeaves(int left, ByteBuffer leftPage, int right, ByteBuffer rightPage)
+    {
+        int leftNumber = number(leftPage, 0);
+        int rightNumber = number(rightPage, 0);
+        for(int j = 0; j < rightNumber; j++){
+            setKey(leftPage, 0, leftNumber + j, key(rightPage, 0, j));
+            setLeafValue(leftPage, 0, this.slots, leftNumber + j, leafValue(rightPage, 0, this.slots, j));
+        }
+        setNumber(leftPage, 0, leftNumber + rightNumber);
+        int next = right(rightPage, 0);
+        setRight(leftPage, 0, next);
+        if(next != NO_PAGE){
+            ByteBuffer nextPage = this.pool.fetch(next);
+            setLeft(nextPage, 0, left);
+            this.pool.unpin(next, true);
+        }
+        if(this.filters != null){
+            rebuildFilter(left, leftPage);
+        }
+        this.pool.unpin(left, true);
+        freePage(right, rightPage);
+    }
+
+    //Remove the key at index i and the child to its right from the pinned page, every page involved is unpinned when it returns
+    private void removeFromNonLeaf(int id, ByteBuffer page, int i)
+    {
+        int number = number(page, 0);
+        moveKeys(page, 0, i + 1, i, number - i - 1);
+        moveChildren(page, 0, this.slots, i + 2, i + 1, number - i - 1);
+        setNumber(page, 0, number - 1);
+
+        if(id == this.root){
+            if(number - 1 == 0){
+                // The only child left becomes the root
+                this.root = child(page, 0, this.slots, 0);
+                ByteBuffer rootPage = this.pool.fetch(this.root);
+                setParent(rootPage, 0, NO_PAGE);
+                this.pool.unpin(this.root, true);
+                freePage(id, page);
+            }
+            else
+                this.pool.unpin(id, true);
+            return;
+        }
+        if(number - 1 < this.minKeys)
+            rebalanceNonLeaf(id, page);
+        else
+            this.pool.unpin(id, true);
+    }
+
+    private void rebalanceNonLeaf(int id, ByteBuffer page)
+    {
+        int parent = parent(page, 0);
+        ByteBuffer parentPage = this.pool.fetch(parent);
+        int parentNumber = number(parentPage, 0);
+        int i = childIndex(parentPage, 0, this.slots, parentNumber, id);
+        int left = i > 0 ? child(parentPage, 0, this.slots, i - 1) : NO_PAGE;
+        int right = i < parentNumber ? child(parentPage, 0, this.slots, i + 1) : NO_PAGE;
+        ByteBuffer leftPage = left != NO_PAGE ? this.pool.fetch(left) : null;
+        ByteBuffer rightPage = right != NO_PAGE ? this.pool.fetch(right) : null;
+        int number = number(page, 0);
+
+        if(leftPage != null && number(leftPage, 0) > this.minKeys){
+            // Rotate the last child of the left sibling through the parent
+            int leftNumber = number(leftPage, 0);
+            moveKeys(page, 0, 0, 1, number);
+            moveChildren(page, 0, this.slots, 0, 1, number + 1);
+            setKey(page, 0, 0, key(parentPage, 0, i - 1));
+            int child = child(leftPage, 0, this.slots, leftNumber);
+            setChild(page, 0, this.slots, 0, child);
+            setNumber(page, 0, number + 1);
+            setKey(parentPage, 0, i - 1, key(leftPage, 0, leftNumber - 1));
+            setNumber(leftPage, 0, leftNumber - 1);
+            this.pool.unpin(left, true);
+            if(rightPage != null){
+                this.pool.unpin(right, false);
+            }
+            adopt(child, id);
+        }
+        else if(rightPage != null && number(rightPage, 0) > this.minKeys){
+            // Rotate the first child of the right sibling through the parent
+            int rightNumber = number(rightPage, 0);
+            setKey(page, 0, number, key(parentPage, 0, i));
+            int child = child(rightPage, 0, this.slots, 0);
+            setChild(page, 0, this.slots, number + 1, child);
+            setNumber(page, 0, number + 1);
+            setKey(parentPage, 0, i, key(rightPage, 0, 0));
+            moveKeys(rightPage, 0, 1, 0, rightNumber - 1);
+            moveChildren(rightPage, 0, this.slots, 1, 0, rightNumber);
+            setNumber(rightPage, 0, rightNumber - 1);
+            this.pool.unpin(right, true);
+            if(leftPage != null){
+                this.pool.unpin(left, false);
+            }
+            adopt(child, id);
+        }
+        else if(leftPage != null){
+            if(rightPage != null){
+                this.pool.unpin(right, false);
+            }
+            mergeNonLeaves(left, leftPage, key(parentPage, 0, i - 1), id, page);
+            removeFromNonLeaf(parent, parentPage, i - 1);
+            return;
+        }
+        else{
+            mergeNonLeaves(id, page, key(parentPage, 0, i), right, rightPage);
+            removeFromNonLeaf(parent, parentPage, i);
+            return;
+        }
+        this.pool.unpin(id, true);
+        this.pool.unpin(parent, true);
+    }
+
+    //Pull the separator down, append the keys and children of the right page to the left one and free the right one, both are unpinned
+    private void mergeNonLeaves(int left, ByteBuffer leftPage, int key, int right, ByteBuffer rightPage)
+    {
+        int leftNumber = number(leftPage, 0);
+        int rightNumber = number(rightPage, 0);
+        setKey(leftPage, 0, leftNumber, key);
+        for(int j = 0; j < rightNumber; j++){
+            setKey(leftPage, 0, leftNumber + 1 + j, key(rightPage, 0, j));
+        }
+        for(int j = 0; j <= rightNumber; j++){
+            int child = child(rightPage, 0, this.slots, j);
+            setChild(leftPage, 0, this.slots, leftNumber + 1 + j, child);
+            adopt(child, left);
+        }
+        setNumber(leftPage, 0, leftNumber + rightNumber + 1);
+        this.pool.unpin(left, true);
+        freePage(right, rightPage);
+    }
+
+    //Point the parent field of a page at its new parent
+    private void adopt(int child, int parent)
+    {
+        ByteBuffer childPage = this.pool.fetch(child);
+        setParent(childPage, 0, parent);
+        this.pool.unpin(child, true);
+    }
+
+    //Count a key that left a leaf page against its filter, rebuilding the filter once it is stale
+    private void removedFromFilter(int id, ByteBuffer page)
+    {
+        this.filters[id].removed(1);
+        if(this.filters[id].isStale(number(page, 0))){
+            rebuildFilter(id, page);
+        }
+    }
+
+    //Chain a pinned page that left the tree into the free list and unpin it
+    private void freePage(int id, ByteBuffer page)
+    {
+        page.put(TYPE, FREE);
+        page.putInt(NEXT_FREE, this.freePage);
+        this.pool.unpin(id, true);
+        this.freePage = id;
+        if(this.filters != null){
+            this.filters[id] = null;
+        }
+    }
+
+    //Take the first page of the free list, or a new page at the end of the file
+    private int allocatePage()
+    {
+        if(this.freePage != NO_PAGE){
+            int id = this.freePage;
+            ByteBuffer page = this.pool.fetch(id);
+            this.freePage = page.getInt(NEXT_FREE);
+            this.pool.unpin(id, false);
+            return id;
+        }
+        if(this.filters != null && this.pageCount == this.filters.length){
+            this.filters = Arrays.copyOf(this.filters, this.pageCount * 2);
+        }
+        return this.pageCount++;
+    }
+
+    //Refill the filter of a leaf page from its keys
+    private void rebuildFilter(int id, ByteBuffer page)
+    {
+        if(this.filters[id] == null)
+            this.filters[id] = new BloomFilter(this.slots, this.bloomBitsPerKey);
+        else
+            this.filters[id].clear();
+        int number = number(page, 0);
+        for(int i = 0; i < number; i++){
+            this.filters[id].add(BloomFilter.hash(key(page, 0, i)));
+        }
+    }
+
+    //Pin an empty page of the given type
+    private ByteBuffer newPage(int id, byte type)
+    {
+        ByteBuffer page = this.pool.create(id);
+        page.put(TYPE, type);
+        setParent(page, 0, NO_PAGE);
+        setLeft(page, 0, NO_PAGE);
+        setRight(page, 0, NO_PAGE);
+        return page;
+    }
+
+    private void writeMeta()
+    {
+        ByteBuffer meta = this.pool.fetch(0);
+        meta.putInt(META_MAGIC, MAGIC);
+        meta.putInt(META_PAGE_SIZE, this.pageSize);
+        meta.putInt(META_ORDER, this.bTreeOrder);
+        meta.putInt(META_ROOT, this.root);
+        meta.putInt(META_PAGE_COUNT, this.pageCount);
+        meta.putLong(META_SIZE, this.size);
+        meta.putInt(META_FREE, this.freePage);
+        this.pool.unpin(0, true);
+    }
+
+    /*
+     * Page layout. The accessors take the buffer and the offset of the page inside it, so the same layout
+     * works for a page read from the file as well as for a page that lives inside a larger buffer.
+     * Keys start after the header, leaf values and child page ids follow the key slots, aligned to 8 bytes.
+     */
+
+    static byte type(ByteBuffer page, int base)
+    {
+        return page.get(base + TYPE);
+    }
+
+    static int number(ByteBuffer page, int base)
+    {
+        return page.getInt(base + NUMBER);
+    }
+
+    static void setNumber(ByteBuffer page, int base, int number)
+    {
+        page.putInt(base + NUMBER, number);
+    }
+
+    static int parent(ByteBuffer page, int base)
+    {
+        return page.getInt(base + PARENT);
+    }
+
+    static void setParent(ByteBuffer page, int base, int parent)
+    {
+        page.putInt(base + PARENT, parent);
+    }
+
+    static int left(ByteBuffer page, int base)
+    {
+        return page.getInt(base + LEFT);
+    }
+
+    static void setLeft(ByteBuffer page, int base, int left)
+    {
+        page.putInt(base + LEFT, left);
+    }
+
+    static int right(ByteBuffer page, int base)
+    {
+        return page.getInt(base + RIGHT);
+    }
+
+    static void setRight(ByteBuffer page, int base, int right)
+    {
+        page.putInt(base + RIGHT, right);
+    }
+
+    static int key(ByteBuffer page, int base, int i)
+    {
+        return page.getInt(base + HEADER + 4 * i);
+    }
+
+    static void setKey(ByteBuffer page, int base, int i, int key)
+    {
+        page.putInt(base + HEADER + 4 * i, key);
+    }
+
+    //Offset of the value and child arrays, behind the key slots
+    static int payloadOffset(int slots)
+    {
+        return HEADER + ((4 * slots + 7) & ~7);
+    }
+
+    static long leafValue(ByteBuffer page, int base, int slots, int i)
+    {
+        return page.getLong(base + payloadOffset(slots) + 8 * i);
+    }
+
+    static void setLeafValue(ByteBuffer page, int base, int slots, int i, long value)
+    {
+        page.putLong(base + payloadOffset(slots) + 8 * i, value);
+    }
+
+    static int child(ByteBuffer page, int base, int slots, int i)
+    {
+        return page.getInt(base + payloadOffset(slots) + 4 * i);
+    }
+
+    static void setChild(ByteBuffer page, int base, int slots, int i, int child)
+    {
+        page.putInt(base + payloadOffset(slots) + 4 * i, child);
+    }
+
+    //Position of a child page, found by id because duplicate keys may sit on both sides of a separator
+    static int childIndex(ByteBuffer page, int base, int slots, int number, int child)
+    {
+        for(int i = 0; i <= number; i++){
+            if(child(page, base, slots, i) == child)
+                return i;
+        }
+        throw new IllegalStateException("Page " + child + " is not a child of its parent");
+    }
+
+    //First slot whose key is greater than or equal to the key, number if there is none
+    static int lowerBound(ByteBuffer page, int base, int number, int key)
+    {
+        int low = 0;
+        int high = number;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(key(page, base, middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    //First slot whose key is greater than the key, number if there is none
+    static int upperBound(ByteBuffer page, int base, int number, int key)
+    {
+        int low = 0;
+        int high = number;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(key(page, base, middle) <= key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    //Move count keys from slot from to slot to, the ranges may overlap
+    static void moveKeys(ByteBuffer page, int base, int from, int to, int count)
+    {
+        moveInts(page, base + HEADER, from, to, count);
+    }
+
+    static void moveChildren(ByteBuffer page, int base, int slots, int from, int to, int count)
+    {
+        moveInts(page, base + payloadOffset(slots), from, to, count);
+    }
+
+    static void moveLeafValues(ByteBuffer page, int base, int slots, int from, int to, int count)
+    {
+        int offset = base + payloadOffset(slots);
+        if(to > from){
+            for(int j = count - 1; j >= 0; j--){
+                page.putLong(offset + 8 * (to + j), page.getLong(offset + 8 * (from + j)));
+            }
+        }
+        else{
+            for(int j = 0; j < count; j++){
+                page.putLong(offset + 8 * (to + j), page.getLong(offset + 8 * (from + j)));
+            }
+        }
+    }
+
+    private static void moveInts(ByteBuffer page, int offset, int from, int to, int count)
+    {
+        if(to > from){
+            for(int j = count - 1; j >= 0; j--){
+                page.putInt(offset + 4 * (to + j), page.getInt(offset + 4 * (from + j)));
+            }
+        }
+        else{
+            for(int j = 0; j < count; j++){
+                page.putInt(offset + 4 * (to + j), page.getInt(offset + 4 * (from + j)));
+            }
+        }
+    }
+}
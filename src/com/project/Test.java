@@ -3,13 +3,23 @@ package com.project;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.stream.Stream;
+import javax.management.JMException;
 
 public class Test
 {
+    //Print every step of the tree operations, off so the timings measure the trees and not the console
+    static final boolean TRACE = false;
+
     static void sparseBPlusTreeOperations(int order, int[] arr)
     {
         SparseBPlusTree<BPlusTreeVO, Integer> sparseBPlusTree = new SparseBPlusTree<>(order);
+        if (TRACE) {
+            sparseBPlusTree.setTreeEventListener(new ConsoleTreeEventListener());
+        }
         long time1 = System.nanoTime();
 
         for (int i = 0; i < arr.length; i++) {
@@ -39,11 +49,19 @@ public class Test
         //Search for five random keys
         int[] search = {158644,122427,177197,194358,158181};
         for(int i=0; i < search.length; i++){
-            sparseBPlusTree.search(search[i]);
+            if(sparseBPlusTree.search(search[i]) == null){
+                System.out.println("Key: " + search[i] + " does not exist!");
+            }
         }
 
         //Range Search
-        sparseBPlusTree.rangeSearch(112000, 113000);
+        SparseBPlusTree<BPlusTreeVO, Integer>.RangeCursor range = sparseBPlusTree.rangeSearch(112000, 113000);
+        System.out.print("Keys in the range: 112000-113000 are as follows: [");
+        while (range.hasNext()) {
+            range.next();
+            System.out.print(range.key() + " ");
+        }
+        System.out.println("]");
 
         long time3 = System.nanoTime();
 
@@ -55,6 +73,9 @@ public class Test
     static void denseBPlusTreeOperations(int order, int[] arr)
     {
         DenseBPlusTree<BPlusTreeVO, Integer> denseBPlusTree = new DenseBPlusTree<>(order);
+        if (TRACE) {
+            denseBPlusTree.setTreeEventListener(new ConsoleTreeEventListener());
+        }
         long time1 = System.nanoTime();
 
         for (int i = 0; i < arr.length; i++) {
@@ -87,7 +108,9 @@ public class Test
         //Search for five random keys
         int[] search = {158644,122427,177197,194358,158181};
         for(int i=0; i < search.length; i++){
-            denseBPlusTree.search(search[i]);
+            if(denseBPlusTree.search(search[i]) == null){
+                System.out.println("Key: " + search[i] + " does not exist!");
+            }
         }
 
         //Range Search
@@ -100,6 +123,206 @@ public class Test
 
     }
 
+    static void intBPlusTreeOperations(int order, int[] arr)
+    {
+        IntBPlusTree intBPlusTree = new IntBPlusTree(order);
+        long time1 = System.nanoTime();
+
+        for (int i = 0; i < arr.length; i++) {
+            intBPlusTree.insert(arr[i], arr[i]);
+        }
+
+        long time2 = System.nanoTime();
+
+        //Same additional operations as the sparse tree
+        intBPlusTree.delete(156680);
+        intBPlusTree.delete(131133);
+        int[] insertNewElements = {140304, 156700, 160022};
+        for(int i=0; i < insertNewElements.length; i++){
+            intBPlusTree.insert(insertNewElements[i], insertNewElements[i]);
+        }
+        intBPlusTree.delete(180976);
+        intBPlusTree.delete(106289);
+
+        int[] search = {158644,122427,177197,194358,158181};
+        for(int i=0; i < search.length; i++){
+            if(!intBPlusTree.contains(search[i])){
+                System.out.println("Key: " + search[i] + " does not exist!");
+            }
+        }
+
+        int[] range = intBPlusTree.rangeSearch(112000, 113000);
+
+        long time3 = System.nanoTime();
+
+        System.out.println("Keys in the range: 112000-113000 are as follows:");
+        System.out.println(Arrays.toString(range));
+        System.out.println("Time taken to insert 10,000 records:" + (time2 - time1));
+        System.out.println("Time taken by additional operations:" + (time3 - time2));
+    }
+
+    static void bulkLoadOperations(int order, int[] arr)
+    {
+        int[] sorted = arr.clone();
+        Arrays.sort(sorted);
+        Integer[] keys = new Integer[sorted.length];
+        BPlusTreeVO[] values = new BPlusTreeVO[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            values[i] = new BPlusTreeVO(sorted[i]);
+            keys[i] = values[i].getId();
+        }
+
+        long time1 = System.nanoTime();
+        DenseBPlusTree<BPlusTreeVO, Integer> denseBPlusTree = new DenseBPlusTree<>(order);
+        denseBPlusTree.bulkLoad(keys, values, 1.0);
+        long time2 = System.nanoTime();
+        SparseBPlusTree<BPlusTreeVO, Integer> sparseBPlusTree = new SparseBPlusTree<>(order);
+        sparseBPlusTree.bulkLoad(keys, values, 0.5);
+        long time3 = System.nanoTime();
+
+        System.out.println("Time taken to bulk load 10,000 records into the dense tree:" + (time2 - time1));
+        System.out.println("Time taken to bulk load 10,000 records into the sparse tree:" + (time3 - time2));
+    }
+
+    static void pagedBPlusTreeOperations(int pageSize, int[] arr) throws IOException
+    {
+        Path file = Files.createTempFile("bplustree", ".db");
+        long time1 = System.nanoTime();
+
+        try (PagedBPlusTree pagedBPlusTree = new PagedBPlusTree(file, pageSize)) {
+            for (int i = 0; i < arr.length; i++) {
+                pagedBPlusTree.insert(arr[i], arr[i]);
+            }
+        }
+
+        long time2 = System.nanoTime();
+
+        //Reopen the file, the tree is read back from disk
+        try (PagedBPlusTree pagedBPlusTree = new PagedBPlusTree(file, pageSize)) {
+            pagedBPlusTree.delete(156680);
+            pagedBPlusTree.delete(131133);
+            int[] insertNewElements = {140304, 156700, 160022};
+            for(int i=0; i < insertNewElements.length; i++){
+                pagedBPlusTree.insert(insertNewElements[i], insertNewElements[i]);
+            }
+            pagedBPlusTree.delete(180976);
+            pagedBPlusTree.delete(106289);
+
+            int[] search = {158644,122427,177197,194358,158181};
+            for(int i=0; i < search.length; i++){
+                if(!pagedBPlusTree.contains(search[i])){
+                    System.out.println("Key: " + search[i] + " does not exist!");
+                }
+            }
+
+            long[] range = pagedBPlusTree.rangeSearch(112000, 113000);
+
+            long time3 = System.nanoTime();
+
+            System.out.println("Keys in the range: 112000-113000 are as follows:");
+            System.out.println(Arrays.toString(range));
+            System.out.println("Pages in the file: " + pagedBPlusTree.getPageCount());
+            System.out.println("Time taken to insert 10,000 records:" + (time2 - time1));
+            System.out.println("Time taken by additional operations:" + (time3 - time2));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    static void durableBPlusTreeOperations(int order, int[] arr) throws IOException
+    {
+        Path directory = Files.createTempDirectory("bplustree");
+        long time1 = System.nanoTime();
+
+        try (DurableBPlusTree<Integer, Integer> durableBPlusTree = new DurableBPlusTree<>(directory, order, Codec.INTEGER, Codec.INTEGER)) {
+            for (int i = 0; i < arr.length; i++) {
+                durableBPlusTree.insert(arr[i], arr[i]);
+            }
+            durableBPlusTree.delete(156680);
+            durableBPlusTree.delete(131133);
+        }
+
+        long time2 = System.nanoTime();
+
+        //Reopen the directory, the tree is recovered from the log
+        try (DurableBPlusTree<Integer, Integer> durableBPlusTree = new DurableBPlusTree<>(directory, order, Codec.INTEGER, Codec.INTEGER)) {
+            long time3 = System.nanoTime();
+            int[] search = {158644,122427,177197,194358,158181,156680};
+            for(int i=0; i < search.length; i++){
+                if(durableBPlusTree.search(search[i]) == null){
+                    System.out.println("Key: " + search[i] + " does not exist!");
+                }
+            }
+            durableBPlusTree.checkpoint();
+            System.out.println("Log records replayed: " + durableBPlusTree.getReplayedRecords());
+            System.out.println("Time taken to insert 10,000 records durably:" + (time2 - time1));
+            System.out.println("Time taken to recover:" + (time3 - time2));
+        } finally {
+            Files.deleteIfExists(directory.resolve(DurableBPlusTree.LOG_FILE));
+            Files.deleteIfExists(directory.resolve(DurableBPlusTree.CHECKPOINT_FILE));
+            Files.delete(directory);
+        }
+    }
+
+    static void copyOnWriteBPlusTreeOperations(int order, int[] arr)
+    {
+        CopyOnWriteBPlusTree<Integer, Integer> copyOnWriteBPlusTree = new CopyOnWriteBPlusTree<>(order);
+        for (int i = 0; i < arr.length / 2; i++) {
+            copyOnWriteBPlusTree.insert(arr[i], arr[i]);
+        }
+
+        //Scan a snapshot while the second half is inserted, the scan sees only the first half
+        CopyOnWriteBPlusTree<Integer, Integer>.Snapshot snapshot = copyOnWriteBPlusTree.snapshot();
+        CopyOnWriteBPlusTree<Integer, Integer>.RangeCursor cursor = snapshot.entries();
+        long time1 = System.nanoTime();
+        int scanned = 0;
+        for (int i = arr.length / 2; i < arr.length; i++) {
+            copyOnWriteBPlusTree.insert(arr[i], arr[i]);
+            if (cursor.hasNext()) {
+                cursor.next();
+                scanned++;
+            }
+        }
+        while (cursor.hasNext()) {
+            cursor.next();
+            scanned++;
+        }
+        long time2 = System.nanoTime();
+
+        copyOnWriteBPlusTree.delete(156680);
+        copyOnWriteBPlusTree.delete(131133);
+        System.out.println("Snapshot size: " + snapshot.size() + ", entries scanned: " + scanned);
+        System.out.println("Current size: " + copyOnWriteBPlusTree.size());
+        System.out.println("Time taken to insert half the records during the scan:" + (time2 - time1));
+    }
+
+    static void treeStatisticsOperations(int order, int[] arr) throws JMException
+    {
+        SparseBPlusTree<BPlusTreeVO, Integer> sparseBPlusTree = new SparseBPlusTree<>(order);
+        TreeStatistics statistics = sparseBPlusTree.enableStatistics();
+        //Visible in jconsole under com.project while the test runs
+        statistics.register("sparse");
+
+        for (int i = 0; i < arr.length; i++) {
+            BPlusTreeVO p = new BPlusTreeVO(arr[i]);
+            sparseBPlusTree.insert(p, p.getId());
+        }
+        for (int i = 0; i < arr.length; i += 2) {
+            sparseBPlusTree.search(arr[i]);
+        }
+        for (int i = 0; i < arr.length; i += 4) {
+            sparseBPlusTree.delete(arr[i]);
+        }
+
+        System.out.println("Height: " + statistics.getHeight() + ", nodes per level: " + Arrays.toString(statistics.getNodesPerLevel()));
+        System.out.println("Keys: " + statistics.getKeyCount() + ", leaf fill: " + statistics.getLeafFillFactor() + ", inner fill: " + statistics.getInnerFillFactor());
+        System.out.println("Splits: " + statistics.getSplits() + ", redistributions: " + statistics.getRedistributions() + ", coalesces: " + statistics.getCoalesces());
+        System.out.println("Search latency: " + statistics.getSearchLatency());
+        System.out.println("Insert latency: " + statistics.getInsertLatency());
+        System.out.println("Delete latency: " + statistics.getDeleteLatency());
+        statistics.unregister();
+    }
+
     static void twoPassJoinOperations()
     {
         //Test Two-Pass Join Algorithm based on Hashing
@@ -117,7 +340,7 @@ public class Test
         twoPassJoin.generateRelationRWith1200Tuples();
     }
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException, JMException {
 
         String csvFile = "/Users/rashmeetladhar/Downloads/BPlusTreeArray.csv";
         String line = "";
@@ -142,6 +365,12 @@ public class Test
 //        denseBPlusTreeOperations(24, arr);
 //        sparseBPlusTreeOperations(13, arr);
 //        denseBPlusTreeOperations(13, arr);
+//        intBPlusTreeOperations(24, arr);
+//        bulkLoadOperations(24, arr);
+//        pagedBPlusTreeOperations(4096, arr);
+//        durableBPlusTreeOperations(24, arr);
+//        copyOnWriteBPlusTreeOperations(24, arr);
+//        treeStatisticsOperations(24, arr);
 
         //Test Two Pass Join Algorithm (based on Hashing)
 //        twoPassJoinOperations();
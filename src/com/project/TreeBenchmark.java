@@ -0,0 +1,868 @@
+package com.project;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TreeBenchmark
+{
+    //Number of keys in every benchmarked tree
+    private static final int KEYS = 1000000;
+    //Number of timed lookups per measurement
+    private static final int LOOKUPS = 2000000;
+
+    /**
+     * Lookup cost as the order grows. The tree is built once per order and probed with random keys, once with the
+     * classic in-node binary search and once with the branch-free bound for small nodes.
+     * @param orders
+     */
+    static void lookupCostByOrder(int[] orders)
+    {
+        Random random = new Random(42);
+        Integer[] keys = shuffledKeys(random, KEYS);
+        Integer[] probes = new Integer[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++){
+            probes[i] = random.nextInt(KEYS * 2);
+        }
+
+        System.out.println("order\tbinary ns/lookup\tbranch-free ns/lookup");
+        for(int order : orders){
+            SparseBPlusTree<Integer, Integer> tree = build(order, keys);
+
+            tree.setBranchFreeSearch(false);
+            long binary = timeLookups(tree, probes);
+            tree.setBranchFreeSearch(true);
+            long branchFree = timeLookups(tree, probes);
+
+            System.out.println(order + "\t" + (binary / LOOKUPS) + "\t" + (branchFree / LOOKUPS));
+        }
+    }
+
+    /**
+     * Bytes allocated per insert and per delete under sustained ingest, measured with the per-thread allocation counter
+     * of the running JVM. The keys are boxed up front, so the only garbage left is the nodes created by splits.
+     * @param orders
+     */
+    static void allocationByOrder(int[] orders)
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Integer[] keys = shuffledKeys(new Random(7), KEYS);
+
+        System.out.println("order\tbytes/insert\tbytes/delete");
+        for(int order : orders){
+            //Warm up first, so the counter does not see the interpreter or the JIT
+            build(order, keys);
+
+            SparseBPlusTree<Integer, Integer> tree = new SparseBPlusTree<>(order);
+            long bytes1 = threads.getThreadAllocatedBytes(thread);
+            for(int i = 0; i < keys.length; i++){
+                tree.insert(keys[i], keys[i]);
+            }
+            long bytes2 = threads.getThreadAllocatedBytes(thread);
+            for(int i = 0; i < keys.length; i++){
+                tree.delete(keys[i]);
+            }
+            long bytes3 = threads.getThreadAllocatedBytes(thread);
+
+            System.out.println(order + "\t" + ((double)(bytes2 - bytes1) / KEYS) + "\t" + ((double)(bytes3 - bytes2) / KEYS));
+        }
+    }
+
+    /**
+     * Physical page reads per point lookup on a paged tree that is larger than its buffer pool. Only the pages
+     * the pool cannot hold are read, with the upper levels cached that is close to one read (the leaf) per lookup.
+     * @param frames
+     * @throws IOException
+     */
+    static void pagedReadsPerLookup(int frames) throws IOException
+    {
+        Random random = new Random(11);
+        Integer[] keys = shuffledKeys(random, KEYS);
+        EvictionPolicy[] policies = {new ClockEvictionPolicy(), new LruKEvictionPolicy(2)};
+
+        System.out.println("policy\tpages\tframes\treads/lookup\thit ratio");
+        for(EvictionPolicy policy : policies){
+            Path file = Files.createTempFile("bplustree", ".db");
+            try (PagedBPlusTree tree = new PagedBPlusTree(file, PagedBPlusTree.DEFAULT_PAGE_SIZE,
+                    PagedBPlusTree.maxOrder(PagedBPlusTree.DEFAULT_PAGE_SIZE), frames, policy)) {
+                for(int i = 0; i < keys.length; i++){
+                    tree.insert(keys[i], keys[i]);
+                }
+                //Warm the pool, then count
+                for(int i = 0; i < LOOKUPS / 10; i++){
+                    tree.search(random.nextInt(KEYS * 2));
+                }
+                BufferPool pool = tree.getBufferPool();
+                pool.resetCounters();
+                for(int i = 0; i < LOOKUPS; i++){
+                    tree.search(random.nextInt(KEYS * 2));
+                }
+                double ratio = (double) pool.getHits() / (pool.getHits() + pool.getMisses());
+                System.out.println(policy.getClass().getSimpleName() + "\t" + tree.getPageCount() + "\t" + frames
+                        + "\t" + ((double) pool.getMisses() / LOOKUPS) + "\t" + ratio);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Lookups where most keys are absent, with and without per-leaf Bloom filters. On the paged tree a rejected key
+     * reads no leaf page, so the reads per lookup fall with the miss ratio; in memory it skips the leaf search.
+     * @param missRatios share of the probes that miss
+     * @param frames
+     * @throws IOException
+     */
+    static void negativeLookups(double[] missRatios, int frames) throws IOException
+    {
+        Random random = new Random(37);
+        Integer[] keys = shuffledKeys(random, KEYS);
+        SparseBPlusTree<Integer, Integer> tree = build(64, keys);
+        Path file = Files.createTempFile("bplustree", ".db");
+        try (PagedBPlusTree pagedTree = new PagedBPlusTree(file, PagedBPlusTree.DEFAULT_PAGE_SIZE,
+                PagedBPlusTree.maxOrder(PagedBPlusTree.DEFAULT_PAGE_SIZE), frames, new ClockEvictionPolicy())) {
+            for(int i = 0; i < keys.length; i++){
+                pagedTree.insert(keys[i], keys[i]);
+            }
+
+            System.out.println("miss ratio\tfilter\tsearch ns/lookup\tpaged ns/lookup\tpaged reads/lookup");
+            for(double missRatio : missRatios){
+                Integer[] probes = new Integer[LOOKUPS];
+                for(int i = 0; i < LOOKUPS; i++){
+                    //The keys are even, odd probes miss between them
+                    probes[i] = random.nextInt(KEYS) * 2 + (random.nextDouble() < missRatio ? 1 : 0);
+                }
+                for(int bitsPerKey : new int[]{0, BloomFilter.DEFAULT_BITS_PER_KEY}){
+                    tree.enableBloomFilters(bitsPerKey);
+                    pagedTree.enableBloomFilters(bitsPerKey);
+                    long found = 0;
+                    long time1 = 0, time2 = 0, time3 = 0;
+                    BufferPool pool = pagedTree.getBufferPool();
+                    //The first round warms up
+                    for(int round = 0; round < 2; round++){
+                        pool.resetCounters();
+                        time1 = System.nanoTime();
+                        for(int i = 0; i < LOOKUPS; i++){
+                            found += tree.search(probes[i]) == null ? 0 : 1;
+                        }
+                        time2 = System.nanoTime();
+                        for(int i = 0; i < LOOKUPS; i++){
+                            found += pagedTree.search(probes[i]);
+                        }
+                        time3 = System.nanoTime();
+                    }
+                    if(found == 42)
+                        System.out.println();
+                    System.out.println(missRatio + "\t" + bitsPerKey + "\t" + (time2 - time1) / LOOKUPS + "\t"
+                            + (time3 - time2) / LOOKUPS + "\t" + ((double) pool.getMisses() / LOOKUPS));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Skewed lookups through the lookup cache. Ranks are drawn log-uniformly, which sends about two thirds of the
+     * lookups to 1% of the keys and spreads the rest over all of them.
+     * @param capacities cache capacities, 0 runs without the cache
+     */
+    static void hotKeyLookups(int[] capacities)
+    {
+        Random random = new Random(41);
+        Integer[] keys = shuffledKeys(random, KEYS);
+        SparseBPlusTree<Integer, Integer> tree = build(64, keys);
+        Integer[] probes = new Integer[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++){
+            probes[i] = keys[(int) Math.pow(KEYS, random.nextDouble()) - 1];
+        }
+
+        System.out.println("capacity\tns/lookup\thit ratio");
+        for(int capacity : capacities){
+            LookupCache<Integer, Integer> cache = tree.enableLookupCache(capacity);
+            long found = 0;
+            long time = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                if(cache != null){
+                    cache.resetCounters();
+                }
+                long time1 = System.nanoTime();
+                for(int i = 0; i < LOOKUPS; i++){
+                    found += tree.search(probes[i]);
+                }
+                time = System.nanoTime() - time1;
+            }
+            if(found == 42)
+                System.out.println();
+            System.out.println(capacity + "\t" + time / LOOKUPS + "\t" + (cache == null ? 0 : cache.getHitRatio()));
+        }
+        tree.enableLookupCache(0);
+    }
+
+    /**
+     * Bulk load time of the sequential loader against the fork-join loader with growing parallelism.
+     * @param keyCount
+     * @param parallelism pool sizes to try
+     */
+    static void parallelBuild(int keyCount, int[] parallelism)
+    {
+        Integer[] keys = new Integer[keyCount];
+        for(int i = 0; i < keyCount; i++){
+            keys[i] = i * 2;
+        }
+        DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+
+        System.out.println("threads\tms");
+        long time = 0;
+        //The first round warms up
+        for(int round = 0; round < 2; round++){
+            long time1 = System.nanoTime();
+            tree.bulkLoad(keys, keys, 1.0);
+            time = System.nanoTime() - time1;
+        }
+        System.out.println("sequential\t" + time / 1000000);
+        for(int threads : parallelism){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for(int round = 0; round < 2; round++){
+                long time1 = System.nanoTime();
+                tree.parallelBulkLoad(keys, keys, 1.0, pool);
+                time = System.nanoTime() - time1;
+            }
+            pool.shutdown();
+            System.out.println(threads + "\t" + time / 1000000);
+        }
+    }
+
+    /**
+     * Startup time of a tree rebuilt by inserting every key again against one loaded from a snapshot, which maps
+     * the file and builds the levels bottom-up.
+     * @param keyCount
+     * @throws IOException
+     */
+    static void snapshotStartup(int keyCount) throws IOException
+    {
+        Integer[] keys = shuffledKeys(new Random(23), keyCount);
+        Path file = Files.createTempFile("bplustree", ".snapshot");
+
+        long time1 = System.nanoTime();
+        DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+        for(int i = 0; i < keyCount; i++){
+            tree.insert(keys[i], keys[i]);
+        }
+        long time2 = System.nanoTime();
+        tree.saveSnapshot(file, Codec.INTEGER, Codec.INTEGER);
+        long time3 = System.nanoTime();
+
+        System.out.println("rebuild ms\tsave ms\tload ms\tsnapshot bytes");
+        long time = 0;
+        //The first round warms up
+        for(int round = 0; round < 2; round++){
+            DenseBPlusTree<Integer, Integer> loaded = new DenseBPlusTree<>(64);
+            long time4 = System.nanoTime();
+            loaded.loadSnapshot(file, Codec.INTEGER, Codec.INTEGER);
+            time = System.nanoTime() - time4;
+        }
+        System.out.println((time2 - time1) / 1000000 + "\t" + (time3 - time2) / 1000000 + "\t" + time / 1000000 + "\t" + Files.size(file));
+        Files.delete(file);
+    }
+
+    /**
+     * Sum of the values in a range over the whole tree, walked by one thread against a parallel stream that splits
+     * the range along the tree, once unordered and once collected back in key order.
+     * @param keyCount
+     */
+    static void parallelRangeScan(int keyCount)
+    {
+        Integer[] keys = new Integer[keyCount];
+        for(int i = 0; i < keyCount; i++){
+            keys[i] = i;
+        }
+        DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+        tree.bulkLoad(keys, keys, 1.0);
+        Integer upper = keyCount - 1;
+
+        System.out.println("scan\tms\tresult");
+        for(int mode = 0; mode < 3; mode++){
+            long time = 0;
+            long result = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                long time1 = System.nanoTime();
+                if(mode == 0){
+                    result = tree.rangeStream(0, upper).mapToLong(Integer::longValue).sum();
+                }
+                else if(mode == 1){
+                    result = tree.parallelRangeStream(0, upper).unordered().mapToLong(Integer::longValue).sum();
+                }
+                else{
+                    result = tree.parallelRangeStream(0, upper).toArray().length;
+                }
+                time = System.nanoTime() - time1;
+            }
+            System.out.println((mode == 0 ? "sequential" : mode == 1 ? "parallel unordered" : "parallel ordered")
+                    + "\t" + time / 1000000 + "\t" + result);
+        }
+    }
+
+    /**
+     * Counting the keys in a range by walking it against the subtree counts, which only descend to the two bounds.
+     * @param widths range widths to try
+     */
+    static void rangeCounts(int[] widths)
+    {
+        Integer[] keys = new Integer[KEYS];
+        for(int i = 0; i < KEYS; i++){
+            keys[i] = i;
+        }
+        DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+        tree.bulkLoad(keys, keys, 1.0);
+        tree.setSubtreeCounts(true);
+        Random random = new Random(47);
+        int queries = 10000;
+
+        System.out.println("width\twalk ns/count\tcounts ns/count");
+        for(int width : widths){
+            Integer[] lower = new Integer[queries];
+            Integer[] upper = new Integer[queries];
+            for(int i = 0; i < queries; i++){
+                lower[i] = random.nextInt(KEYS - width + 1);
+                upper[i] = lower[i] + width - 1;
+            }
+            long found = 0;
+            long walk = 0;
+            long counts = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                long time1 = System.nanoTime();
+                for(int i = 0; i < queries; i++){
+                    found += tree.rangeStream(lower[i], upper[i]).count();
+                }
+                long time2 = System.nanoTime();
+                for(int i = 0; i < queries; i++){
+                    found -= tree.count(lower[i], upper[i]);
+                }
+                long time3 = System.nanoTime();
+                walk = time2 - time1;
+                counts = time3 - time2;
+            }
+            if(found != 0)
+                System.out.println("Counts differ from the walk");
+            System.out.println(width + "\t" + walk / queries + "\t" + counts / queries);
+        }
+    }
+
+    /**
+     * Sum of the values in a range by walking it against the cached subtree aggregates.
+     * @param widths range widths to try
+     */
+    static void rangeAggregates(int[] widths)
+    {
+        Integer[] keys = new Integer[KEYS];
+        for(int i = 0; i < KEYS; i++){
+            keys[i] = i;
+        }
+        DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+        tree.bulkLoad(keys, keys, 1.0);
+        tree.setAggregator(Aggregator.longSum());
+        Random random = new Random(53);
+        int queries = 10000;
+
+        System.out.println("width\twalk ns/sum\taggregates ns/sum");
+        for(int width : widths){
+            Integer[] lower = new Integer[queries];
+            Integer[] upper = new Integer[queries];
+            for(int i = 0; i < queries; i++){
+                lower[i] = random.nextInt(KEYS - width + 1);
+                upper[i] = lower[i] + width - 1;
+            }
+            long found = 0;
+            long walk = 0;
+            long aggregates = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                long time1 = System.nanoTime();
+                for(int i = 0; i < queries; i++){
+                    found += tree.rangeStream(lower[i], upper[i]).mapToLong(Integer::longValue).sum();
+                }
+                long time2 = System.nanoTime();
+                for(int i = 0; i < queries; i++){
+                    found -= tree.<Long>aggregate(lower[i], upper[i]);
+                }
+                long time3 = System.nanoTime();
+                walk = time2 - time1;
+                aggregates = time3 - time2;
+            }
+            if(found != 0)
+                System.out.println("Aggregates differ from the walk");
+            System.out.println(width + "\t" + walk / queries + "\t" + aggregates / queries);
+        }
+    }
+
+    /**
+     * Delete and insert again the same keys in a tree whose leaves sit at their minimum, so every delete hits a node
+     * boundary. Compares the default merge threshold, merging only empty leaves, and lazy deletes compacted a few
+     * leaves at a time, by time and by restructurings per operation.
+     * @param order
+     * @param compactEvery operations between two compaction steps in lazy mode
+     */
+    static void boundaryChurn(int order, int compactEvery)
+    {
+        Integer[] keys = new Integer[KEYS];
+        for(int i = 0; i < KEYS; i++){
+            keys[i] = i;
+        }
+        Random random = new Random(43);
+        Integer[] churn = new Integer[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++){
+            churn[i] = keys[random.nextInt(KEYS)];
+        }
+
+        System.out.println("mode\tns/op\trestructurings/op");
+        for(int mode = 0; mode < 3; mode++){
+            DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(order);
+            if(mode == 1){
+                tree.setMergeThreshold(1);
+            }
+            tree.setLazyDeletes(mode == 2);
+            long time = 0;
+            long restructurings = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                tree.bulkLoad(keys, keys, 0.5);
+                TreeStatistics statistics = tree.enableStatistics();
+                long time1 = System.nanoTime();
+                for(int i = 0; i < LOOKUPS; i++){
+                    tree.delete(churn[i]);
+                    tree.insert(churn[i], churn[i]);
+                    if(mode == 2 && i % compactEvery == 0){
+                        tree.compact(1);
+                    }
+                }
+                time = System.nanoTime() - time1;
+                restructurings = statistics.getSplits() + statistics.getCoalesces() + statistics.getRedistributions();
+            }
+            System.out.println((mode == 0 ? "minimum" : mode == 1 ? "empty only" : "lazy") + "\t" + time / (2L * LOOKUPS)
+                    + "\t" + (double) restructurings / (2L * LOOKUPS));
+        }
+    }
+
+    /**
+     * Durable ingest throughput against the in-memory tree. Every writer waits for its insert to be on the device,
+     * group commit lets the writers that queue up behind one fsync share the next one.
+     * @param threadCounts
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    static void durableIngest(int[] threadCounts) throws IOException, InterruptedException
+    {
+        int records = 200000;
+        Integer[] keys = shuffledKeys(new Random(13), records);
+
+        long time1 = System.nanoTime();
+        SparseBPlusTree<Integer, Integer> memory = new SparseBPlusTree<>(64);
+        for(int i = 0; i < records; i++){
+            memory.insert(keys[i], keys[i]);
+        }
+        long time2 = System.nanoTime();
+        System.out.println("in-memory inserts/s\t" + (long) (records * 1e9 / (time2 - time1)));
+
+        System.out.println("threads\tdurable inserts/s\tinserts/fsync");
+        for(int threads : threadCounts){
+            Path directory = Files.createTempDirectory("bplustree");
+            DurableBPlusTree<Integer, Integer> tree = new DurableBPlusTree<>(directory, 64, Codec.INTEGER, Codec.INTEGER);
+            Thread[] writers = new Thread[threads];
+            long time3 = System.nanoTime();
+            for(int t = 0; t < threads; t++){
+                int first = t;
+                writers[t] = new Thread(() -> {
+                    for(int i = first; i < records; i += threads){
+                        tree.insert(keys[i], keys[i]);
+                    }
+                });
+                writers[t].start();
+            }
+            for(Thread writer : writers){
+                writer.join();
+            }
+            long time4 = System.nanoTime();
+            long syncs = tree.getLog().getSyncCount();
+            tree.close();
+            System.out.println(threads + "\t" + (long) (records * 1e9 / (time4 - time3)) + "\t" + (records / Math.max(syncs, 1)));
+
+            Files.deleteIfExists(directory.resolve(DurableBPlusTree.LOG_FILE));
+            Files.deleteIfExists(directory.resolve(DurableBPlusTree.CHECKPOINT_FILE));
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Throughput of a 95/5 read/write mix (90% search, 5% range of 100 keys, 5% insert) on the concurrent tree,
+     * whose reads validate node versions instead of latching, against the sparse tree behind one lock
+     * @param threadCounts
+     * @throws InterruptedException
+     */
+    static void concurrentThroughput(int[] threadCounts) throws InterruptedException
+    {
+        int operations = 2000000;
+        Integer[] keys = shuffledKeys(new Random(17), KEYS);
+
+        System.out.println("threads\tconcurrent ops/s\tsingle lock ops/s");
+        for(int threads : threadCounts){
+            ConcurrentBPlusTree<Integer, Integer> concurrent = new ConcurrentBPlusTree<>(64);
+            SparseBPlusTree<Integer, Integer> locked = new SparseBPlusTree<>(64);
+            for(int i = 0; i < keys.length; i += 2){
+                concurrent.insert(keys[i], keys[i]);
+                locked.insert(keys[i], keys[i]);
+            }
+            Object lock = new Object();
+
+            long concurrentTime = runThreads(threads, operations, (random, op) -> {
+                int key = random.nextInt(KEYS * 2);
+                if(op < 90)
+                    concurrent.search(key);
+                else if(op < 95)
+                    concurrent.rangeSearch(key, key + 200, (k, v) -> true);
+                else
+                    concurrent.insert(key, key);
+            });
+            long single = runThreads(threads, operations, (random, op) -> {
+                int key = random.nextInt(KEYS * 2);
+                synchronized (lock) {
+                    if(op < 90)
+                        locked.search(key);
+                    else if(op < 95)
+                        locked.rangeSearch(key, key + 200).forEachRemaining(v -> {});
+                    else
+                        locked.insert(key, key);
+                }
+            });
+            System.out.println(threads + "\t" + (long) (operations * 1e9 / concurrentTime) + "\t" + (long) (operations * 1e9 / single));
+        }
+    }
+
+    /**
+     * Batch ingest into a dense tree that already holds the even keys: batches of odd keys applied key by key against
+     * insertAll/deleteAll, once spread over the whole key space and once clustered into one narrow run per batch
+     * @param batchSize
+     */
+    static void batchIngest(int batchSize)
+    {
+        int batches = 200;
+        Integer[] keys = shuffledKeys(new Random(19), KEYS);
+        Random random = new Random(23);
+
+        System.out.println("keys\tper-key inserts/s\tinsertAll inserts/s\tper-key deletes/s\tdeleteAll deletes/s");
+        for(boolean clustered : new boolean[]{false, true}){
+            Integer[][] batch = new Integer[batches][batchSize];
+            for(int b = 0; b < batches; b++){
+                int start = random.nextInt(KEYS - batchSize);
+                for(int i = 0; i < batchSize; i++){
+                    batch[b][i] = clustered ? (start + i) * 2 + 1 : random.nextInt(KEYS) * 2 + 1;
+                }
+            }
+            long[] single = new long[2];
+            long[] batched = new long[2];
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                DenseBPlusTree<Integer, Integer> tree = new DenseBPlusTree<>(64);
+                for(int i = 0; i < keys.length; i++){
+                    tree.insert(keys[i], keys[i]);
+                }
+                long time1 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    for(int i = 0; i < batchSize; i++){
+                        tree.insert(batch[b][i], batch[b][i]);
+                    }
+                }
+                long time2 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    for(int i = 0; i < batchSize; i++){
+                        tree.delete(batch[b][i]);
+                    }
+                }
+                long time3 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    tree.insertAll(batch[b], batch[b]);
+                }
+                long time4 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    tree.deleteAll(batch[b]);
+                }
+                long time5 = System.nanoTime();
+                single[0] = time2 - time1;
+                single[1] = time3 - time2;
+                batched[0] = time4 - time3;
+                batched[1] = time5 - time4;
+            }
+            long total = (long) batches * batchSize;
+            System.out.println((clustered ? "clustered" : "spread") + "\t" + (long) (total * 1e9 / single[0]) + "\t" + (long) (total * 1e9 / batched[0])
+                    + "\t" + (long) (total * 1e9 / single[1]) + "\t" + (long) (total * 1e9 / batched[1]));
+        }
+    }
+
+    /**
+     * Cost per probe of batched lookups against the same probes searched one by one, on the sparse tree and on the
+     * int tree, for growing batch sizes. Random probes into a tree of KEYS keys, so most node loads miss the cache.
+     * @param batchSizes
+     */
+    static void batchLookup(int[] batchSizes)
+    {
+        Random random = new Random(29);
+        Integer[] keys = shuffledKeys(random, KEYS);
+        SparseBPlusTree<Integer, Integer> tree = build(64, keys);
+        IntBPlusTree intTree = new IntBPlusTree(64);
+        for(int i = 0; i < keys.length; i++){
+            intTree.insert(keys[i], keys[i]);
+        }
+
+        System.out.println("batch\tsearch ns/probe\tsearchAll ns/probe\tint search ns/probe\tint searchAll ns/probe");
+        for(int batchSize : batchSizes){
+            int batches = LOOKUPS / batchSize;
+            Integer[][] probes = new Integer[batches][batchSize];
+            int[][] intProbes = new int[batches][batchSize];
+            for(int b = 0; b < batches; b++){
+                for(int i = 0; i < batchSize; i++){
+                    intProbes[b][i] = random.nextInt(KEYS * 2);
+                    probes[b][i] = intProbes[b][i];
+                }
+            }
+            long[] times = new long[4];
+            long found = 0;
+            //The first round warms up
+            for(int round = 0; round < 2; round++){
+                long time1 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    for(int i = 0; i < batchSize; i++){
+                        found += tree.search(probes[b][i]) == null ? 0 : 1;
+                    }
+                }
+                long time2 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    found += tree.searchAll(probes[b]).size();
+                }
+                long time3 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    for(int i = 0; i < batchSize; i++){
+                        found += intTree.search(intProbes[b][i]);
+                    }
+                }
+                long time4 = System.nanoTime();
+                for(int b = 0; b < batches; b++){
+                    found += intTree.searchAll(intProbes[b])[0];
+                }
+                long time5 = System.nanoTime();
+                times[0] = time2 - time1;
+                times[1] = time3 - time2;
+                times[2] = time4 - time3;
+                times[3] = time5 - time4;
+            }
+            if(found == 42)
+                System.out.println();
+            long probeCount = (long) batches * batchSize;
+            System.out.println(batchSize + "\t" + times[0] / probeCount + "\t" + times[1] / probeCount
+                    + "\t" + times[2] / probeCount + "\t" + times[3] / probeCount);
+        }
+    }
+
+    /**
+     * Heap footprint and full collection pause of an int to long index kept on the heap against the same index kept
+     * off the heap, as the number of entries grows. The pause is the wall time of System.gc() with only the tree live.
+     * @param sizes
+     */
+    static void offHeapFootprint(int[] sizes)
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.println("keys\theap tree heap MB\theap tree gc ms\toff-heap tree heap MB\toff-heap tree gc ms\toff-heap MB");
+        for(int keys : sizes){
+            Random random = new Random(31);
+            IntLongBPlusTree heapTree = new IntLongBPlusTree(64);
+            for(int i = 0; i < keys; i++){
+                heapTree.insert(i, random.nextInt());
+            }
+            long heapPause = fullCollection();
+            long heapBytes = memory.getHeapMemoryUsage().getUsed();
+            if(heapTree.size() == 42)
+                System.out.println();
+            heapTree = null;
+
+            random = new Random(31);
+            OffHeapBPlusTree offHeapTree = new OffHeapBPlusTree(64);
+            for(int i = 0; i < keys; i++){
+                offHeapTree.insert(i, random.nextInt());
+            }
+            long offHeapPause = fullCollection();
+            long offHeapBytes = memory.getHeapMemoryUsage().getUsed();
+
+            System.out.println(keys + "\t" + (heapBytes >> 20) + "\t" + (heapPause / 1000000) + "\t" + (offHeapBytes >> 20)
+                    + "\t" + (offHeapPause / 1000000) + "\t" + (offHeapTree.getArena().getReservedBytes() >> 20));
+        }
+    }
+
+    /**
+     * Open time, lookup cost and heap footprint of an index kept as a dense tree against the same index written to a
+     * file and served from the mapping, which deserializes nothing.
+     * @param keyCount
+     * @throws IOException
+     */
+    static void mappedLookups(int keyCount) throws IOException
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Random random = new Random(29);
+        Integer[] keys = new Integer[keyCount];
+        Long[] values = new Long[keyCount];
+        for(int i = 0; i < keyCount; i++){
+            keys[i] = i * 2;
+            values[i] = random.nextLong();
+        }
+        int[] probes = new int[LOOKUPS];
+        for(int i = 0; i < LOOKUPS; i++){
+            probes[i] = random.nextInt(keyCount * 2);
+        }
+        Path file = Files.createTempFile("bplustree", ".db");
+
+        DenseBPlusTree<Long, Integer> tree = new DenseBPlusTree<>(64);
+        tree.bulkLoad(keys, values, 1.0);
+        keys = null;
+        values = null;
+        MappedBPlusTree.write(tree, file);
+        fullCollection();
+        long treeBytes = memory.getHeapMemoryUsage().getUsed();
+        long found = 0;
+        long time = 0;
+        //The first round warms up
+        for(int round = 0; round < 2; round++){
+            long time1 = System.nanoTime();
+            for(int i = 0; i < LOOKUPS; i++){
+                found += tree.search(probes[i]) == null ? 0 : 1;
+            }
+            time = System.nanoTime() - time1;
+        }
+        long treeLookup = time / LOOKUPS;
+        tree = null;
+
+        long time2 = System.nanoTime();
+        MappedBPlusTree mapped = new MappedBPlusTree(file);
+        long open = System.nanoTime() - time2;
+        fullCollection();
+        long mappedBytes = memory.getHeapMemoryUsage().getUsed();
+        for(int round = 0; round < 2; round++){
+            long time1 = System.nanoTime();
+            for(int i = 0; i < LOOKUPS; i++){
+                found += mapped.contains(probes[i]) ? 1 : 0;
+            }
+            time = System.nanoTime() - time1;
+        }
+        if(found == 42)
+            System.out.println();
+
+        System.out.println("dense ns/lookup\tdense heap MB\tmapped open us\tmapped ns/lookup\tmapped heap MB\tfile MB");
+        System.out.println(treeLookup + "\t" + (treeBytes >> 20) + "\t" + open / 1000 + "\t" + time / LOOKUPS + "\t"
+                + (mappedBytes >> 20) + "\t" + (Files.size(file) >> 20));
+        Files.delete(file);
+    }
+
+    //Nanoseconds of a full collection, after one that clears the garbage left behind
+    private static long fullCollection()
+    {
+        System.gc();
+        long time1 = System.nanoTime();
+        System.gc();
+        return System.nanoTime() - time1;
+    }
+
+    //One step of a multi-threaded workload, op is uniform in [0, 100)
+    private interface Operation
+    {
+        void run(Random random, int op);
+    }
+
+    //Run the operations spread over the threads, returns the elapsed nanoseconds
+    private static long runThreads(int threads, int operations, Operation operation) throws InterruptedException
+    {
+        Thread[] workers = new Thread[threads];
+        long time1 = System.nanoTime();
+        for(int t = 0; t < threads; t++){
+            int seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for(int i = 0; i < operations / threads; i++){
+                    operation.run(random, random.nextInt(100));
+                }
+            });
+            workers[t].start();
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+        return System.nanoTime() - time1;
+    }
+
+    //Warm up, then time one pass over the probes
+    private static long timeLookups(SparseBPlusTree<Integer, Integer> tree, Integer[] probes)
+    {
+        long found = 0;
+        for(int i = 0; i < probes.length; i++){
+            found += tree.search(probes[i]) == null ? 0 : 1;
+        }
+        long time1 = System.nanoTime();
+        for(int i = 0; i < probes.length; i++){
+            found += tree.search(probes[i]) == null ? 0 : 1;
+        }
+        long time2 = System.nanoTime();
+        if(found == 42)
+            System.out.println();
+        return time2 - time1;
+    }
+
+    //Even keys 0, 2, 4, ... in random order
+    private static Integer[] shuffledKeys(Random random, int count)
+    {
+        Integer[] keys = new Integer[count];
+        for(int i = 0; i < count; i++){
+            keys[i] = i * 2;
+        }
+        for(int i = count - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            Integer key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+    private static SparseBPlusTree<Integer, Integer> build(int order, Integer[] keys)
+    {
+        SparseBPlusTree<Integer, Integer> tree = new SparseBPlusTree<>(order);
+        for(int i = 0; i < keys.length; i++){
+            tree.insert(keys[i], keys[i]);
+        }
+        return tree;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        lookupCostByOrder(new int[]{4, 8, 16, 24, 32, 64, 128, 256, 512});
+        allocationByOrder(new int[]{4, 16, 64, 256});
+        pagedReadsPerLookup(1024);
+        negativeLookups(new double[]{0.5, 0.9, 0.99}, 1024);
+        durableIngest(new int[]{1, 4, 16, 64});
+        concurrentThroughput(new int[]{1, 2, 4, 8, 16, 32});
+        batchIngest(5000);
+        batchLookup(new int[]{16, 256, 4096, 65536});
+        hotKeyLookups(new int[]{0, 1000, 10000, 100000});
+        parallelBuild(20000000, new int[]{1, 2, 4, 8, 16});
+        snapshotStartup(10000000);
+        boundaryChurn(64, 64);
+        parallelRangeScan(20000000);
+        rangeCounts(new int[]{100, 10000, 1000000});
+        rangeAggregates(new int[]{100, 10000, 1000000});
+        offHeapFootprint(new int[]{1000000, 4000000, 16000000});
+        mappedLookups(4000000);
+    }
+}
@@ -0,0 +1,81 @@
+package com.project;
+
+/**
+ * Hook for what a B+ tree does while it searches, inserts and deletes.
+ * Every method has an empty default and the trees start with NONE, so an untraced tree only pays for a call
+ * the JIT inlines away. ConsoleTreeEventListener prints the events the way the trees used to print them.
+ * Key arrays are the live node arrays: only the first number entries are valid and they must not be kept or changed.
+ */
+public interface TreeEventListener
+{
+    //Ignores every event, the default of the trees
+    TreeEventListener NONE = new TreeEventListener()
+    {
+    };
+
+    default void onSearch(Object key)
+    {
+    }
+
+    default void onFound(Object key, Object[] keys, int number)
+    {
+    }
+
+    default void onNotFound(Object key)
+    {
+    }
+
+    default void onRangeSearch(Object key1, Object key2)
+    {
+    }
+
+    default void onInsert(Object key)
+    {
+    }
+
+    default void onInsertCompleted(Object key)
+    {
+    }
+
+    default void onDelete(Object key)
+    {
+    }
+
+    default void onDeleteCompleted(Object key)
+    {
+    }
+
+    //A non-leaf node was passed on the way down, separator is the key next to the child that was taken
+    default void onDescend(Object separator)
+    {
+    }
+
+    //A key was added to a node, split tells whether the node overflowed
+    default void onNodeInsert(boolean leaf, Object key, boolean split)
+    {
+    }
+
+    //A key was removed from a node, underflow tells whether the node has to be rebalanced
+    default void onNodeDelete(boolean leaf, Object key, boolean underflow)
+    {
+    }
+
+    default void onSplit(boolean leaf, Object[] leftKeys, int leftNumber, Object[] rightKeys, int rightNumber)
+    {
+    }
+
+    //A split reached the root and a new root was created above it
+    default void onNewRoot()
+    {
+    }
+
+    //Keys were moved between two sibling nodes
+    default void onRedistribute(boolean leaf, Object[] leftKeys, int leftNumber, Object[] rightKeys, int rightNumber)
+    {
+    }
+
+    //Two sibling nodes were coalesced into one
+    default void onCoalesce(boolean leaf, Object[] keys, int number)
+    {
+    }
+}
@@ -0,0 +1,309 @@
+package com.project;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+final class TreeSnapshot
+{
+    /**
+     * File layout shared by the snapshots of DenseBPlusTree and SparseBPlusTree, all numbers big-endian:
+     * a header (magic, order, entries, leaf count), one length-prefixed record per leaf in key order holding its
+     * entry count and its encoded keys and values, the inner-level section (number of levels, then per level bottom-up
+     * its node count and the child count of every node), and the CRC32 of everything in front of it.
+     * The writer replaces the file atomically, the reader maps it and checks the CRC before anything is decoded.
+     */
+    static final int MAGIC = 0x42505353;
+    //Bytes of the file mapped at once, a record never spans two windows
+    static final int WINDOW = 1 << 30;
+
+    private TreeSnapshot()
+    {
+    }
+
+    //Writes a snapshot to a temporary file next to the target, commit moves it into place
+    static final class Writer implements Closeable
+    {
+        private final Path file;
+        private final Path temp;
+        private final FileChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(1 << 12);
+        private final DataOutputStream record = new DataOutputStream(this.recordBytes);
+        private boolean committed;
+
+        Writer(Path file) throws IOException
+        {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(this.temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(this.channel), 1 << 16), this.checksum));
+        }
+
+        //Stream for fixed fields outside the records
+        DataOutputStream out()
+        {
+            return this.out;
+        }
+
+        //Start a record, its fields go to the returned stream until endRecord
+        DataOutputStream beginRecord()
+        {
+            this.recordBytes.reset();
+            return this.record;
+        }
+
+        void endRecord() throws IOException
+        {
+            if(this.recordBytes.size() > WINDOW)
+                throw new IOException("Snapshot record of " + this.recordBytes.size() + " bytes is too long");
+            this.out.writeInt(this.recordBytes.size());
+            this.recordBytes.writeTo(this.out);
+        }
+
+        //Append the checksum, force the file and move it over the target
+        void commit() throws IOException
+        {
+            this.out.writeInt((int) this.checksum.getValue());
+            this.out.flush();
+            this.channel.force(true);
+            this.channel.close();
+            Files.move(this.temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            //Force the directory too, or a power failure can lose the rename
+            try (FileChannel directory = FileChannel.open(this.file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+            this.committed = true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if(!this.committed){
+                this.channel.close();
+                Files.deleteIfExists(this.temp);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a memory-mapped file. The file is mapped in windows of up to WINDOW bytes, a read that
+     * runs past the end of the window maps the next one from the read position on, so snapshots may exceed 2 GB.
+     * Codecs read straight from the mapping through the DataInput methods.
+     */
+    static final class Reader implements DataInput, Closeable
+    {
+        private final Path file;
+        private final FileChannel channel;
+        //End of the data, the checksum follows it
+        private final long end;
+        //File position of the mapped window
+        private long base;
+        private MappedByteBuffer buffer;
+
+        Reader(Path file) throws IOException
+        {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = this.channel.size();
+                if(size < 24)
+                    throw new IOException("Snapshot is truncated: " + file);
+                this.end = size - 4;
+                CRC32 checksum = new CRC32();
+                for(long position = 0; position < this.end; position += WINDOW){
+                    checksum.update(this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, this.end - position)));
+                }
+                if((int) checksum.getValue() != this.channel.map(FileChannel.MapMode.READ_ONLY, this.end, 4).getInt())
+                    throw new IOException("Snapshot is corrupt: " + file);
+                map(0);
+                if(readInt() != MAGIC)
+                    throw new IOException("Not a snapshot file: " + file);
+            } catch (IOException | RuntimeException e) {
+                this.channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Map the next length-prefixed record completely
+         * @return position in the file right behind the record
+         * @throws IOException
+         */
+        long beginRecord() throws IOException
+        {
+            int length = readInt();
+            if(length < 0 || length > WINDOW)
+                throw corrupt();
+            ensure(length);
+            return position() + length;
+        }
+
+        //Check that the codecs consumed the record exactly
+        void endRecord(long recordEnd) throws IOException
+        {
+            if(position() != recordEnd)
+                throw corrupt();
+        }
+
+        //Every byte in front of the checksum was read
+        void finish() throws IOException
+        {
+            if(position() != this.end)
+                throw corrupt();
+        }
+
+        IOException corrupt()
+        {
+            return new IOException("Snapshot is corrupt at byte " + position() + ": " + this.file);
+        }
+
+        private long position()
+        {
+            return this.base + this.buffer.position();
+        }
+
+        private void map(long position) throws IOException
+        {
+            this.base = position;
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, this.end - position));
+        }
+
+        //Make the next bytes readable from the window, mapping the following one if they run past it
+        private void ensure(int bytes) throws IOException
+        {
+            if(this.buffer.remaining() >= bytes)
+                return;
+            long position = position();
+            if(this.end - position < bytes)
+                throw new EOFException("Snapshot ends at byte " + this.end + ": " + this.file);
+            map(position);
+        }
+
+        @Override
+        public void readFully(byte[] b) throws IOException
+        {
+            readFully(b, 0, b.length);
+        }
+
+        @Override
+        public void readFully(byte[] b, int off, int len) throws IOException
+        {
+            ensure(len);
+            this.buffer.get(b, off, len);
+        }
+
+        @Override
+        public int skipBytes(int n) throws IOException
+        {
+            n = (int) Math.min(n, this.end - position());
+            ensure(n);
+            this.buffer.position(this.buffer.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException
+        {
+            return readByte() != 0;
+        }
+
+        @Override
+        public byte readByte() throws IOException
+        {
+            ensure(1);
+            return this.buffer.get();
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException
+        {
+            return readByte() & 0xFF;
+        }
+
+        @Override
+        public short readShort() throws IOException
+        {
+            ensure(2);
+            return this.buffer.getShort();
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException
+        {
+            return readShort() & 0xFFFF;
+        }
+
+        @Override
+        public char readChar() throws IOException
+        {
+            ensure(2);
+            return this.buffer.getChar();
+        }
+
+        @Override
+        public int readInt() throws IOException
+        {
+            ensure(4);
+            return this.buffer.getInt();
+        }
+
+        @Override
+        public long readLong() throws IOException
+        {
+            ensure(8);
+            return this.buffer.getLong();
+        }
+
+        @Override
+        public float readFloat() throws IOException
+        {
+            ensure(4);
+            return this.buffer.getFloat();
+        }
+
+        @Override
+        public double readDouble() throws IOException
+        {
+            ensure(8);
+            return this.buffer.getDouble();
+        }
+
+        //Codecs write text with writeUTF, lines are not part of the format
+        @Override
+        public String readLine()
+        {
+            throw new UnsupportedOperationException("Snapshots hold no lines of text");
+        }
+
+        @Override
+        public String readUTF() throws IOException
+        {
+            return DataInputStream.readUTF(this);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.buffer = null;
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of one dense or sparse B+ tree. The tree reports every split, coalesce, redistribution, root change
+ * and key count change as it happens, so the shape is kept up to date without walking the tree, and JMX threads
+ * read it while the owner keeps mutating. Operation latencies go into one histogram per kind of operation.
+ * Enable it with enableStatistics() on the tree and publish it with register().
+ */
+public class TreeStatistics implements TreeStatisticsMXBean
+{
+    //Levels a tree can have, far more than any order above 2 needs for 2^31 keys
+    static final int MAX_LEVELS = 64;
+    //Estimated heap bytes of a node object and of an array header, with compressed references
+    static final int NODE_BYTES = 32;
+    static final int ARRAY_BYTES = 16;
+
+    private final int order;
+
+    //Nodes per level counted from the leaves up, level 0 is the leaf level
+    private final AtomicLongArray nodes = new AtomicLongArray(MAX_LEVELS);
+    private volatile int height;
+    private final AtomicLong keys = new AtomicLong();
+
+    private final AtomicLong splits = new AtomicLong();
+    private final AtomicLong redistributions = new AtomicLong();
+    private final AtomicLong coalesces = new AtomicLong();
+    private final AtomicLong rootChanges = new AtomicLong();
+
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    private final LatencyHistogram batchSearchLatency = new LatencyHistogram();
+    private final LatencyHistogram rangeLatency = new LatencyHistogram();
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+    private final LatencyHistogram batchInsertLatency = new LatencyHistogram();
+    private final LatencyHistogram batchDeleteLatency = new LatencyHistogram();
+
+    private ObjectName name;
+
+    /**
+     * @param order order of the tree
+     * @param nodesPerLevel nodes per level of the tree as it is, from the root down
+     * @param keys keys in the tree
+     */
+    TreeStatistics(int order, long[] nodesPerLevel, long keys)
+    {
+        this.order = order;
+        rebuilt(nodesPerLevel, keys);
+    }
+
+    //Register under com.project:type=BPlusTree,name=<name> with the platform MBean server
+    public synchronized ObjectName register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("com.project:type=BPlusTree,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        return objectName;
+    }
+
+    public synchronized void unregister() throws JMException
+    {
+        if(this.name == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if(server.isRegistered(this.name)){
+            server.unregisterMBean(this.name);
+        }
+        this.name = null;
+    }
+
+    /*
+     * Reports from the tree, all of them come from the thread that mutates it
+     */
+
+    void keysAdded(long delta)
+    {
+        this.keys.addAndGet(delta);
+    }
+
+    //A node on the level, counted from the leaves, was split in two
+    void nodeSplit(int level)
+    {
+        this.nodes.incrementAndGet(level);
+        this.splits.incrementAndGet();
+    }
+
+    //Two nodes on the level were coalesced into one
+    void nodeCoalesced(int level)
+    {
+        this.nodes.decrementAndGet(level);
+        this.coalesces.incrementAndGet();
+    }
+
+    void redistributed()
+    {
+        this.redistributions.incrementAndGet();
+    }
+
+    //A split reached the root and a new root was put on top
+    void rootAdded()
+    {
+        int level = this.height;
+        this.nodes.set(level, 1);
+        this.height = level + 1;
+        this.rootChanges.incrementAndGet();
+    }
+
+    //The root lost its last key and its only child became the root
+    void rootRemoved()
+    {
+        int level = this.height - 1;
+        this.height = level;
+        this.nodes.set(level, 0);
+        this.rootChanges.incrementAndGet();
+    }
+
+    //The tree was rebuilt as a whole, nodesPerLevel from the root down
+    void rebuilt(long[] nodesPerLevel, long keys)
+    {
+        for(int level = 0; level < MAX_LEVELS; level++){
+            this.nodes.set(level, level < nodesPerLevel.length ? nodesPerLevel[nodesPerLevel.length - 1 - level] : 0);
+        }
+        this.height = nodesPerLevel.length;
+        this.keys.set(keys);
+    }
+
+    void recordSearch(long nanos)
+    {
+        this.searchLatency.record(nanos);
+    }
+
+    //One whole searchAll batch
+    void recordBatchSearch(long nanos)
+    {
+        this.batchSearchLatency.record(nanos);
+    }
+
+    void recordRange(long nanos)
+    {
+        this.rangeLatency.record(nanos);
+    }
+
+    void recordInsert(long nanos)
+    {
+        this.insertLatency.record(nanos);
+    }
+
+    void recordDelete(long nanos)
+    {
+        this.deleteLatency.record(nanos);
+    }
+
+    //One whole insertAll batch
+    void recordBatchInsert(long nanos)
+    {
+        this.batchInsertLatency.record(nanos);
+    }
+
+    //One whole deleteAll batch
+    void recordBatchDelete(long nanos)
+    {
+        this.batchDeleteLatency.record(nanos);
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return this.order;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    @Override
+    public long[] getNodesPerLevel()
+    {
+        int height = this.height;
+        long[] levels = new long[height];
+        for(int level = 0; level < height; level++){
+            levels[height - 1 - level] = this.nodes.get(level);
+        }
+        return levels;
+    }
+
+    @Override
+    public long getKeyCount()
+    {
+        return this.keys.get();
+    }
+
+    @Override
+    public double getLeafFillFactor()
+    {
+        long leaves = this.nodes.get(0);
+        return leaves == 0 ? 0 : (double) this.keys.get() / ((double) leaves * this.order);
+    }
+
+    @Override
+    public double getInnerFillFactor()
+    {
+        long inner = innerNodes();
+        // One separator per child but the first, which adds up to one less than there are leaves
+        long innerKeys = this.nodes.get(0) - 1;
+        return inner == 0 ? 0 : (double) innerKeys / ((double) inner * this.order);
+    }
+
+    @Override
+    public double getBytesPerKey()
+    {
+        long keys = this.keys.get();
+        if(keys == 0)
+            return 0;
+        // Leaves hold a key and a value array, non-leaf nodes a key and a child array, all with the spare slot
+        long leafBytes = NODE_BYTES + 2L * (ARRAY_BYTES + 4L * (this.order + 1));
+        long innerBytes = NODE_BYTES + (ARRAY_BYTES + 4L * (this.order + 1)) + (ARRAY_BYTES + 4L * (this.order + 2));
+        return (double) (this.nodes.get(0) * leafBytes + innerNodes() * innerBytes) / keys;
+    }
+
+    @Override
+    public long getSplits()
+    {
+        return this.splits.get();
+    }
+
+    @Override
+    public long getRedistributions()
+    {
+        return this.redistributions.get();
+    }
+
+    @Override
+    public long getCoalesces()
+    {
+        return this.coalesces.get();
+    }
+
+    @Override
+    public long getRootChanges()
+    {
+        return this.rootChanges.get();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getSearchLatency()
+    {
+        return this.searchLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getBatchSearchLatency()
+    {
+        return this.batchSearchLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getRangeLatency()
+    {
+        return this.rangeLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getInsertLatency()
+    {
+        return this.insertLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getDeleteLatency()
+    {
+        return this.deleteLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getBatchInsertLatency()
+    {
+        return this.batchInsertLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getBatchDeleteLatency()
+    {
+        return this.batchDeleteLatency.snapshot();
+    }
+
+    @Override
+    public void resetLatencies()
+    {
+        this.searchLatency.reset();
+        this.batchSearchLatency.reset();
+        this.rangeLatency.reset();
+        this.insertLatency.reset();
+        this.deleteLatency.reset();
+        this.batchInsertLatency.reset();
+        this.batchDeleteLatency.reset();
+    }
+
+    private long innerNodes()
+    {
+        long inner = 0;
+        for(int level = 1; level < this.height; level++){
+            inner += this.nodes.get(level);
+        }
+        return inner;
+    }
+}
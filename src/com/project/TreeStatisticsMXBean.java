@@ -0,0 +1,53 @@
+package com.project;
+
+/**
+ * Management view of a dense or sparse B+ tree: its shape, the structural changes so far and the latency of
+ * its operations. Levels are listed from the root down.
+ */
+public interface TreeStatisticsMXBean
+{
+    int getOrder();
+
+    int getHeight();
+
+    long[] getNodesPerLevel();
+
+    long getKeyCount();
+
+    //Share of the key slots of all leaves that are in use
+    double getLeafFillFactor();
+
+    //Share of the key slots of all non-leaf nodes that are in use
+    double getInnerFillFactor();
+
+    //Estimated heap bytes of the nodes per key, without the key and value objects
+    double getBytesPerKey();
+
+    long getSplits();
+
+    long getRedistributions();
+
+    long getCoalesces();
+
+    //New roots plus collapsed roots
+    long getRootChanges();
+
+    LatencyHistogram.Snapshot getSearchLatency();
+
+    //Latency of whole searchAll batches
+    LatencyHistogram.Snapshot getBatchSearchLatency();
+
+    LatencyHistogram.Snapshot getRangeLatency();
+
+    LatencyHistogram.Snapshot getInsertLatency();
+
+    LatencyHistogram.Snapshot getDeleteLatency();
+
+    //Latency of whole insertAll batches
+    LatencyHistogram.Snapshot getBatchInsertLatency();
+
+    //Latency of whole deleteAll batches
+    LatencyHistogram.Snapshot getBatchDeleteLatency();
+
+    void resetLatencies();
+}
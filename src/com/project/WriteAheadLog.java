@@ -0,0 +1,431 @@
+package com.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class WriteAheadLog<T, V extends Comparable<V>> implements Closeable
+{
+    /**
+     * Append-only log of logical insert and delete records, plus a checkpoint file holding every entry of the
+     * tree as of one log sequence number (LSN).
+     * Records are staged in memory and reach the file in batches. sync(lsn) is a group commit: the first waiting
+     * writer forces the file for everybody who appended before it, the others wait for that force instead of
+     * issuing their own. A checkpoint replaces the checkpoint file atomically and empties the log, recovery loads
+     * the checkpoint and replays the records behind it, and stops at the first torn or corrupt record.
+     *
+     * @param <T> value type
+     * @param <V> key type
+     */
+    static final byte INSERT = 1;
+    //Delete by key only, written by older logs, replayed as it was recorded
+    static final byte DELETE = 2;
+    //Delete of one entry, the record carries the value of the entry so equal keys are told apart
+    static final byte DELETE_ENTRY = 3;
+
+    //Identifies a checkpoint file
+    static final int CHECKPOINT_MAGIC = 0x42504350;
+    //Staged records are written out once they reach this size, even without a sync
+    private static final int STAGING_LIMIT = 64 * 1024;
+    //Upper bound for the length of one record, anything longer is a corrupt length field
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private final Path logFile;
+    private final Path checkpointFile;
+    private final FileChannel channel;
+    private final Codec<V> keyCodec;
+    private final Codec<T> valueCodec;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final RecordBuffer staging = new RecordBuffer();
+    private final DataOutputStream out = new DataOutputStream(staging);
+    private final CRC32 crc = new CRC32();
+
+    //End of the records written to the file
+    private long writePosition;
+    //LSN of the last appended record
+    private long lastLsn;
+    //Every record up to this LSN is on the device
+    private long durableLsn;
+    //A writer is forcing the file for the group
+    private boolean syncing;
+    private long syncs;
+    private long recordsSinceCheckpoint;
+
+    public WriteAheadLog(Path logFile, Path checkpointFile, Codec<V> keyCodec, Codec<T> valueCodec) throws IOException
+    {
+        this.logFile = logFile;
+        this.checkpointFile = checkpointFile;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Load the checkpoint and replay the log records behind it, then cut off a torn tail so that new records follow
+     * the last good one. Must be called once before anything is appended.
+     * @param replayer
+     * @return number of log records replayed
+     * @throws IOException
+     */
+    public long recover(Replayer<T, V> replayer) throws IOException
+    {
+        long checkpointLsn = 0;
+        if(Files.exists(this.checkpointFile)){
+            checkpointLsn = loadCheckpoint(replayer);
+        }
+
+        long replayed = 0;
+        long position = 0;
+        long lsn = checkpointLsn;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel.position(0))));
+        while(true){
+            byte[] record;
+            try {
+                int length = in.readInt();
+                if(length < 13 || length > MAX_RECORD)
+                    break;
+                record = new byte[length];
+                in.readFully(record);
+            } catch (EOFException e) {
+                break;
+            }
+            this.crc.reset();
+            this.crc.update(record, 0, record.length - 4);
+            if((int) this.crc.getValue() != ByteBuffer.wrap(record, record.length - 4, 4).getInt())
+                break;
+
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record, 0, record.length - 4));
+            long recordLsn = fields.readLong();
+            byte type = fields.readByte();
+            V key = this.keyCodec.read(fields);
+            if(recordLsn > checkpointLsn){
+                if(type == INSERT)
+                    replayer.insert(this.valueCodec.read(fields), key);
+                else if(type == DELETE_ENTRY)
+                    replayer.delete(this.valueCodec.read(fields), key);
+                else
+                    replayer.delete(key);
+                replayed++;
+            }
+            lsn = Math.max(lsn, recordLsn);
+            position += 4 + record.length;
+        }
+
+        this.channel.truncate(position);
+        this.channel.force(false);
+        this.writePosition = position;
+        this.lastLsn = lsn;
+        this.durableLsn = lsn;
+        this.recordsSinceCheckpoint = replayed;
+        return replayed;
+    }
+
+    //Append an insert record, returns its LSN. The record is durable only after sync(lsn).
+    public long logInsert(T value, V key)
+    {
+        return append(INSERT, key, value);
+    }
+
+    //Append the delete of the entry with the key and the value, returns its LSN
+    public long logDelete(T value, V key)
+    {
+        return append(DELETE_ENTRY, key, value);
+    }
+
+    /**
+     * Wait until every record up to the LSN is on the device. Writers that arrive while a force is running wait
+     * for the next one, which then covers all of them with a single fsync.
+     * @param lsn
+     */
+    public void sync(long lsn)
+    {
+        this.lock.lock();
+        try {
+            while(this.durableLsn < lsn){
+                if(this.syncing){
+                    this.synced.awaitUninterruptibly();
+                    continue;
+                }
+                //Lead the group: take everything appended so far, force it without holding the lock
+                this.syncing = true;
+                long target = this.lastLsn;
+                try {
+                    writeStaged();
+                    this.lock.unlock();
+                    try {
+                        this.channel.force(false);
+                    } finally {
+                        this.lock.lock();
+                    }
+                    this.durableLsn = Math.max(this.durableLsn, target);
+                    this.syncs++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    this.syncing = false;
+                    this.synced.signalAll();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Write every entry to a new checkpoint file, replace the old one and empty the log. The caller must keep
+     * writers out until it returns, the entries have to be exactly the state after the last appended record.
+     * @param entries every entry of the tree in key order
+     * @throws IOException
+     */
+    public void checkpoint(Iterator<Map.Entry<V, T>> entries) throws IOException
+    {
+        long lsn;
+        this.lock.lock();
+        try {
+            lsn = this.lastLsn;
+        } finally {
+            this.lock.unlock();
+        }
+
+        Path temp = this.checkpointFile.resolveSibling(this.checkpointFile.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream data = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file), 1 << 16), checksum));
+            data.writeInt(CHECKPOINT_MAGIC);
+            data.writeLong(lsn);
+            while(entries.hasNext()){
+                Map.Entry<V, T> entry = entries.next();
+                data.writeBoolean(true);
+                this.keyCodec.write(entry.getKey(), data);
+                this.valueCodec.write(entry.getValue(), data);
+            }
+            data.writeBoolean(false);
+            int sum = (int) checksum.getValue();
+            data.writeInt(sum);
+            data.flush();
+            file.force(true);
+        }
+        Files.move(temp, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Force the directory too, a rename lost to a power failure must not leave behind an emptied log
+        try (FileChannel directory = FileChannel.open(this.checkpointFile.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+
+        //Every record up to the LSN is in the checkpoint now
+        this.lock.lock();
+        try {
+            if(this.lastLsn == lsn){
+                this.staging.reset();
+                this.channel.truncate(0);
+                this.writePosition = 0;
+            }
+            this.durableLsn = Math.max(this.durableLsn, lsn);
+            this.recordsSinceCheckpoint = 0;
+            this.synced.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    //Records appended since the last checkpoint, for periodic checkpoints
+    public long getRecordsSinceCheckpoint()
+    {
+        this.lock.lock();
+        try {
+            return this.recordsSinceCheckpoint;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    //Number of fsyncs issued by group commits
+    public long getSyncCount()
+    {
+        this.lock.lock();
+        try {
+            return this.syncs;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public Path getLogFile()
+    {
+        return this.logFile;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.lock.lock();
+        try {
+            if(!this.channel.isOpen())
+                return;
+            writeStaged();
+            this.channel.force(false);
+            this.durableLsn = this.lastLsn;
+            this.channel.close();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Encode one record into the staging buffer: length, then LSN, type, key and value, then the CRC of those fields
+     * @param type
+     * @param key
+     * @param value
+     * @return
+     */
+    private long append(byte type, V key, T value)
+    {
+        this.lock.lock();
+        try {
+            long lsn = this.lastLsn + 1;
+            int start = this.staging.size();
+            try {
+                this.out.writeInt(0);
+                this.out.writeLong(lsn);
+                this.out.writeByte(type);
+                this.keyCodec.write(key, this.out);
+                if(type != DELETE){
+                    this.valueCodec.write(value, this.out);
+                }
+            } catch (IOException | RuntimeException e) {
+                this.staging.truncate(start);
+                throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+            }
+            this.crc.reset();
+            this.crc.update(this.staging.bytes(), start + 4, this.staging.size() - start - 4);
+            try {
+                this.out.writeInt((int) this.crc.getValue());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.staging.patchInt(start, this.staging.size() - start - 4);
+            this.lastLsn = lsn;
+            this.recordsSinceCheckpoint++;
+
+            if(this.staging.size() >= STAGING_LIMIT){
+                writeStaged();
+            }
+            return lsn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    //Write the staged records behind the last ones in the file, the caller holds the lock
+    private void writeStaged() throws IOException
+    {
+        ByteBuffer source = ByteBuffer.wrap(this.staging.bytes(), 0, this.staging.size());
+        while(source.hasRemaining()){
+            this.writePosition += this.channel.write(source, this.writePosition);
+        }
+        this.staging.reset();
+    }
+
+    //Read the checkpoint file into the replayer, returns its LSN
+    private long loadCheckpoint(Replayer<T, V> replayer) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(this.checkpointFile);
+        if(bytes.length < 17)
+            throw new IOException("Checkpoint is truncated: " + this.checkpointFile);
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - 4);
+        if((int) checksum.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt())
+            throw new IOException("Checkpoint is corrupt: " + this.checkpointFile);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if(in.readInt() != CHECKPOINT_MAGIC)
+            throw new IOException("Not a checkpoint file: " + this.checkpointFile);
+        long lsn = in.readLong();
+        List<V> keys = new ArrayList<>();
+        List<T> values = new ArrayList<>();
+        while(in.readBoolean()){
+            keys.add(this.keyCodec.read(in));
+            values.add(this.valueCodec.read(in));
+        }
+        load(replayer, keys, values);
+        return lsn;
+    }
+
+    //Hand the checkpoint over as arrays of the erased types, Comparable for the keys and Object for the values
+    @SuppressWarnings("unchecked")
+    private static <T, V extends Comparable<V>> void load(Replayer<T, V> replayer, List<V> keys, List<T> values)
+    {
+        replayer.load((V[]) keys.toArray(new Comparable<?>[0]), (T[]) values.toArray());
+    }
+
+    /**
+     * Target of a recovery
+     */
+    public interface Replayer<T, V>
+    {
+        //The checkpoint, keys in order
+        void load(V[] keys, T[] values);
+
+        void insert(T value, V key);
+
+        //Remove one entry with the key, from a record of an older log
+        void delete(V key);
+
+        //Remove the entry with the key and the value
+        void delete(T value, V key);
+    }
+
+    //Staging buffer that gives access to its bytes, so a record can be checksummed and patched in place
+    private static class RecordBuffer extends ByteArrayOutputStream
+    {
+        RecordBuffer()
+        {
+            super(STAGING_LIMIT + 1024);
+        }
+
+        byte[] bytes()
+        {
+            return this.buf;
+        }
+
+        void truncate(int size)
+        {
+            this.count = size;
+        }
+
+        void patchInt(int offset, int value)
+        {
+            this.buf[offset] = (byte) (value >>> 24);
+            this.buf[offset + 1] = (byte) (value >>> 16);
+            this.buf[offset + 2] = (byte) (value >>> 8);
+            this.buf[offset + 3] = (byte) value;
+        }
+    }
+}